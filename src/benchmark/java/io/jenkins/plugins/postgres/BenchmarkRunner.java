@@ -0,0 +1,34 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs every JMH benchmark in this package. Invoked by surefire in the {@code benchmark} profile
+ * ({@code mvn test -Dbenchmark}); results go to {@code target/jmh-report.json}. The GC profiler
+ * reports {@code gc.alloc.rate.norm}, the bytes allocated per operation.
+ */
+public class BenchmarkRunner {
+
+    @Test
+    public void runJmhBenchmarks() throws Exception {
+        Options options = new OptionsBuilder()
+            .include(getClass().getPackage().getName() + "\\..*Benchmark")
+            .warmupIterations(Integer.getInteger("benchmark.warmupIterations", 3))
+            .warmupTime(TimeValue.seconds(1))
+            .measurementIterations(Integer.getInteger("benchmark.measurementIterations", 5))
+            .measurementTime(TimeValue.seconds(1))
+            .forks(Integer.getInteger("benchmark.forks", 1))
+            .addProfiler(GCProfiler.class)
+            .shouldFailOnError(true)
+            .resultFormat(ResultFormatType.JSON)
+            .result(System.getProperty("benchmark.result", "target/jmh-report.json"))
+            .build();
+        new Runner(options).run();
+    }
+}
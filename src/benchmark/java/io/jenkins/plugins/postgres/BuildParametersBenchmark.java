@@ -0,0 +1,47 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.model.ParameterValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning received events into build parameters, for single events and batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BuildParametersBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int payloadBytes;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private List<PostgresEvent> events;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        events = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            events.add(new PostgresEvent("public", "orders", i % 2 == 0 ? "INSERT" : "UPDATE",
+                RealtimeFrames.changePayload("orders", payloadBytes)));
+        }
+    }
+
+    @Benchmark
+    public List<ParameterValue> buildParameters() {
+        return PostgresEventTrigger.buildParameters(events, batchSize > 1);
+    }
+}
@@ -0,0 +1,49 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Synthetic Realtime frames and payloads for benchmarks.
+ */
+final class RealtimeFrames {
+
+    private RealtimeFrames() {
+    }
+
+    static String record(int payloadBytes) {
+        JsonObject record = new JsonObject();
+        record.addProperty("id", 42);
+        record.addProperty("status", "ready");
+        record.addProperty("updated_at", "2024-05-01T12:00:00.000Z");
+        StringBuilder notes = new StringBuilder(payloadBytes);
+        while (notes.length() < payloadBytes) {
+            notes.append("lorem ipsum \"dolor\" sit amet, ");
+        }
+        record.addProperty("notes", notes.substring(0, payloadBytes));
+        return record.toString();
+    }
+
+    static String changePayload(String table, int payloadBytes) {
+        return "{\"schema\":\"public\",\"table\":\"" + table + "\",\"commit_timestamp\":\"2024-05-01T12:00:00.000Z\","
+            + "\"type\":\"INSERT\",\"columns\":[{\"name\":\"id\",\"type\":\"int8\"}],\"errors\":null,"
+            + "\"record\":" + record(payloadBytes) + ",\"old_record\":{}}";
+    }
+
+    static String frame(String kind, String table, int payloadBytes) {
+        switch (kind) {
+            case "legacy":
+                return "{\"topic\":\"realtime:public:" + table + "\",\"event\":\"INSERT\",\"payload\":"
+                    + changePayload(table, payloadBytes) + ",\"ref\":null}";
+            case "changes":
+                return "{\"topic\":\"realtime:public:" + table + "\",\"event\":\"postgres_changes\",\"payload\":"
+                    + "{\"ids\":[1],\"data\":" + changePayload(table, payloadBytes) + "},\"ref\":null}";
+            case "unrouted":
+                return "{\"topic\":\"realtime:public:not_subscribed\",\"event\":\"INSERT\",\"payload\":"
+                    + changePayload("not_subscribed", payloadBytes) + ",\"ref\":null}";
+            case "heartbeat":
+                return "{\"topic\":\"phoenix\",\"event\":\"phx_reply\",\"payload\":{\"status\":\"ok\",\"response\":{}},\"ref\":\"7\"}";
+            default:
+                throw new IllegalArgumentException("Unknown frame kind: " + kind);
+        }
+    }
+}
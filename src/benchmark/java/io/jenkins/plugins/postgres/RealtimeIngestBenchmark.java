@@ -0,0 +1,70 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode and routing cost of {@link SupabaseRealtimeClient#onMessage(String)} for one frame, across
+ * payload sizes, the number of subscribed topics and the kind of frame received.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealtimeIngestBenchmark {
+
+    private static final Gson GSON = new Gson();
+
+    @Param({"1024", "65536", "1048576"})
+    public int payloadBytes;
+
+    @Param({"1", "100", "10000"})
+    public int topicCount;
+
+    /**
+     * legacy: per-event INSERT frame; changes: postgres_changes frame; unrouted: change on a topic
+     * nobody subscribed to; heartbeat: phx_reply to a heartbeat.
+     */
+    @Param({"legacy", "changes", "unrouted", "heartbeat"})
+    public String frameKind;
+
+    private SupabaseRealtimeClient client;
+    private String frame;
+    private Blackhole sink;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) throws Exception {
+        sink = blackhole;
+        client = new SupabaseRealtimeClient("ws://localhost:1/realtime/v1/websocket", null);
+        for (int i = 0; i < topicCount; i++) {
+            // The client is never connected, so subscribing only registers the route
+            client.subscribeToTable("public", "table_" + i, "INSERT", event -> sink.consume(event));
+        }
+        String table = "table_" + (topicCount - 1);
+        frame = RealtimeFrames.frame(frameKind, table, payloadBytes);
+    }
+
+    @Benchmark
+    public void onMessage() {
+        client.onMessage(frame);
+    }
+
+    /** Baseline: what routing used to cost when every frame was parsed into a Gson tree. */
+    @Benchmark
+    public void gsonTreeParse(Blackhole blackhole) {
+        JsonObject json = GSON.fromJson(frame, JsonObject.class);
+        blackhole.consume(json.get("topic").getAsString());
+        blackhole.consume(json.get("event").getAsString());
+    }
+}
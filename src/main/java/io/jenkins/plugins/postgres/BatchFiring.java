@@ -0,0 +1,19 @@
+package io.jenkins.plugins.postgres;
+
+/**
+ * When a batching trigger starts a build relative to its batch window.
+ */
+public enum BatchFiring {
+    TRAILING("When the window closes"),
+    LEADING("On the first event, then once more when the window closes");
+
+    private final String displayName;
+
+    BatchFiring(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,231 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Limits how fast a trigger schedules builds: by its own token bucket, by the bucket shared with the
+ * other triggers of its instance and by the number of the job's builds queued or running. Events that
+ * may not start a build yet are deferred, and events arriving meanwhile are coalesced into the same
+ * build, which is scheduled as soon as every limit allows. Once more than {@code maxPending} events wait,
+ * they are reduced to the latest change of each table and event type, so a trigger held back for long does
+ * not grow without bound and still builds every table that changed.
+ */
+public final class BuildLimiter {
+
+    // How often a trigger at its in-flight cap checks whether a build has finished
+    private static final long IN_FLIGHT_POLL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final int DEFAULT_MAX_PENDING = 1000;
+
+    private final TokenBucket bucket;
+    private final TokenBucket instanceBucket;
+    private final int maxInFlight;
+    private final IntSupplier inFlight;
+    private final Consumer<List<PostgresEvent>> build;
+    private final int maxPending;
+    private final Consumer<PostgresEvent> discardSink;
+    private final ScheduledExecutorService timer;
+    private final Executor executor;
+
+    // Events waiting for the limits, null if none
+    private ArrayDeque<PostgresEvent> pending;
+    private ScheduledFuture<?> retry;
+    private boolean closed;
+
+    private final AtomicLong deferrals = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+
+    BuildLimiter(TokenBucket bucket, TokenBucket instanceBucket, int maxInFlight, IntSupplier inFlight,
+                 Consumer<List<PostgresEvent>> build, ScheduledExecutorService timer, Executor executor) {
+        this(bucket, instanceBucket, maxInFlight, inFlight, build, DEFAULT_MAX_PENDING, null, timer, executor);
+    }
+
+    /**
+     * Either bucket may be null for no rate limit and {@code maxInFlight} 0 for no cap. {@code build}
+     * schedules the build and runs on the caller's thread or, for deferred events, on {@code executor}.
+     * Waiting events superseded by a later change of the same table and event type, because more than
+     * {@code maxPending} were waiting, are passed to {@code discardSink}, which may be null, on the
+     * submitting thread.
+     */
+    BuildLimiter(TokenBucket bucket, TokenBucket instanceBucket, int maxInFlight, IntSupplier inFlight,
+                 Consumer<List<PostgresEvent>> build, int maxPending, Consumer<PostgresEvent> discardSink,
+                 ScheduledExecutorService timer, Executor executor) {
+        this.bucket = bucket;
+        this.instanceBucket = instanceBucket;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = inFlight;
+        this.build = build;
+        this.maxPending = Math.max(1, maxPending);
+        this.discardSink = discardSink;
+        this.timer = timer;
+        this.executor = executor;
+    }
+
+    /** Schedules a build for the events now if the limits allow, otherwise defers them. */
+    void submit(List<PostgresEvent> events) {
+        List<PostgresEvent> discarded;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (pending != null) {
+                pending.addAll(events);
+                coalesced.addAndGet(events.size());
+                discarded = trimPending();
+            } else {
+                long delay = acquire();
+                if (delay <= 0) {
+                    discarded = null;
+                } else {
+                    pending = new ArrayDeque<>(events);
+                    deferrals.incrementAndGet();
+                    EventMetrics.buildDeferred();
+                    retry = timer.schedule(this::retry, delay, TimeUnit.NANOSECONDS);
+                    discarded = trimPending();
+                }
+            }
+        }
+        if (discarded == null) {
+            build.accept(events);
+            return;
+        }
+        if (discardSink != null) {
+            discarded.forEach(discardSink);
+        }
+    }
+
+    // Called with the lock held; beyond the cap keeps only the latest waiting event of each table and event
+    // type, in arrival order, and returns the events it removed
+    private List<PostgresEvent> trimPending() {
+        List<PostgresEvent> discarded = new ArrayList<>();
+        if (pending.size() <= maxPending) {
+            return discarded;
+        }
+        List<PostgresEvent> latest = new ArrayList<>();
+        for (Iterator<PostgresEvent> it = pending.descendingIterator(); it.hasNext(); ) {
+            PostgresEvent event = it.next();
+            boolean newer = false;
+            for (PostgresEvent kept : latest) {
+                if (kept.isSameSource(event)) {
+                    newer = true;
+                    break;
+                }
+            }
+            if (newer) {
+                it.remove();
+                discarded.add(event);
+            } else {
+                latest.add(event);
+            }
+        }
+        if (!discarded.isEmpty()) {
+            superseded.addAndGet(discarded.size());
+            EventMetrics.eventsCoalesced(discarded.size());
+        }
+        return discarded;
+    }
+
+    // Runs on the timer thread; scheduling a build takes the Jenkins queue lock, so it is handed off
+    private void retry() {
+        executor.execute(() -> {
+            List<PostgresEvent> ready;
+            synchronized (this) {
+                if (closed || pending == null) {
+                    return;
+                }
+                long delay = acquire();
+                if (delay > 0) {
+                    retry = timer.schedule(this::retry, delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                ready = new ArrayList<>(pending);
+                pending = null;
+                retry = null;
+            }
+            build.accept(ready);
+        });
+    }
+
+    /** Takes a token from each bucket and returns 0, or returns how long to wait without taking any. */
+    private long acquire() {
+        if (maxInFlight > 0 && inFlight.getAsInt() >= maxInFlight) {
+            return IN_FLIGHT_POLL_NANOS;
+        }
+        long delay = bucket != null ? bucket.tryAcquire() : 0;
+        if (delay > 0) {
+            return delay;
+        }
+        delay = instanceBucket != null ? instanceBucket.tryAcquire() : 0;
+        if (delay > 0 && bucket != null) {
+            bucket.release();
+        }
+        return delay;
+    }
+
+    /** Stops scheduling builds. Deferred events are not built; with a journal they are replayed on restart. */
+    synchronized void close() {
+        closed = true;
+        pending = null;
+        if (retry != null) {
+            retry.cancel(false);
+            retry = null;
+        }
+    }
+
+    /** Number of events waiting for the limits. */
+    public synchronized int getPendingCount() {
+        return pending != null ? pending.size() : 0;
+    }
+
+    /** How often a build had to wait for the limits. */
+    public long getDeferralCount() {
+        return deferrals.get();
+    }
+
+    /** Number of events added to a build that was already waiting. */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /** Number of waiting events replaced by a later change of the same table and event type because too many were waiting. */
+    public long getSupersededCount() {
+        return superseded.get();
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlight() {
+        return inFlight.getAsInt();
+    }
+
+    /** Builds per minute allowed by the trigger's own limit, 0 if unlimited. */
+    public int getBuildsPerMinute() {
+        return bucket != null ? bucket.getPerMinute() : 0;
+    }
+
+    /** Builds per minute allowed across the instance, 0 if unlimited. */
+    public int getInstanceBuildsPerMinute() {
+        return instanceBucket != null ? instanceBucket.getPerMinute() : 0;
+    }
+
+    /** Builds that may start at once under the trigger's own limit, -1 if unlimited. */
+    public int getAvailableBuilds() {
+        return bucket != null ? (int) bucket.getAvailableTokens() : -1;
+    }
+}
@@ -0,0 +1,19 @@
+package io.jenkins.plugins.postgres;
+
+/**
+ * How changes are read from a {@link PostgresInstance}.
+ */
+public enum CaptureMode {
+    LOGICAL_REPLICATION("Logical replication (pgoutput), full row images"),
+    LISTEN_NOTIFY("LISTEN/NOTIFY, notifications sent by database triggers");
+
+    private final String displayName;
+
+    CaptureMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,39 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.TreeSet;
+
+/**
+ * Works out how far a trigger may commit its journal offset when its events finish out of order, as
+ * events of different tables do. An offset is committed only once every tracked event at or before it
+ * has been built or discarded, so a restart replays whatever was still in flight.
+ */
+final class CommitTracker {
+
+    // Offsets of events handed to the trigger's queue and not finished yet
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    private long highestFinished = -1;
+
+    synchronized void track(long offset) {
+        if (offset >= 0) {
+            inFlight.add(offset);
+        }
+    }
+
+    /** Marks the events as finished and returns the offset that may now be committed, or -1 if none. */
+    synchronized long finish(Iterable<PostgresEvent> events) {
+        for (PostgresEvent event : events) {
+            long offset = event.getOffset();
+            if (offset >= 0 && inFlight.remove(offset)) {
+                highestFinished = Math.max(highestFinished, offset);
+            }
+        }
+        if (inFlight.isEmpty()) {
+            return highestFinished;
+        }
+        return Math.min(highestFinished, inFlight.first() - 1);
+    }
+
+    synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+}
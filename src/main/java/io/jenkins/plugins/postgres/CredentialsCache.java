@@ -0,0 +1,73 @@
+package io.jenkins.plugins.postgres;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the global credentials looked up by the instances, so that starting hundreds of triggers does not
+ * scan every credentials provider hundreds of times. The cache is cleared whenever the system credentials
+ * are saved; entries also expire after a few minutes for credentials that come from providers which
+ * change without saving anything in Jenkins.
+ */
+final class CredentialsCache {
+
+    private static final long EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(5);
+    // "type:id" -> lookup result, including misses
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private CredentialsCache() {
+    }
+
+    /** The global credentials of a type with an ID, or null if there are none. */
+    @SuppressWarnings("deprecation")
+    static <C extends Credentials> C get(Class<C> type, String id) {
+        if (id == null || id.isEmpty()) {
+            return null;
+        }
+        String key = type.getName() + ':' + id;
+        long now = System.nanoTime();
+        Entry entry = ENTRIES.get(key);
+        if (entry == null || now - entry.loadedAt > EXPIRY_NANOS) {
+            C credentials = CredentialsMatchers.firstOrNull(
+                CredentialsProvider.lookupCredentials(type, Jenkins.get()), CredentialsMatchers.withId(id));
+            entry = new Entry(credentials, now);
+            ENTRIES.put(key, entry);
+        }
+        return type.cast(entry.credentials);
+    }
+
+    static void invalidate() {
+        ENTRIES.clear();
+    }
+
+    private static final class Entry {
+        private final Credentials credentials;
+        private final long loadedAt;
+
+        private Entry(Credentials credentials, long loadedAt) {
+            this.credentials = credentials;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    @Extension
+    public static class Invalidator extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider) {
+                invalidate();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.List;
+
+/**
+ * Which of a trigger's events are handed to it one after another, in the order they were received.
+ * Events with different ordering keys are handled in parallel on the dispatcher pool.
+ */
+public enum DeliveryOrder {
+    JOB("All events in order, one at a time"),
+    TABLE("In order per table, tables in parallel"),
+    ROW("In order per row (by key columns), rows in parallel");
+
+    private final String displayName;
+
+    DeliveryOrder(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * The ordering key of an event. Per row, the key is the table and the values of the key columns, read
+     * from the new row or, for deletes, the old one; events whose key columns cannot be read fall back to
+     * ordering per table.
+     */
+    String keyOf(PostgresEvent event, List<String> keyColumns) {
+        switch (this) {
+            case JOB:
+                return "";
+            case ROW:
+                StringBuilder key = new StringBuilder(event.getSchema()).append('.').append(event.getTable());
+                try {
+                    for (String column : keyColumns) {
+                        String value = event.getRecordValue(column);
+                        if (value == null) {
+                            return event.getSchema() + '.' + event.getTable();
+                        }
+                        key.append(':').append(value);
+                    }
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    // Not a JSON payload
+                    return event.getSchema() + '.' + event.getTable();
+                }
+                return key.toString();
+            case TABLE:
+            default:
+                return event.getSchema() + '.' + event.getTable();
+        }
+    }
+}
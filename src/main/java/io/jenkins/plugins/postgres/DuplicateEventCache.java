@@ -0,0 +1,70 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the changes a trigger has recently handled, so that a change delivered twice (again after
+ * a reconnect, or once per overlapping row filter) starts only one build. Changes are identified by
+ * {@link PostgresEvent#getChangeKey()}; events without a key are never treated as duplicates. Entries
+ * are evicted oldest first once the cache is full or older than the window.
+ */
+public final class DuplicateEventCache {
+
+    private final int capacity;
+    private final long windowMillis;
+    // Change key -> time it was first seen, oldest first
+    private final LinkedHashMap<String, Long> seen = new LinkedHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    DuplicateEventCache(int capacity, long windowMillis) {
+        this.capacity = Math.max(1, capacity);
+        this.windowMillis = windowMillis;
+    }
+
+    /** Returns true if the event's change was seen within the window; otherwise remembers it. */
+    boolean isDuplicate(PostgresEvent event) {
+        String key = event.getChangeKey();
+        if (key == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (seen) {
+            Iterator<Long> firstSeen = seen.values().iterator();
+            while (firstSeen.hasNext() && now - firstSeen.next() > windowMillis) {
+                firstSeen.remove();
+            }
+            if (seen.containsKey(key)) {
+                hits.incrementAndGet();
+                return true;
+            }
+            seen.put(key, now);
+            if (seen.size() > capacity) {
+                seen.remove(seen.keySet().iterator().next());
+            }
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    public int getSize() {
+        synchronized (seen) {
+            return seen.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,116 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects the events of a burst into one batch. A window opens with the first event and closes
+ * after {@code windowMillis} or once {@code maxEvents} have been collected, whichever comes first.
+ * With {@link BatchFiring#LEADING} the opening event is fired on its own right away and the rest
+ * of the window is fired when it closes.
+ */
+final class EventBatcher {
+
+    private final long windowMillis;
+    private final int maxEvents;
+    private final BatchFiring firing;
+    private final Consumer<List<PostgresEvent>> sink;
+    private final ScheduledExecutorService timer;
+    private final Executor executor;
+
+    private List<PostgresEvent> pending = new ArrayList<>();
+    private boolean windowOpen;
+    // Counts the windows opened, so a close task that was already running when its window ended early
+    // cannot close the next window
+    private long window;
+    private ScheduledFuture<?> windowClose;
+    private boolean closed;
+
+    EventBatcher(long windowMillis, int maxEvents, BatchFiring firing, Consumer<List<PostgresEvent>> sink,
+                 ScheduledExecutorService timer, Executor executor) {
+        this.windowMillis = windowMillis;
+        this.maxEvents = maxEvents;
+        this.firing = firing != null ? firing : BatchFiring.TRAILING;
+        this.sink = sink;
+        this.timer = timer;
+        this.executor = executor;
+    }
+
+    void add(PostgresEvent event) {
+        List<PostgresEvent> batch = null;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (!windowOpen) {
+                windowOpen = true;
+                long opened = ++window;
+                if (windowMillis > 0) {
+                    windowClose = timer.schedule(() -> executor.execute(() -> closeWindow(opened)),
+                        windowMillis, TimeUnit.MILLISECONDS);
+                }
+                if (firing == BatchFiring.LEADING) {
+                    batch = List.of(event);
+                }
+            }
+            if (batch == null) {
+                pending.add(event);
+                if (maxEvents > 0 && pending.size() >= maxEvents) {
+                    batch = takePending();
+                    if (firing == BatchFiring.TRAILING) {
+                        endWindow();
+                    }
+                }
+            }
+        }
+        if (batch != null) {
+            sink.accept(batch);
+        }
+    }
+
+    private void closeWindow(long opened) {
+        List<PostgresEvent> batch;
+        synchronized (this) {
+            if (!windowOpen || window != opened) {
+                return;
+            }
+            windowOpen = false;
+            windowClose = null;
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+    }
+
+    // Called with the lock held
+    private void endWindow() {
+        windowOpen = false;
+        if (windowClose != null) {
+            windowClose.cancel(false);
+            windowClose = null;
+        }
+    }
+
+    // Called with the lock held
+    private List<PostgresEvent> takePending() {
+        List<PostgresEvent> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    synchronized void close() {
+        closed = true;
+        endWindow();
+        pending.clear();
+    }
+}
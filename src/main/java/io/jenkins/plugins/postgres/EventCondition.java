@@ -0,0 +1,434 @@
+package io.jenkins.plugins.postgres;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A condition an event must meet to start a build, such as {@code new.status != old.status} or
+ * {@code changedExcept(updated_at)}. The expression is compiled once when the trigger starts and evaluated
+ * on the payload text, reading only the columns it refers to, before the event is batched or a build is
+ * queued. Each condition counts the events it rejected.
+ *
+ * <p>Operands are {@code new.column} (or {@code record.column}), {@code old.column} (or
+ * {@code old_record.column}), {@code type}, {@code schema}, {@code table}, quoted strings, numbers,
+ * {@code true}, {@code false} and {@code null}. They are compared with {@code == != < <= > >=}, as numbers
+ * when both sides are numeric and as text otherwise; {@code null} only equals {@code null} and is never
+ * ordered. Conditions combine with {@code &&}, {@code ||}, {@code !} (or {@code and}, {@code or},
+ * {@code not}) and parentheses, and an operand on its own is true if its value is {@code true}.
+ * {@code changed(a, b)} is true if any listed column differs between the new and old row and
+ * {@code changedExcept(a, b)} if any other column does. A column missing from the old row counts as
+ * changed, and both functions are true for events without an old row, so that a build is never skipped
+ * for want of information. Payloads that are not JSON objects, such as plain {@code NOTIFY} messages, have
+ * no columns.
+ */
+public final class EventCondition {
+
+    private final String expression;
+    private final Node root;
+    private final AtomicLong rejected = new AtomicLong();
+
+    private EventCondition(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * Compiles an expression.
+     *
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    static EventCondition compile(String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.parseOr();
+        if (parser.peek() != null) {
+            throw new IllegalArgumentException("Unexpected '" + parser.peek() + "' in " + expression);
+        }
+        return new EventCondition(expression, root);
+    }
+
+    /** Compiles the conditions given one per line; blank lines and lines starting with {@code #} are ignored. */
+    static List<EventCondition> compileAll(String conditions) {
+        List<EventCondition> result = new ArrayList<>();
+        if (conditions != null) {
+            for (String line : conditions.split("\\r?\\n")) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    result.add(compile(line));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the first of the conditions the event does not meet, counting the rejection, or null if it meets all. */
+    static EventCondition firstRejecting(List<EventCondition> conditions, PostgresEvent event) {
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        Row row = new Row(event);
+        for (EventCondition condition : conditions) {
+            if (!condition.test(row)) {
+                condition.rejected.incrementAndGet();
+                return condition;
+            }
+        }
+        return null;
+    }
+
+    boolean test(PostgresEvent event) {
+        return test(new Row(event));
+    }
+
+    private boolean test(Row row) {
+        try {
+            return root.test(row);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // The payload is malformed JSON; let the event through rather than lose it
+            return true;
+        }
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /** Number of events this condition kept from starting a build. */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /** The event being evaluated, with the positions of its rows found once. */
+    private static final class Row {
+        private final PostgresEvent event;
+        private final String json;
+        private int record = -2;
+        private int oldRecord = -2;
+
+        Row(PostgresEvent event) {
+            this.event = event;
+            this.json = event.getRawPayload();
+        }
+
+        int record() {
+            if (record == -2) {
+                record = objectMember("record");
+            }
+            return record;
+        }
+
+        int oldRecord() {
+            if (oldRecord == -2) {
+                oldRecord = objectMember("old_record");
+            }
+            return oldRecord;
+        }
+
+        private int objectMember(String name) {
+            if (json.isEmpty() || json.charAt(0) != '{') {
+                return -1;
+            }
+            int start = RealtimeFrame.findMember(json, 0, name);
+            return start >= 0 && json.charAt(start) == '{' ? start : -1;
+        }
+
+        /** The text of a column as written, or null if the row or column is missing. */
+        String raw(int objectStart, String column) {
+            if (objectStart < 0) {
+                return null;
+            }
+            int start = RealtimeFrame.findMember(json, objectStart, column);
+            return start >= 0 ? json.substring(start, RealtimeFrame.skipValue(json, start)) : null;
+        }
+
+        /** The value of a column: strings unescaped, other values as written and JSON null as null. */
+        String value(int objectStart, String column) {
+            String raw = raw(objectStart, column);
+            if (raw == null || raw.equals("null")) {
+                return null;
+            }
+            return raw.charAt(0) == '"' ? RealtimeFrame.readString(raw, 0, raw.length()) : raw;
+        }
+
+        /** Whether any column of the new row that is in (or, if {@code except}, not in) {@code columns} changed. */
+        boolean changed(Set<String> columns, boolean except) {
+            int newStart = record();
+            int oldStart = oldRecord();
+            if (newStart < 0 || oldStart < 0) {
+                return true;
+            }
+            if (!except) {
+                for (String column : columns) {
+                    String old = raw(oldStart, column);
+                    if (old == null || !old.equals(raw(newStart, column))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            int pos = RealtimeFrame.skipWhitespace(json, newStart + 1);
+            while (pos < json.length() && json.charAt(pos) == '"') {
+                int keyEnd = RealtimeFrame.skipString(json, pos);
+                String column = RealtimeFrame.readString(json, pos, keyEnd);
+                int valueStart = RealtimeFrame.skipWhitespace(json, RealtimeFrame.skipWhitespace(json, keyEnd) + 1);
+                int valueEnd = RealtimeFrame.skipValue(json, valueStart);
+                if (!columns.contains(column)) {
+                    String old = raw(oldStart, column);
+                    if (old == null || old.length() != valueEnd - valueStart || !json.regionMatches(valueStart, old, 0, old.length())) {
+                        return true;
+                    }
+                }
+                pos = RealtimeFrame.skipWhitespace(json, valueEnd);
+                if (pos < json.length() && json.charAt(pos) == ',') {
+                    pos = RealtimeFrame.skipWhitespace(json, pos + 1);
+                }
+            }
+            return false;
+        }
+    }
+
+    private interface Node {
+        boolean test(Row row);
+    }
+
+    private interface Operand {
+        String value(Row row);
+    }
+
+    private static final class Parser {
+        private final String text;
+        private final List<String> tokens;
+        private int next;
+
+        Parser(String text) {
+            this.text = text;
+            this.tokens = tokenize(text);
+        }
+
+        String peek() {
+            return next < tokens.size() ? tokens.get(next) : null;
+        }
+
+        private String take() {
+            String token = peek();
+            if (token == null) {
+                throw new IllegalArgumentException("Unexpected end of " + text);
+            }
+            next++;
+            return token;
+        }
+
+        private void expect(String token) {
+            String actual = take();
+            if (!token.equals(actual)) {
+                throw new IllegalArgumentException("Expected '" + token + "' but found '" + actual + "' in " + text);
+            }
+        }
+
+        private boolean accept(String symbol, String keyword) {
+            String token = peek();
+            if (token != null && (token.equals(symbol) || token.equalsIgnoreCase(keyword))) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+
+        Node parseOr() {
+            Node left = parseAnd();
+            while (accept("||", "or")) {
+                Node a = left;
+                Node b = parseAnd();
+                left = row -> a.test(row) || b.test(row);
+            }
+            return left;
+        }
+
+        private Node parseAnd() {
+            Node left = parseNot();
+            while (accept("&&", "and")) {
+                Node a = left;
+                Node b = parseNot();
+                left = row -> a.test(row) && b.test(row);
+            }
+            return left;
+        }
+
+        private Node parseNot() {
+            if (accept("!", "not")) {
+                Node operand = parseNot();
+                return row -> !operand.test(row);
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() {
+            String token = peek();
+            if ("(".equals(token)) {
+                next++;
+                Node inner = parseOr();
+                expect(")");
+                return inner;
+            }
+            if ("changed".equals(token) || "changedExcept".equals(token)) {
+                next++;
+                boolean except = token.equals("changedExcept");
+                Set<String> columns = parseColumns();
+                return row -> row.changed(columns, except);
+            }
+            Operand left = parseOperand();
+            String op = peek();
+            if (op == null || !isComparison(op)) {
+                return row -> "true".equals(left.value(row));
+            }
+            next++;
+            Operand right = parseOperand();
+            return row -> compare(left.value(row), op, right.value(row));
+        }
+
+        private Set<String> parseColumns() {
+            expect("(");
+            Set<String> columns = new HashSet<>();
+            if (!")".equals(peek())) {
+                do {
+                    columns.add(identifier(take()));
+                } while (accept(",", ","));
+            }
+            expect(")");
+            return columns;
+        }
+
+        private Operand parseOperand() {
+            String token = take();
+            char c = token.charAt(0);
+            if (c == '\'' || c == '"') {
+                String literal = token.substring(1, token.length() - 1);
+                return row -> literal;
+            }
+            if (Character.isDigit(c) || c == '-') {
+                try {
+                    new BigDecimal(token);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number '" + token + "' in " + text);
+                }
+                return row -> token;
+            }
+            switch (token) {
+                case "true":
+                case "false":
+                    return row -> token;
+                case "null":
+                    return row -> null;
+                case "type":
+                    return row -> row.event.getEventType();
+                case "schema":
+                    return row -> row.event.getSchema();
+                case "table":
+                    return row -> row.event.getTable();
+                default:
+                    break;
+            }
+            int dot = token.indexOf('.');
+            String prefix = dot > 0 ? token.substring(0, dot) : token;
+            if (dot > 0 && (prefix.equals("new") || prefix.equals("record"))) {
+                String column = identifier(token.substring(dot + 1));
+                return row -> row.value(row.record(), column);
+            }
+            if (dot > 0 && (prefix.equals("old") || prefix.equals("old_record"))) {
+                String column = identifier(token.substring(dot + 1));
+                return row -> row.value(row.oldRecord(), column);
+            }
+            throw new IllegalArgumentException("Unknown operand '" + token + "' in " + text
+                + "; expected new.column, old.column, type, schema, table or a literal");
+        }
+
+        private String identifier(String token) {
+            if (!RowFilter.COLUMN.matcher(token).matches()) {
+                throw new IllegalArgumentException("Invalid column '" + token + "' in " + text);
+            }
+            return token;
+        }
+
+        private static boolean isComparison(String token) {
+            switch (token) {
+                case "==":
+                case "!=":
+                case "<":
+                case "<=":
+                case ">":
+                case ">=":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private static List<String> tokenize(String text) {
+            List<String> tokens = new ArrayList<>();
+            int pos = 0;
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (Character.isWhitespace(c)) {
+                    pos++;
+                } else if (c == '\'' || c == '"') {
+                    int end = text.indexOf(c, pos + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unterminated string in " + text);
+                    }
+                    tokens.add(text.substring(pos, end + 1));
+                    pos = end + 1;
+                } else if (text.startsWith("&&", pos) || text.startsWith("||", pos) || text.startsWith("==", pos)
+                        || text.startsWith("!=", pos) || text.startsWith("<=", pos) || text.startsWith(">=", pos)) {
+                    tokens.add(text.substring(pos, pos + 2));
+                    pos += 2;
+                } else if ("()!<>,".indexOf(c) >= 0) {
+                    tokens.add(String.valueOf(c));
+                    pos++;
+                } else if (c == '=') {
+                    // A single = is taken as ==
+                    tokens.add("==");
+                    pos++;
+                } else if (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.') {
+                    int end = pos + 1;
+                    while (end < text.length() && (Character.isLetterOrDigit(text.charAt(end))
+                            || text.charAt(end) == '_' || text.charAt(end) == '.')) {
+                        end++;
+                    }
+                    String word = text.substring(pos, end);
+                    String lower = word.toLowerCase(Locale.ROOT);
+                    tokens.add(lower.equals("and") || lower.equals("or") || lower.equals("not") ? lower : word);
+                    pos = end;
+                } else {
+                    throw new IllegalArgumentException("Unexpected '" + c + "' in " + text);
+                }
+            }
+            return tokens;
+        }
+    }
+
+    private static boolean compare(String left, String op, String right) {
+        if (left == null || right == null) {
+            boolean equal = left == null && right == null;
+            return op.equals("==") ? equal : op.equals("!=") && !equal;
+        }
+        int result = RowFilter.compare(left, right);
+        switch (op) {
+            case "==":
+                return result == 0;
+            case "!=":
+                return result != 0;
+            case "<":
+                return result < 0;
+            case "<=":
+                return result <= 0;
+            case ">":
+                return result > 0;
+            default:
+                return result >= 0;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Worker pool that moves event handling off the socket reader threads. Each trigger gets its own
+ * bounded {@link EventQueue}; each ordering key of a queue with pending events occupies at most one worker.
+ */
+public final class EventDispatcher {
+
+    static final int DEFAULT_THREADS = 4;
+
+    private static EventDispatcher instance;
+
+    private final ThreadPoolExecutor executor;
+
+    private EventDispatcher(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new NamingThreadFactory(new DaemonThreadFactory(), "PostgresEventTrigger.Dispatcher"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized EventDispatcher get() {
+        if (instance == null) {
+            PostgresEventTriggerConfiguration config = PostgresEventTriggerConfiguration.get();
+            instance = new EventDispatcher(config != null ? config.getDispatchThreads() : DEFAULT_THREADS);
+        }
+        return instance;
+    }
+
+    public EventQueue createQueue(String name, Consumer<PostgresEvent> sink) {
+        return createQueue(name, null, sink, null);
+    }
+
+    /**
+     * Creates a queue that hands events with the same key to {@code sink} in order and events with
+     * different keys in parallel; see {@link EventQueue}.
+     */
+    EventQueue createQueue(String name, Function<PostgresEvent, String> keyFunction, Consumer<PostgresEvent> sink,
+                           Consumer<PostgresEvent> discardSink) {
+        PostgresEventTriggerConfiguration config = PostgresEventTriggerConfiguration.get();
+        int capacity = config != null ? config.getDispatchQueueCapacity() : PostgresEventTriggerConfiguration.DEFAULT_QUEUE_CAPACITY;
+        OverflowPolicy policy = config != null ? config.getOverflowPolicy() : OverflowPolicy.COALESCE;
+        return new EventQueue(name, keyFunction, sink, discardSink, executor, capacity, policy);
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    void setThreads(int threads) {
+        int size = Math.max(1, threads);
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            instance = null;
+        }
+    }
+}
@@ -0,0 +1,621 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+import jenkins.model.Jenkins;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the events received from one instance, kept under {@code JENKINS_HOME} so that
+ * triggers can resume after a restart. Events are numbered with consecutive offsets and written to
+ * memory-mapped segment files; each trigger commits the offset of the last event it has turned into a
+ * build, and on start replays everything after it.
+ *
+ * <p>Committed offsets are flushed every few seconds, so a crash can replay a few events twice but never
+ * skips one. Segments that every trigger has consumed, or that exceed the retention limit, are deleted.
+ * The offset of a deleted job is dropped, and that of a renamed job moves with it; a consumer whose
+ * trigger has not run for a day is forgotten, so it no longer holds back compaction.
+ */
+public final class EventJournal implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(EventJournal.class.getName());
+    static final int SEGMENT_BYTES = Integer.getInteger(EventJournal.class.getName() + ".segmentBytes", 16 * 1024 * 1024);
+    private static final long MAINTENANCE_INTERVAL_SECONDS = 5;
+    static final long CONSUMER_EXPIRY_MILLIS = Long.getLong(EventJournal.class.getName() + ".consumerExpiryMillis",
+        TimeUnit.DAYS.toMillis(1));
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OFFSETS_FILE = "offsets.properties";
+    // length, crc, offset, lsn, received time
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8;
+
+    private final File directory;
+    private final long retentionBytes;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> committed = new HashMap<>();
+    // Consumers without a running trigger -> since when; every consumer is detached until its trigger starts
+    private final Map<String, Long> detachedSince = new HashMap<>();
+    private boolean offsetsDirty;
+    private boolean closed;
+    private long nextOffset;
+    private long lastLsn;
+    // Number of events recorded with lastLsn, the changes of the last transaction written
+    private int lastLsnCount;
+    private ScheduledFuture<?> maintenance;
+
+    EventJournal(File directory, long retentionBytes) throws IOException {
+        this.directory = directory;
+        this.retentionBytes = retentionBytes;
+        Files.createDirectories(directory.toPath());
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        List<Long> baseOffsets = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    baseOffsets.add(Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Ignoring unexpected file in event journal: " + file);
+                }
+            }
+        }
+        baseOffsets.sort(null);
+        for (long baseOffset : baseOffsets) {
+            Segment segment = Segment.open(segmentFile(baseOffset), baseOffset, 0);
+            segments.add(segment);
+            nextOffset = segment.nextOffset;
+            if (segment.lastLsn > lastLsn) {
+                lastLsn = segment.lastLsn;
+                lastLsnCount = segment.lastLsnCount;
+            } else if (segment.lastLsn == lastLsn) {
+                // A transaction that spans segments
+                lastLsnCount += segment.lastLsnCount;
+            }
+        }
+        loadOffsets();
+        long now = System.currentTimeMillis();
+        for (String consumer : committed.keySet()) {
+            detachedSince.put(consumer, now);
+        }
+    }
+
+    /** Opens the journal of the named instance and schedules its periodic offset flush and compaction. */
+    public static EventJournal open(String instanceName, long retentionBytes) throws IOException {
+        File directory = new File(new File(Jenkins.get().getRootDir(), "postgres-event-trigger/journal"), Util.rawEncode(instanceName));
+        EventJournal journal = new EventJournal(directory, retentionBytes);
+        journal.maintenance = PostgresEventTriggerTimer.get().scheduleWithFixedDelay(journal::maintain,
+            MAINTENANCE_INTERVAL_SECONDS, MAINTENANCE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        return journal;
+    }
+
+    private File segmentFile(long baseOffset) {
+        return new File(directory, String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Appends an event and assigns its offset. {@code lsn} is the commit position of the change on the
+     * server, or 0 if the source has none. Failures are logged and leave the event without an offset,
+     * so it is still delivered but will not be replayed. A closed journal rejects appends.
+     */
+    void record(PostgresEvent event, long lsn) {
+        try {
+            event.setOffset(append(event, lsn));
+        } catch (ClosedChannelException e) {
+            // A source still delivering while it shuts down
+            LOGGER.fine("Not journaling event, journal " + directory + " is closed");
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to write event to journal " + directory, e);
+        }
+    }
+
+    synchronized long append(PostgresEvent event, long lsn) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        byte[] body = encode(event);
+        int length = HEADER_BYTES + body.length;
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || !segment.fits(length)) {
+            segment = Segment.open(segmentFile(nextOffset), nextOffset, Math.max(SEGMENT_BYTES, length + 4));
+            segments.add(segment);
+        }
+        long offset = nextOffset++;
+        segment.append(offset, lsn, event.getReceivedAt(), body);
+        if (lsn > lastLsn) {
+            lastLsn = lsn;
+            lastLsnCount = 1;
+        } else if (lsn == lastLsn) {
+            lastLsnCount++;
+        }
+        return offset;
+    }
+
+    /** Writes appended events to disk; called before a position is acknowledged to the server. */
+    synchronized void force() {
+        if (closed) {
+            return;
+        }
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment != null) {
+            segment.buffer.force();
+        }
+    }
+
+    /** The offset of the last appended event, or -1 if nothing has been appended yet. */
+    synchronized long getEndOffset() {
+        return nextOffset - 1;
+    }
+
+    /** The highest server position recorded, so a source that can resume knows where to start. */
+    synchronized long getLastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * The number of events recorded with {@link #getLastLsn()}. Changes of one transaction share its
+     * commit position, so a source that resends a transaction cut short by a crash skips only these.
+     */
+    synchronized int getLastLsnCount() {
+        return lastLsnCount;
+    }
+
+    /** The last offset the consumer has committed, or -1 if it has never committed one. */
+    synchronized long getCommittedOffset(String consumer) {
+        Long offset = committed.get(consumer);
+        return offset != null ? offset : -1;
+    }
+
+    synchronized void commit(String consumer, long offset) {
+        Long previous = committed.get(consumer);
+        if (previous == null || offset > previous) {
+            committed.put(consumer, offset);
+            offsetsDirty = true;
+        }
+    }
+
+    /** Marks the consumer's trigger as running, so its offset is kept however long it stays unchanged. */
+    synchronized void attach(String consumer) {
+        detachedSince.remove(consumer);
+    }
+
+    /** Marks the consumer's trigger as stopped; its offset expires unless the trigger starts again. */
+    synchronized void detach(String consumer) {
+        if (committed.containsKey(consumer)) {
+            detachedSince.put(consumer, System.currentTimeMillis());
+        }
+    }
+
+    /** Forgets a consumer, and every consumer under it if it is a folder. */
+    synchronized void removeConsumer(String consumer) {
+        String prefix = consumer + "/";
+        offsetsDirty |= committed.keySet().removeIf(name -> name.equals(consumer) || name.startsWith(prefix));
+        detachedSince.keySet().removeIf(name -> name.equals(consumer) || name.startsWith(prefix));
+    }
+
+    /** Moves a consumer's offset to its new name, keeping the later one if the new name has committed too. */
+    synchronized void renameConsumer(String from, String to) {
+        Long offset = committed.remove(from);
+        if (offset == null) {
+            return;
+        }
+        committed.merge(to, offset, Math::max);
+        Long since = detachedSince.remove(from);
+        if (since == null) {
+            detachedSince.remove(to);
+        } else if (!detachedSince.containsKey(to)) {
+            detachedSince.put(to, since);
+        }
+        offsetsDirty = true;
+    }
+
+    /** Forgets the consumers that have been detached for longer than the expiry time. */
+    synchronized void expireConsumers(long now) {
+        Iterator<Map.Entry<String, Long>> entries = detachedSince.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Long> entry = entries.next();
+            if (now - entry.getValue() > CONSUMER_EXPIRY_MILLIS) {
+                entries.remove();
+                committed.remove(entry.getKey());
+                offsetsDirty = true;
+                LOGGER.info("Forgetting journal offset of " + entry.getKey() + " in " + directory + ", its trigger has not run since "
+                    + new Date(entry.getValue()));
+            }
+        }
+    }
+
+    /** Passes every retained event with an offset in {@code (after, upTo]} to {@code sink}, in order. */
+    void read(long after, long upTo, Consumer<PostgresEvent> sink) {
+        for (Segment segment : segments) {
+            if (segment.nextOffset - 1 <= after) {
+                continue;
+            }
+            if (segment.baseOffset > upTo) {
+                break;
+            }
+            // A segment compacted away meanwhile is skipped, its events are past retention
+            if (!segment.pin()) {
+                continue;
+            }
+            try {
+                segment.read(after, upTo, sink);
+            } finally {
+                segment.unpin();
+            }
+        }
+    }
+
+    private void maintain() {
+        try {
+            expireConsumers(System.currentTimeMillis());
+            flushOffsets();
+            compact();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Event journal maintenance failed for " + directory, e);
+        }
+    }
+
+    /**
+     * Deletes segments that every consumer has moved past, then the oldest segments while the journal
+     * is larger than its retention limit. The segment being written is always kept.
+     */
+    synchronized void compact() {
+        if (closed) {
+            return;
+        }
+        long consumed = Long.MAX_VALUE;
+        for (long offset : committed.values()) {
+            consumed = Math.min(consumed, offset);
+        }
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.capacity();
+        }
+        long discardedBefore = -1;
+        while (segments.size() > 1) {
+            Segment oldest = segments.get(0);
+            boolean consumedByAll = oldest.nextOffset - 1 <= consumed;
+            if (!consumedByAll && size <= retentionBytes) {
+                break;
+            }
+            if (!consumedByAll) {
+                discardedBefore = oldest.nextOffset;
+            }
+            segments.remove(0);
+            size -= oldest.capacity();
+            oldest.release(true);
+        }
+        if (discardedBefore >= 0) {
+            LOGGER.warning("Event journal " + directory + " exceeds its retention limit, discarded unconsumed events before offset " + discardedBefore);
+        }
+    }
+
+    private void loadOffsets() throws IOException {
+        File file = new File(directory, OFFSETS_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        }
+        for (String consumer : properties.stringPropertyNames()) {
+            try {
+                committed.put(consumer, Long.parseLong(properties.getProperty(consumer)));
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Ignoring invalid journal offset for " + consumer);
+            }
+        }
+    }
+
+    synchronized void flushOffsets() throws IOException {
+        if (!offsetsDirty) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> entry : committed.entrySet()) {
+            properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        File file = new File(directory, OFFSETS_FILE);
+        File temp = new File(directory, OFFSETS_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+            properties.store(out, "Last event offset consumed by each trigger");
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        offsetsDirty = false;
+    }
+
+    /** Writes the journal to disk; later appends fail. Closing again has no effect. */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (maintenance != null) {
+            maintenance.cancel(false);
+        }
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last != null) {
+            last.buffer.force();
+        }
+        try {
+            flushOffsets();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save event journal offsets in " + directory, e);
+        }
+        for (Segment segment : segments) {
+            segment.release(false);
+        }
+        segments.clear();
+    }
+
+    private static byte[] encode(PostgresEvent event) {
+        byte[][] fields = {
+            event.getSchema().getBytes(StandardCharsets.UTF_8),
+            event.getTable().getBytes(StandardCharsets.UTF_8),
+            event.getEventType().getBytes(StandardCharsets.UTF_8),
+            event.getRawPayload().getBytes(StandardCharsets.UTF_8)
+        };
+        int length = 0;
+        for (byte[] field : fields) {
+            length += 4 + field.length;
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        for (byte[] field : fields) {
+            body.putInt(field.length).put(field);
+        }
+        return body.array();
+    }
+
+    private static PostgresEvent decode(ByteBuffer body, long offset, long receivedAt) {
+        String schema = readField(body);
+        String table = readField(body);
+        String eventType = readField(body);
+        String payload = readField(body);
+        PostgresEvent event = new PostgresEvent(schema, table, eventType, payload, receivedAt);
+        event.setOffset(offset);
+        return event;
+    }
+
+    private static String readField(ByteBuffer body) {
+        int length = body.getInt();
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Drops or moves the offsets of jobs that are deleted or renamed, in the journals that are open. */
+    @Extension
+    public static class ConsumerCleaner extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            for (EventJournal journal : RealtimeConnectionManager.get().getOpenJournals()) {
+                journal.removeConsumer(item.getFullName());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            // Also fired for each job inside a renamed or moved folder
+            if (item instanceof Job) {
+                for (EventJournal journal : RealtimeConnectionManager.get().getOpenJournals()) {
+                    journal.renameConsumer(oldFullName, newFullName);
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+        // Unsafe.invokeCleaner unmaps a buffer at once; without it a mapping lasts until the buffer is
+        // garbage collected, which keeps the file's disk space and, on Windows, prevents deleting it
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Journal segments are unmapped when garbage collected", e);
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        private final File file;
+        private final long baseOffset;
+        private final MappedByteBuffer buffer;
+        // Published after a record is complete, so readers never see a partial record
+        private volatile int writePosition;
+        private volatile long nextOffset;
+        private long lastLsn;
+        private int lastLsnCount;
+        // Replays reading the mapping outside the journal lock; it is unmapped once the last one is done
+        private int readers;
+        private boolean released;
+        private boolean deleteOnRelease;
+
+        private Segment(File file, long baseOffset, MappedByteBuffer buffer) {
+            this.file = file;
+            this.baseOffset = baseOffset;
+            this.buffer = buffer;
+            this.nextOffset = baseOffset;
+        }
+
+        static Segment open(File file, long baseOffset, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed
+                Segment segment = new Segment(file, baseOffset,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), size)));
+                segment.recover();
+                return segment;
+            }
+        }
+
+        /** Finds the end of the last complete record; a torn record left by a crash is cut off. */
+        private void recover() {
+            int position = 0;
+            while (position + HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length < HEADER_BYTES || position + length > buffer.capacity()
+                        || buffer.getInt(position + 4) != checksum(position, length)) {
+                    break;
+                }
+                nextOffset = buffer.getLong(position + 8) + 1;
+                countLsn(buffer.getLong(position + 16));
+                position += length;
+            }
+            if (position + 4 <= buffer.capacity()) {
+                buffer.putInt(position, 0);
+            }
+            writePosition = position;
+        }
+
+        private void countLsn(long lsn) {
+            if (lsn > lastLsn) {
+                lastLsn = lsn;
+                lastLsnCount = 1;
+            } else if (lsn == lastLsn) {
+                lastLsnCount++;
+            }
+        }
+
+        private int checksum(int position, int length) {
+            CRC32 crc = new CRC32();
+            ByteBuffer record = buffer.duplicate();
+            record.limit(position + length).position(position + 8);
+            crc.update(record);
+            return (int) crc.getValue();
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        boolean fits(int length) {
+            // Leave room for the zero length that marks the end
+            return writePosition + length + 4 <= buffer.capacity();
+        }
+
+        void append(long offset, long lsn, long receivedAt, byte[] body) {
+            int position = writePosition;
+            int length = HEADER_BYTES + body.length;
+            buffer.putLong(position + 8, offset);
+            buffer.putLong(position + 16, lsn);
+            buffer.putLong(position + 24, receivedAt);
+            buffer.put(position + HEADER_BYTES, body);
+            buffer.putInt(position + length, 0);
+            buffer.putInt(position + 4, checksum(position, length));
+            buffer.putInt(position, length);
+            countLsn(lsn);
+            nextOffset = offset + 1;
+            writePosition = position + length;
+        }
+
+        /** Keeps the mapping while the segment is read; false if it has been released. */
+        synchronized boolean pin() {
+            if (released) {
+                return false;
+            }
+            readers++;
+            return true;
+        }
+
+        synchronized void unpin() {
+            if (--readers == 0 && released) {
+                unmap();
+            }
+        }
+
+        /**
+         * Unmaps the segment, or has the last reader unmap it, and deletes the file if asked to. The
+         * segment must no longer be written.
+         */
+        synchronized void release(boolean delete) {
+            if (released) {
+                return;
+            }
+            released = true;
+            deleteOnRelease = delete;
+            if (readers == 0) {
+                unmap();
+            }
+        }
+
+        private void unmap() {
+            if (INVOKE_CLEANER != null) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    LOGGER.log(Level.FINE, "Could not unmap journal segment " + file, e);
+                }
+            }
+            if (deleteOnRelease) {
+                try {
+                    Files.deleteIfExists(file.toPath());
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Could not delete journal segment " + file, e);
+                }
+            }
+        }
+
+        void read(long after, long upTo, Consumer<PostgresEvent> sink) {
+            int end = writePosition;
+            int position = 0;
+            while (position < end) {
+                int length = buffer.getInt(position);
+                long offset = buffer.getLong(position + 8);
+                if (offset > upTo) {
+                    return;
+                }
+                if (offset > after) {
+                    ByteBuffer body = buffer.duplicate();
+                    body.limit(position + length).position(position + HEADER_BYTES);
+                    sink.accept(decode(body, offset, buffer.getLong(position + 24)));
+                }
+                position += length;
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package io.jenkins.plugins.postgres;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import jenkins.metrics.api.Metrics;
+import jenkins.model.Jenkins;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the event pipeline, published through the Metrics plugin under {@code postgres-event-trigger}.
+ * Each instance has messages received per table, decode time, dispatch latency overall and per table,
+ * the latency from the database commit to the build being queued and its connection state and
+ * reconnects. Builds scheduled or deferred by rate limits and events coalesced, dropped, rejected by
+ * trigger conditions or recognised as duplicates are counted for the whole controller.
+ *
+ * <p>The registry is looked up on use. Until the Metrics plugin has started, metrics are kept in a local
+ * registry and moved into the plugin's registry once it is available, so nothing recorded early is lost.
+ */
+final class EventMetrics {
+
+    static final String PREFIX = "postgres-event-trigger";
+    private static final MetricRegistry FALLBACK = new MetricRegistry();
+    private static final Map<String, EventMetrics> INSTANCES = new ConcurrentHashMap<>();
+    // The Metrics plugin's registry and the Jenkins it was found in, so it is not looked up on every event
+    private static volatile Published published;
+
+    private final String prefix;
+    // The instance's metrics in the current registry, replaced when the registry changes
+    private volatile Bound bound;
+
+    private EventMetrics(String instanceName) {
+        prefix = MetricRegistry.name(PREFIX, "instance", instanceName);
+    }
+
+    /** The metrics of the named instance. */
+    static EventMetrics forInstance(String instanceName) {
+        return INSTANCES.computeIfAbsent(String.valueOf(instanceName), EventMetrics::new);
+    }
+
+    static MetricRegistry registry() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        Published current = published;
+        if (current != null && current.jenkins == jenkins) {
+            return current.registry;
+        }
+        if (jenkins == null || jenkins.getPlugin(Metrics.class) == null) {
+            // Jenkins is not running, as in unit tests and benchmarks, or the Metrics plugin is not loaded yet
+            return FALLBACK;
+        }
+        MetricRegistry registry = Metrics.metricRegistry();
+        synchronized (FALLBACK) {
+            moveMetrics(FALLBACK, registry);
+        }
+        published = new Published(jenkins, registry);
+        return registry;
+    }
+
+    /** Moves the metrics of {@code from} to {@code to}; a metric {@code to} already has is left out. */
+    static void moveMetrics(MetricRegistry from, MetricRegistry to) {
+        for (Map.Entry<String, Metric> entry : from.getMetrics().entrySet()) {
+            from.remove(entry.getKey());
+            try {
+                to.register(entry.getKey(), entry.getValue());
+            } catch (IllegalArgumentException e) {
+                // Already created in the plugin's registry, which keeps its own
+            }
+        }
+    }
+
+    private Bound bound() {
+        MetricRegistry registry = registry();
+        Bound current = bound;
+        if (current == null || current.registry != registry) {
+            current = new Bound(registry, prefix);
+            bound = current;
+        }
+        return current;
+    }
+
+    /** Returns the meter of change messages received for a table, named {@code schema.table}. */
+    Meter received(String table) {
+        Bound current = bound();
+        Meter meter = current.received.get(table);
+        if (meter == null) {
+            meter = current.received.computeIfAbsent(table,
+                t -> current.registry.meter(MetricRegistry.name(prefix, "received", t)));
+        }
+        return meter;
+    }
+
+    /** Records the time from reading a message to handing the decoded event to the triggers. */
+    void decoded(long startNanos) {
+        bound().decode.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the time an event waited between being received and being handled by a trigger, for the
+     * instance and for the event's table. Triggers ordering events per row report their lag per table.
+     */
+    void dispatched(PostgresEvent event) {
+        long waited = Math.max(0, System.currentTimeMillis() - event.getReceivedAt());
+        Bound current = bound();
+        current.dispatch.update(waited, TimeUnit.MILLISECONDS);
+        String table = event.getSchema() + "." + event.getTable();
+        Timer tableLag = current.lag.get(table);
+        if (tableLag == null) {
+            tableLag = current.lag.computeIfAbsent(table, t -> current.registry.timer(MetricRegistry.name(prefix, "lag", t)));
+        }
+        tableLag.update(waited, TimeUnit.MILLISECONDS);
+    }
+
+    /** Records the time from the database commit of each event to the build being queued, if the commit time is known. */
+    void queued(Iterable<PostgresEvent> events) {
+        long now = System.currentTimeMillis();
+        Timer commitToQueue = bound().commitToQueue;
+        for (PostgresEvent event : events) {
+            long committedAt = event.getCommitTimestamp();
+            if (committedAt > 0) {
+                commitToQueue.update(Math.max(0, now - committedAt), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** Publishes the connection state and reconnects of an instance's event source until {@link #unregister} is called. */
+    void register(EventSource source) {
+        MetricRegistry registry = registry();
+        unregister();
+        registry.register(MetricRegistry.name(prefix, "connected"),
+            (Gauge<Integer>) () -> source.getState() == EventSource.ConnectionState.CONNECTED ? 1 : 0);
+        registry.register(MetricRegistry.name(prefix, "reconnects"), (Gauge<Integer>) source::getReconnectCount);
+        registry.register(MetricRegistry.name(prefix, "disconnected-millis"), (Gauge<Long>) source::getDisconnectedMillis);
+    }
+
+    void unregister() {
+        MetricRegistry registry = registry();
+        registry.remove(MetricRegistry.name(prefix, "connected"));
+        registry.remove(MetricRegistry.name(prefix, "reconnects"));
+        registry.remove(MetricRegistry.name(prefix, "disconnected-millis"));
+    }
+
+    static void buildScheduled() {
+        registry().meter(MetricRegistry.name(PREFIX, "builds", "scheduled")).mark();
+    }
+
+    static void eventsCoalesced(long count) {
+        registry().meter(MetricRegistry.name(PREFIX, "events", "coalesced")).mark(count);
+    }
+
+    static void eventDropped() {
+        registry().meter(MetricRegistry.name(PREFIX, "events", "dropped")).mark();
+    }
+
+    static void buildDeferred() {
+        registry().meter(MetricRegistry.name(PREFIX, "builds", "deferred")).mark();
+    }
+
+    static void eventRejected() {
+        registry().meter(MetricRegistry.name(PREFIX, "events", "rejected")).mark();
+    }
+
+    static void eventDuplicate() {
+        registry().meter(MetricRegistry.name(PREFIX, "events", "duplicate")).mark();
+    }
+
+    private static final class Published {
+        private final Jenkins jenkins;
+        private final MetricRegistry registry;
+
+        private Published(Jenkins jenkins, MetricRegistry registry) {
+            this.jenkins = jenkins;
+            this.registry = registry;
+        }
+    }
+
+    private static final class Bound {
+        private final MetricRegistry registry;
+        private final Map<String, Meter> received = new ConcurrentHashMap<>();
+        private final Map<String, Timer> lag = new ConcurrentHashMap<>();
+        private final Timer decode;
+        private final Timer dispatch;
+        private final Timer commitToQueue;
+
+        private Bound(MetricRegistry registry, String prefix) {
+            this.registry = registry;
+            decode = registry.timer(MetricRegistry.name(prefix, "decode"));
+            dispatch = registry.timer(MetricRegistry.name(prefix, "dispatch"));
+            commitToQueue = registry.timer(MetricRegistry.name(prefix, "commit-to-queue"));
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded queue of events for one trigger. Events are offered from the socket reader thread and
+ * drained on the {@link EventDispatcher} worker pool. Each event has an ordering key, such as its table;
+ * events with the same key are handled one at a time in arrival order, while events with different keys
+ * are handled in parallel, each key occupying at most one worker. Without a key function every event has
+ * the same key, so the trigger sees all its events in arrival order.
+ */
+public final class EventQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(EventQueue.class.getName());
+    // Events handled per drain pass before the key yields its worker to other keys and queues
+    private static final int DRAIN_BATCH = 64;
+    // Keys listed on the job page, those waiting longest first
+    private static final int LAGGING_KEYS = 10;
+    // Longest a BLOCK offer holds up the connection thread, which is shared by all triggers of the instance
+    // and also answers heartbeats; after it the offered event is dropped
+    static final long BLOCK_TIMEOUT_MILLIS = Long.getLong(EventQueue.class.getName() + ".blockTimeoutMillis", 1000);
+
+    private final String name;
+    private final Function<PostgresEvent, String> keyFunction;
+    private final Consumer<PostgresEvent> sink;
+    private final Consumer<PostgresEvent> discardSink;
+    private final Executor executor;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    // Keys with queued events or a worker; a key is removed once it has neither
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private int depth;
+    private boolean closed;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+
+    EventQueue(String name, Consumer<PostgresEvent> sink, Executor executor, int capacity, OverflowPolicy policy) {
+        this(name, null, sink, null, executor, capacity, policy);
+    }
+
+    /**
+     * {@code keyFunction} may be null to handle all events in order. Events dropped or coalesced away
+     * because the queue is full are passed to {@code discardSink}, which may be null, on the offering thread.
+     */
+    EventQueue(String name, Function<PostgresEvent, String> keyFunction, Consumer<PostgresEvent> sink,
+               Consumer<PostgresEvent> discardSink, Executor executor, int capacity, OverflowPolicy policy) {
+        this.name = name;
+        this.keyFunction = keyFunction;
+        this.sink = sink;
+        this.discardSink = discardSink;
+        this.executor = executor;
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy != null ? policy : OverflowPolicy.COALESCE;
+    }
+
+    public void offer(PostgresEvent event) {
+        received.incrementAndGet();
+        String key = keyFunction != null ? keyFunction.apply(event) : "";
+        PostgresEvent discarded = null;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (depth >= capacity) {
+                discarded = makeRoom(event, key);
+            }
+            if (discarded != event) {
+                Lane lane = lanes.computeIfAbsent(key, Lane::new);
+                lane.events.addLast(event);
+                depth++;
+                if (!lane.draining) {
+                    lane.draining = true;
+                    executor.execute(() -> drain(lane));
+                }
+            }
+        }
+        if (discarded != null && discardSink != null) {
+            discardSink.accept(discarded);
+        }
+    }
+
+    // Called with the lock held; returns the event removed to make room, the offered event itself if it
+    // cannot be queued, or null if room was made by waiting
+    private PostgresEvent makeRoom(PostgresEvent event, String key) {
+        switch (policy) {
+            case BLOCK:
+                long deadline = System.nanoTime() + BLOCK_TIMEOUT_MILLIS * 1_000_000L;
+                while (depth >= capacity && !closed) {
+                    long remaining = (deadline - System.nanoTime()) / 1_000_000L;
+                    if (remaining <= 0) {
+                        LOGGER.log(Level.FINE, "Queue for {0} stayed full for {1} ms, dropping event",
+                            new Object[] {name, BLOCK_TIMEOUT_MILLIS});
+                        dropped.incrementAndGet();
+                        EventMetrics.eventDropped();
+                        return event;
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.incrementAndGet();
+                        EventMetrics.eventDropped();
+                        return event;
+                    }
+                }
+                return closed ? event : null;
+            case COALESCE:
+                // The same table's events usually share the key, so its queue is searched first
+                Lane own = lanes.get(key);
+                PostgresEvent merged = own != null ? removeLastFromSameSource(own, event) : null;
+                for (Iterator<Lane> it = lanes.values().iterator(); merged == null && it.hasNext(); ) {
+                    Lane lane = it.next();
+                    if (lane != own) {
+                        merged = removeLastFromSameSource(lane, event);
+                    }
+                }
+                if (merged != null) {
+                    coalesced.incrementAndGet();
+                    EventMetrics.eventsCoalesced(1);
+                    return merged;
+                }
+                dropped.incrementAndGet();
+                EventMetrics.eventDropped();
+                return removeOldest();
+            case DROP_OLDEST:
+            default:
+                dropped.incrementAndGet();
+                EventMetrics.eventDropped();
+                return removeOldest();
+        }
+    }
+
+    private PostgresEvent removeLastFromSameSource(Lane lane, PostgresEvent event) {
+        Iterator<PostgresEvent> it = lane.events.descendingIterator();
+        while (it.hasNext()) {
+            PostgresEvent queued = it.next();
+            if (queued.isSameSource(event)) {
+                it.remove();
+                depth--;
+                return queued;
+            }
+        }
+        return null;
+    }
+
+    // Removes the event that has waited longest, across all keys
+    private PostgresEvent removeOldest() {
+        Lane oldest = null;
+        for (Lane lane : lanes.values()) {
+            PostgresEvent head = lane.events.peekFirst();
+            if (head != null && (oldest == null || head.getReceivedAt() < oldest.events.peekFirst().getReceivedAt())) {
+                oldest = lane;
+            }
+        }
+        if (oldest == null) {
+            return null;
+        }
+        depth--;
+        return oldest.events.pollFirst();
+    }
+
+    private void drain(Lane lane) {
+        for (int i = 0; i < DRAIN_BATCH; i++) {
+            PostgresEvent event;
+            synchronized (this) {
+                event = lane.events.pollFirst();
+                if (event == null) {
+                    lane.draining = false;
+                    lanes.remove(lane.key);
+                    return;
+                }
+                depth--;
+                notifyAll();
+            }
+            try {
+                sink.accept(event);
+                dispatched.incrementAndGet();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error dispatching event for " + name, e);
+            }
+        }
+        synchronized (this) {
+            if (lane.events.isEmpty() || closed) {
+                lane.draining = false;
+                lanes.remove(lane.key);
+                return;
+            }
+        }
+        executor.execute(() -> drain(lane));
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (Lane lane : lanes.values()) {
+                lane.events.clear();
+            }
+            depth = 0;
+            notifyAll();
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getDepth() {
+        return depth;
+    }
+
+    /** Number of ordering keys with events queued or being handled. */
+    public synchronized int getActiveKeyCount() {
+        return lanes.size();
+    }
+
+    /** How long the oldest queued event has waited, 0 if none is waiting. */
+    public long getMaxLagMillis() {
+        List<KeyLag> lagging = getLaggingKeys();
+        return lagging.isEmpty() ? 0 : lagging.get(0).getLagMillis();
+    }
+
+    /** The keys whose oldest queued event has waited longest, with their queued events; at most ten. */
+    public List<KeyLag> getLaggingKeys() {
+        long now = System.currentTimeMillis();
+        List<KeyLag> lagging = new ArrayList<>();
+        synchronized (this) {
+            for (Lane lane : lanes.values()) {
+                PostgresEvent head = lane.events.peekFirst();
+                if (head != null) {
+                    lagging.add(new KeyLag(lane.key, lane.events.size(), Math.max(0, now - head.getReceivedAt())));
+                }
+            }
+        }
+        lagging.sort(Comparator.comparingLong(KeyLag::getLagMillis).reversed());
+        return lagging.size() > LAGGING_KEYS ? new ArrayList<>(lagging.subList(0, LAGGING_KEYS)) : lagging;
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    private static final class Lane {
+        private final String key;
+        private final ArrayDeque<PostgresEvent> events = new ArrayDeque<>();
+        // Whether a worker is handling or about to handle this key's events
+        private boolean draining;
+
+        private Lane(String key) {
+            this.key = key;
+        }
+    }
+
+    /** The events queued for one ordering key and how long the oldest of them has waited. */
+    public static final class KeyLag {
+        private final String key;
+        private final int depth;
+        private final long lagMillis;
+
+        KeyLag(String key, int depth, long lagMillis) {
+            this.key = key;
+            this.depth = depth;
+            this.lagMillis = lagMillis;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getLagMillis() {
+            return lagMillis;
+        }
+    }
+}
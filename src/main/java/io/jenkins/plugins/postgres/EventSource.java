@@ -0,0 +1,82 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.function.Consumer;
+
+/**
+ * A connection that delivers row changes for subscribed tables. One event source is shared by every
+ * trigger bound to the same configured instance; see {@link RealtimeConnectionManager}.
+ */
+public interface EventSource {
+
+    enum ConnectionState {
+        CONNECTING("Connecting"),
+        CONNECTED("Connected"),
+        DISCONNECTED("Disconnected");
+
+        private final String displayName;
+
+        ConnectionState(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * Subscribes to changes of one table. A non-empty {@code filter} such as {@code status=eq.ready}
+     * restricts the subscription to matching rows. {@code table} may be a glob such as {@code audit_*}
+     * or {@code *} for every table of the schema, and {@code event} may be {@code *} for inserts,
+     * updates and deletes.
+     */
+    Subscription subscribeToTable(String schema, String table, String filter, String event, Consumer<PostgresEvent> handler);
+
+    void unsubscribe(Subscription subscription);
+
+    ConnectionState getState();
+
+    int getReconnectCount();
+
+    /** Total time spent without a connection since the source was created, including the current outage. */
+    long getDisconnectedMillis();
+
+    /**
+     * The journal received events are recorded in, or {@code null} if journaling is disabled. The journal
+     * is shared by the instance's connections and closed by {@link RealtimeConnectionManager}, not the source.
+     */
+    EventJournal getJournal();
+
+    /** Closes the connection for good; unlike a dropped connection it is not re-established. */
+    void shutdown();
+
+    final class Subscription {
+        private final String topic;
+        private final String event;
+        private final Consumer<PostgresEvent> handler;
+        private final RoutingIndex.Route route;
+
+        Subscription(String topic, String event, Consumer<PostgresEvent> handler, RoutingIndex.Route route) {
+            this.topic = topic;
+            this.event = event;
+            this.handler = handler;
+            this.route = route;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        Consumer<PostgresEvent> getHandler() {
+            return handler;
+        }
+
+        RoutingIndex.Route getRoute() {
+            return route;
+        }
+    }
+}
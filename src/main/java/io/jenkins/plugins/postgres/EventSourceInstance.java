@@ -0,0 +1,20 @@
+package io.jenkins.plugins.postgres;
+
+/**
+ * A configured database that triggers can be bound to by name.
+ */
+public interface EventSourceInstance {
+
+    String getName();
+
+    /** Builds per minute that all triggers of the instance may schedule together, 0 for no limit. */
+    default int getMaxBuildsPerMinute() {
+        return 0;
+    }
+
+    /**
+     * Creates and starts connecting a new event source; the connection is opened in the background.
+     * Received events are recorded in {@code journal} unless it is {@code null}.
+     */
+    EventSource openEventSource(EventJournal journal) throws Exception;
+}
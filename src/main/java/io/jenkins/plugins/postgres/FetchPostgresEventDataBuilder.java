@@ -0,0 +1,83 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractProject;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+import hudson.util.FormValidation;
+import jenkins.tasks.SimpleBuildStep;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the event data of a triggered build to a file in the workspace. Data that was too large for
+ * the {@code POSTGRES_EVENT_DATA} parameter is copied from its spill file; otherwise the parameter is written.
+ */
+public class FetchPostgresEventDataBuilder extends Builder implements SimpleBuildStep {
+
+    private String file = SpilledEventData.FILE_NAME;
+
+    @DataBoundConstructor
+    public FetchPostgresEventDataBuilder() {
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    @DataBoundSetter
+    public void setFile(String file) {
+        this.file = file != null && !file.trim().isEmpty() ? file.trim() : SpilledEventData.FILE_NAME;
+    }
+
+    @Override
+    public void perform(Run<?, ?> run, FilePath workspace, EnvVars env, Launcher launcher, TaskListener listener)
+            throws InterruptedException, IOException {
+        FilePath target = workspace.child(env.expand(file));
+        SpilledEventData spilled = run.getAction(SpilledEventData.class);
+        if (spilled != null) {
+            target.copyFrom(new FilePath(spilled.getFile()));
+            listener.getLogger().println("Wrote " + spilled.getSize() + " bytes of spilled Postgres event data to " + target.getRemote());
+            return;
+        }
+        String data = env.get("POSTGRES_EVENT_DATA");
+        if (data == null) {
+            listener.getLogger().println("This build was not started by a Postgres event; nothing written to " + target.getRemote());
+            return;
+        }
+        target.write(data, StandardCharsets.UTF_8.name());
+        listener.getLogger().println("Wrote Postgres event data to " + target.getRemote());
+    }
+
+    @Extension
+    @Symbol("fetchPostgresEventData")
+    public static class DescriptorImpl extends BuildStepDescriptor<Builder> {
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Fetch Postgres event data";
+        }
+
+        public FormValidation doCheckFile(@QueryParameter String value) {
+            if (value != null && (value.startsWith("/") || value.contains(".."))) {
+                return FormValidation.error("The file must be a path inside the workspace");
+            }
+            return FormValidation.ok();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package io.jenkins.plugins.postgres;
+
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.postgresql.PGProperty;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Base for event sources that hold one JDBC connection to a {@link PostgresInstance}. The connection is
+ * used on a dedicated thread because PostgreSQL reads block; when it fails it is re-opened with the same
+ * backoff as {@link SupabaseRealtimeClient}. Subscriptions are routed by {@code schema.table} through a
+ * hash index, with one channel per distinct row filter; table patterns are matched per schema.
+ */
+abstract class JdbcEventSource implements EventSource {
+
+    private static final Logger LOGGER = Logger.getLogger(JdbcEventSource.class.getName());
+
+    protected final PostgresInstance instance;
+    private final EventJournal journal;
+    private final EventMetrics metrics;
+    private static final Channel[] NO_CHANNELS = new Channel[0];
+
+    // "schema.table:filter" -> handlers; changes synchronise on the index
+    private final RoutingIndex<Channel> channels = new RoutingIndex<>();
+    // "schema.table" -> channels for that table, one per distinct row filter; replaced, never modified
+    private final Map<String, Channel[]> tables = new ConcurrentHashMap<>();
+    // schema -> channels for table patterns in that schema, one per distinct pattern and row filter
+    private final Map<String, Channel[]> schemas = new ConcurrentHashMap<>();
+    private final ReconnectBackoff backoff = new ReconnectBackoff(
+        SupabaseRealtimeClient.RECONNECT_BASE_MILLIS, SupabaseRealtimeClient.RECONNECT_MAX_MILLIS);
+    private final AtomicInteger reconnects = new AtomicInteger();
+    private volatile ConnectionState state = ConnectionState.CONNECTING;
+    private volatile boolean shutdown;
+    private volatile long disconnectedSince;
+    private volatile long totalDisconnectedMillis;
+    private volatile Connection connection;
+    private Thread thread;
+
+    JdbcEventSource(PostgresInstance instance, EventJournal journal) {
+        this.instance = instance;
+        this.journal = journal;
+        this.metrics = EventMetrics.forInstance(instance.getName());
+    }
+
+    public synchronized void connect() {
+        if (thread != null) {
+            return;
+        }
+        thread = new NamingThreadFactory(new DaemonThreadFactory(),
+            "PostgresEventTrigger." + getThreadName() + "[" + instance.getName() + "]").newThread(this::run);
+        thread.start();
+    }
+
+    abstract String getThreadName();
+
+    /** Adds source specific connection properties to the user and password. */
+    void configure(Properties properties) {
+    }
+
+    /**
+     * Reads changes from an open connection until it fails or the source is shut down. Implementations
+     * call {@link #onConnected()} once the connection is ready to deliver events.
+     */
+    abstract void session(Connection connection) throws Exception;
+
+    /** Called when the first subscription for a table is added; the table is {@code schema.table}. */
+    void tableAdded(String table) {
+    }
+
+    /** Called when the last subscription for a table is removed. */
+    void tableRemoved(String table) {
+    }
+
+    private void run() {
+        while (!shutdown) {
+            try (Connection opened = openConnection()) {
+                connection = opened;
+                session(opened);
+            } catch (Exception e) {
+                if (shutdown) {
+                    break;
+                }
+                LOGGER.log(Level.WARNING, "Connection to " + instance.getName() + " failed", e);
+            }
+            onDisconnected();
+            if (!shutdown) {
+                long delay = backoff.nextDelayMillis();
+                LOGGER.info("Reconnecting to " + instance.getName() + " in " + delay + "ms (attempt " + backoff.getAttempts() + ")");
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                reconnects.incrementAndGet();
+                state = ConnectionState.CONNECTING;
+            }
+        }
+        connection = null;
+    }
+
+    private Connection openConnection() throws SQLException {
+        Properties properties = new Properties();
+        configure(properties);
+        return openConnection(instance, properties);
+    }
+
+    /** Connects to the instance's database with its credentials and the given connection properties. */
+    static Connection openConnection(PostgresInstance instance, Properties properties) throws SQLException {
+        StandardUsernamePasswordCredentials credentials = instance.getCredentials();
+        if (credentials != null) {
+            PGProperty.USER.set(properties, credentials.getUsername());
+            PGProperty.PASSWORD.set(properties, credentials.getPassword().getPlainText());
+        }
+        // Use the driver directly; DriverManager does not see drivers loaded by plugin class loaders
+        Connection opened = new org.postgresql.Driver().connect(instance.getJdbcUrl(), properties);
+        if (opened == null) {
+            throw new SQLException("Not a PostgreSQL JDBC URL: " + instance.getJdbcUrl());
+        }
+        return opened;
+    }
+
+    final void onConnected() {
+        LOGGER.info("Connected to instance: " + instance.getName());
+        state = ConnectionState.CONNECTED;
+        backoff.reset();
+        if (disconnectedSince > 0) {
+            totalDisconnectedMillis += System.currentTimeMillis() - disconnectedSince;
+            disconnectedSince = 0;
+        }
+    }
+
+    private void onDisconnected() {
+        state = ConnectionState.DISCONNECTED;
+        connection = null;
+        if (disconnectedSince == 0) {
+            disconnectedSince = System.currentTimeMillis();
+        }
+    }
+
+    final boolean isShutdown() {
+        return shutdown;
+    }
+
+    /** The subscribed tables as {@code schema.table}, with {@code schema.*} for a schema that has table patterns. */
+    final List<String> getSubscribedTables() {
+        List<String> result = new ArrayList<>(tables.keySet());
+        for (String schema : schemas.keySet()) {
+            result.add(schema + ".*");
+        }
+        return result;
+    }
+
+    /**
+     * Delivers a change to the handlers subscribed to its table and type whose row filter accepts it.
+     * {@code values} looks up a column's text value for the filters. With a journal every change is
+     * recorded, so a trigger that subscribes later can still replay it; without one the payload is only
+     * built if some handler receives the event. {@code lsn} is the change's commit position, or 0 if unknown;
+     * {@code startNanos} is when the source started reading the message, for the decode time metric.
+     */
+    final void deliver(String schema, String table, String type, long lsn, Function<String, String> values,
+                       Supplier<String> payload, long startNanos) {
+        String key = schema + "." + table;
+        metrics.received(key).mark();
+        PostgresEvent event = deliver(tables.get(key), null, schema, table, type, lsn, values, payload, startNanos);
+        if (!schemas.isEmpty()) {
+            event = deliver(schemas.get(schema), event, schema, table, type, lsn, values, payload, startNanos);
+        }
+        if (event == null && journal != null) {
+            createEvent(schema, table, type, lsn, payload, startNanos);
+        }
+    }
+
+    // Returns the event, created on the first handler that receives it
+    private PostgresEvent deliver(Channel[] candidates, PostgresEvent event, String schema, String table, String type,
+                                  long lsn, Function<String, String> values, Supplier<String> payload, long startNanos) {
+        if (candidates == null) {
+            return event;
+        }
+        for (Channel channel : candidates) {
+            Consumer<PostgresEvent>[] handlers = channel.handlers(type);
+            Consumer<PostgresEvent>[] allEventHandlers = channel.handlers(RoutingIndex.ALL_EVENTS);
+            if ((handlers.length == 0 && allEventHandlers.length == 0)
+                    || (channel.matcher != null && !channel.matcher.matches(table))
+                    || (channel.filter != null && !channel.filter.matches(values.apply(channel.filter.getColumn())))) {
+                continue;
+            }
+            if (event == null) {
+                event = createEvent(schema, table, type, lsn, payload, startNanos);
+            }
+            accept(handlers, event);
+            accept(allEventHandlers, event);
+        }
+        return event;
+    }
+
+    private static void accept(Consumer<PostgresEvent>[] handlers, PostgresEvent event) {
+        for (Consumer<PostgresEvent> handler : handlers) {
+            try {
+                handler.accept(event);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error in handler for " + event.getSchema() + "." + event.getTable()
+                    + " " + event.getEventType(), e);
+            }
+        }
+    }
+
+    private PostgresEvent createEvent(String schema, String table, String type, long lsn, Supplier<String> payload,
+                                      long startNanos) {
+        PostgresEvent event = new PostgresEvent(schema, table, type, payload.get());
+        if (journal != null) {
+            journal.record(event, lsn);
+        }
+        metrics.decoded(startNanos);
+        return event;
+    }
+
+    /**
+     * Subscribes to a table or, if {@code table} is a pattern, to the matching tables of the schema. The
+     * source is told about a schema with patterns once, as {@code schema.*}.
+     */
+    @Override
+    public Subscription subscribeToTable(String schema, String table, String filter, String event,
+                                         Consumer<PostgresEvent> handler) {
+        boolean filtered = filter != null && !filter.isEmpty();
+        boolean wildcard = TableMatcher.isPattern(table);
+        Map<String, Channel[]> group = wildcard ? schemas : tables;
+        String groupKey = wildcard ? schema : schema + "." + table;
+        String topic = schema + "." + table + (filtered ? ":" + filter : "");
+        boolean added;
+        Subscription subscription;
+        synchronized (channels) {
+            added = !group.containsKey(groupKey);
+            subscription = channels.add(topic, t -> new Channel(t, groupKey, wildcard ? TableMatcher.compile(table) : null,
+                filtered ? RowFilter.parse(filter) : null), event, handler);
+            Channel channel = (Channel) subscription.getRoute();
+            Channel[] groupChannels = group.getOrDefault(groupKey, NO_CHANNELS);
+            if (!Arrays.asList(groupChannels).contains(channel)) {
+                Channel[] updated = Arrays.copyOf(groupChannels, groupChannels.length + 1);
+                updated[groupChannels.length] = channel;
+                group.put(groupKey, updated);
+            }
+        }
+        if (added) {
+            tableAdded(wildcard ? schema + ".*" : groupKey);
+        }
+        LOGGER.fine("Subscribed to " + topic + " for event " + event);
+        return subscription;
+    }
+
+    @Override
+    public void unsubscribe(Subscription subscription) {
+        Channel channel;
+        boolean removed;
+        synchronized (channels) {
+            channel = channels.remove(subscription);
+            if (channel == null) {
+                return;
+            }
+            Map<String, Channel[]> group = channel.matcher != null ? schemas : tables;
+            List<Channel> remaining = new ArrayList<>(Arrays.asList(group.getOrDefault(channel.group, NO_CHANNELS)));
+            remaining.remove(channel);
+            removed = remaining.isEmpty();
+            if (removed) {
+                group.remove(channel.group);
+            } else {
+                group.put(channel.group, remaining.toArray(NO_CHANNELS));
+            }
+        }
+        if (removed) {
+            tableRemoved(channel.matcher != null ? channel.group + ".*" : channel.group);
+        }
+    }
+
+    @Override
+    public ConnectionState getState() {
+        return state;
+    }
+
+    @Override
+    public int getReconnectCount() {
+        return reconnects.get();
+    }
+
+    @Override
+    public long getDisconnectedMillis() {
+        long since = disconnectedSince;
+        return totalDisconnectedMillis + (since > 0 ? System.currentTimeMillis() - since : 0);
+    }
+
+    @Override
+    public EventJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        Connection current = connection;
+        if (current != null) {
+            try {
+                // Unblocks a pending read on the connection thread
+                current.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Error closing connection to " + instance.getName(), e);
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private static final class Channel extends RoutingIndex.Route {
+        // "schema.table", or the schema for a table pattern
+        private final String group;
+        private final TableMatcher matcher;
+        private final RowFilter filter;
+
+        private Channel(String topic, String group, TableMatcher matcher, RowFilter filter) {
+            super(topic);
+            this.group = group;
+            this.matcher = matcher;
+            this.filter = filter;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.jenkins.plugins.postgres;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.postgresql.PGProperty;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives {@code NOTIFY} messages on one connection per instance, with a {@code LISTEN} for every
+ * subscribed table across all triggers. The channel of a table is its qualified name, for example
+ * {@code public.orders}. The payload is either the operation ({@code INSERT}, {@code UPDATE} or
+ * {@code DELETE}) or a JSON object with the operation in {@code type}; anything else counts as an update.
+ * Table patterns listen on the schema's channel, for example {@code public.*}, whose payload must be a JSON
+ * object naming the table in {@code table}.
+ */
+public class ListenNotifyClient extends JdbcEventSource {
+
+    private static final Logger LOGGER = Logger.getLogger(ListenNotifyClient.class.getName());
+    // Also bounds how long a new LISTEN waits behind a poll
+    private static final int POLL_MILLIS = 500;
+
+    // LISTEN and UNLISTEN commands waiting to be run on the connection thread
+    private final Queue<String> pendingCommands = new ConcurrentLinkedQueue<>();
+
+    public ListenNotifyClient(PostgresInstance instance, EventJournal journal) {
+        super(instance, journal);
+    }
+
+    @Override
+    String getThreadName() {
+        return "Listener";
+    }
+
+    @Override
+    void configure(Properties properties) {
+        PGProperty.TCP_KEEP_ALIVE.set(properties, "true");
+    }
+
+    @Override
+    void tableAdded(String table) {
+        pendingCommands.add("LISTEN " + quote(table));
+    }
+
+    @Override
+    void tableRemoved(String table) {
+        pendingCommands.add("UNLISTEN " + quote(table));
+    }
+
+    static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    @Override
+    void session(Connection connection) throws SQLException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        long keepaliveMillis = TimeUnit.SECONDS.toMillis(SupabaseRealtimeClient.HEARTBEAT_INTERVAL_SECONDS);
+        try (Statement statement = connection.createStatement()) {
+            // Listens queued before now are covered by listening to every subscribed table
+            pendingCommands.clear();
+            for (String table : getSubscribedTables()) {
+                statement.execute("LISTEN " + quote(table));
+            }
+            onConnected();
+
+            long lastActivity = System.currentTimeMillis();
+            while (!isShutdown()) {
+                String command;
+                while ((command = pendingCommands.poll()) != null) {
+                    statement.execute(command);
+                }
+                PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+                long now = System.currentTimeMillis();
+                if (notifications != null && notifications.length > 0) {
+                    for (PGNotification notification : notifications) {
+                        handle(notification.getName(), notification.getParameter());
+                    }
+                    lastActivity = now;
+                } else if (now - lastActivity >= keepaliveMillis) {
+                    // A silent connection may be dead without the socket noticing
+                    statement.execute("SELECT 1");
+                    lastActivity = now;
+                }
+            }
+        }
+    }
+
+    void handle(String channel, String payload) {
+        long start = System.nanoTime();
+        int dot = channel.indexOf('.');
+        String schema = dot < 0 ? "public" : channel.substring(0, dot);
+        String table = dot < 0 ? channel : channel.substring(dot + 1);
+        boolean schemaChannel = table.equals("*");
+        try {
+            String json = payload != null ? payload.trim() : "";
+            if (json.startsWith("{")) {
+                String changedTable = schemaChannel ? readMember(json, "table") : table;
+                if (changedTable == null) {
+                    LOGGER.fine("Ignoring notification without a table on channel " + channel);
+                    return;
+                }
+                deliver(schema, changedTable, normalizeType(readMember(json, "type")), 0,
+                    column -> PostgresEvent.readRecordValue(json, column), () -> json, start);
+            } else if (schemaChannel) {
+                LOGGER.fine("Ignoring notification without a table on channel " + channel);
+            } else {
+                String type = normalizeType(json);
+                deliver(schema, table, type, 0, column -> null, () -> wrap(schema, table, type, payload), start);
+            }
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Ignoring malformed notification on channel " + channel + ": " + payload, e);
+        }
+    }
+
+    private static String readMember(String json, String name) {
+        int start = RealtimeFrame.findMember(json, 0, name);
+        return start < 0 ? null : RealtimeFrame.readString(json, start, RealtimeFrame.skipValue(json, start));
+    }
+
+    private static String normalizeType(String type) {
+        if (type != null) {
+            String upper = type.trim().toUpperCase(Locale.ROOT);
+            if ("INSERT".equals(upper) || "UPDATE".equals(upper) || "DELETE".equals(upper)) {
+                return upper;
+            }
+        }
+        return "UPDATE";
+    }
+
+    private static String wrap(String schema, String table, String type, String payload) {
+        StringBuilder json = new StringBuilder(64);
+        json.append("{\"schema\":");
+        PgOutputDecoder.appendString(json, schema);
+        json.append(",\"table\":");
+        PgOutputDecoder.appendString(json, table);
+        json.append(",\"type\":");
+        PgOutputDecoder.appendString(json, type);
+        json.append(",\"payload\":");
+        if (payload == null || payload.isEmpty()) {
+            json.append("null");
+        } else {
+            PgOutputDecoder.appendString(json, payload);
+        }
+        return json.append('}').toString();
+    }
+}
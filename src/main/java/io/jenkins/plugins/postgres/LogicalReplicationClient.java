@@ -0,0 +1,116 @@
+package io.jenkins.plugins.postgres;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGProperty;
+import org.postgresql.replication.PGReplicationStream;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Streams row changes from a logical replication slot with the binary {@code pgoutput} protocol and
+ * delivers them to subscribed triggers. Each message is decoded as it is read, and only changes of
+ * subscribed tables that pass their row filter are formatted as JSON. The slot's confirmed position is
+ * advanced at each commit, once the transaction's changes have been handed to the trigger queues.
+ */
+public class LogicalReplicationClient extends JdbcEventSource {
+
+    private static final Logger LOGGER = Logger.getLogger(LogicalReplicationClient.class.getName());
+    private static final String DUPLICATE_OBJECT = "42710";
+
+    public LogicalReplicationClient(PostgresInstance instance, EventJournal journal) {
+        super(instance, journal);
+    }
+
+    @Override
+    String getThreadName() {
+        return "Replication";
+    }
+
+    @Override
+    void configure(Properties properties) {
+        PGProperty.REPLICATION.set(properties, "database");
+        PGProperty.ASSUME_MIN_SERVER_VERSION.set(properties, "10");
+        PGProperty.PREFER_QUERY_MODE.set(properties, "simple");
+    }
+
+    @Override
+    void session(Connection connection) throws SQLException {
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        createSlotIfMissing(pgConnection);
+        PGReplicationStream stream = pgConnection.getReplicationAPI()
+            .replicationStream()
+            .logical()
+            .withSlotName(instance.getSlotName())
+            .withSlotOption("proto_version", "1")
+            .withSlotOption("publication_names", instance.getPublicationName())
+            .withStatusInterval(10, TimeUnit.SECONDS)
+            .start();
+        onConnected();
+
+        EventJournal journal = getJournal();
+        // Transactions up to here are in the journal already; the slot resends them if their
+        // acknowledgement was lost. The last one may have been cut short by a crash, so only its
+        // changes that were recorded are skipped.
+        long journaledLsn = journal != null ? journal.getLastLsn() : 0;
+        int journaledChanges = journal != null ? journal.getLastLsnCount() : 0;
+        PgOutputDecoder decoder = new PgOutputDecoder();
+        while (!isShutdown()) {
+            ByteBuffer message = stream.read();
+            if (message == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            if (decoder.isCommit(message)) {
+                // Everything up to here is journaled or queued for the triggers
+                if (journal != null) {
+                    journal.force();
+                }
+                stream.setAppliedLSN(stream.getLastReceiveLSN());
+                stream.setFlushedLSN(stream.getLastReceiveLSN());
+                continue;
+            }
+            PgOutputDecoder.Change change = decoder.decode(message);
+            if (change != null && change.isAfter(journaledLsn, journaledChanges)) {
+                deliver(change.relation.schema, change.relation.table, change.type, change.lsn, change::getValue, change::toJson, start);
+            }
+        }
+    }
+
+    private void createSlotIfMissing(PGConnection pgConnection) throws SQLException {
+        try {
+            pgConnection.getReplicationAPI()
+                .createReplicationSlot()
+                .logical()
+                .withSlotName(instance.getSlotName())
+                .withOutputPlugin("pgoutput")
+                .make();
+            LOGGER.info("Created replication slot " + instance.getSlotName() + " for instance: " + instance.getName());
+        } catch (SQLException e) {
+            if (!DUPLICATE_OBJECT.equals(e.getSQLState())) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Drops the instance's replication slot, so the server no longer keeps WAL for it. Returns false if
+     * there was no such slot. Fails while the slot is still in use by a connection.
+     */
+    static boolean dropSlot(PostgresInstance instance) throws SQLException {
+        try (Connection connection = openConnection(instance, new Properties());
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT pg_drop_replication_slot(slot_name) FROM pg_replication_slots WHERE slot_name = ?")) {
+            statement.setString(1, instance.getSlotName());
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next();
+            }
+        }
+    }
+}
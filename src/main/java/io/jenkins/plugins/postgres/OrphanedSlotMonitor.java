@@ -0,0 +1,116 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.AdministrativeMonitor;
+import hudson.model.Computer;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drops the replication slots of removed PostgreSQL instances, since a slot nobody reads keeps WAL on the
+ * server forever. A slot that cannot be dropped, because the server is unreachable or the slot is in use,
+ * is reported to administrators, who can retry or dismiss it.
+ */
+@Extension
+public class OrphanedSlotMonitor extends AdministrativeMonitor {
+
+    private static final Logger LOGGER = Logger.getLogger(OrphanedSlotMonitor.class.getName());
+    // The removed instance's connection closes asynchronously, so the slot may still be active at first
+    private static final int DROP_ATTEMPTS = 5;
+    private static final long DROP_RETRY_SECONDS = 2;
+
+    static OrphanedSlotMonitor get() {
+        return ExtensionList.lookupSingleton(OrphanedSlotMonitor.class);
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Orphaned PostgreSQL Replication Slots";
+    }
+
+    @Override
+    public boolean isActivated() {
+        return !getOrphanedSlots().isEmpty();
+    }
+
+    public List<PostgresInstance> getOrphanedSlots() {
+        PostgresEventTriggerConfiguration config = PostgresEventTriggerConfiguration.get();
+        return config != null ? config.getOrphanedSlots() : List.of();
+    }
+
+    /** Drops the slots of the given removed instances in the background. */
+    void dropSlots(List<PostgresInstance> slots) {
+        for (PostgresInstance slot : slots) {
+            schedule(slot, 1, DROP_RETRY_SECONDS);
+        }
+    }
+
+    private void schedule(PostgresInstance slot, int attempt, long delaySeconds) {
+        // Connecting may take a while, so it does not run on the timer thread
+        PostgresEventTriggerTimer.get().schedule(
+            () -> Computer.threadPoolForRemoting.execute(() -> drop(slot, attempt)), delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void drop(PostgresInstance slot, int attempt) {
+        PostgresEventTriggerConfiguration config = PostgresEventTriggerConfiguration.get();
+        if (config == null || config.getOrphanedSlots().stream()
+                .noneMatch(orphaned -> PostgresEventTriggerConfiguration.sameSlot(orphaned, slot))) {
+            // Dismissed, or taken over by an instance again
+            return;
+        }
+        try {
+            if (LogicalReplicationClient.dropSlot(slot)) {
+                LOGGER.info("Dropped replication slot " + slot.getSlotName() + " of removed instance: " + slot.getName());
+            }
+            config.removeOrphanedSlot(slot);
+        } catch (SQLException | RuntimeException e) {
+            if (attempt < DROP_ATTEMPTS) {
+                schedule(slot, attempt + 1, DROP_RETRY_SECONDS);
+                return;
+            }
+            LOGGER.log(Level.WARNING, "Could not drop replication slot " + slot.getSlotName() + " of removed instance: "
+                + slot.getName(), e);
+        }
+    }
+
+    private PostgresInstance find(String jdbcUrl, String slotName) {
+        for (PostgresInstance slot : getOrphanedSlots()) {
+            if (Objects.equals(slot.getJdbcUrl(), jdbcUrl) && Objects.equals(slot.getSlotName(), slotName)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    @RequirePOST
+    public HttpResponse doDrop(@QueryParameter String jdbcUrl, @QueryParameter String slotName) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        PostgresInstance slot = find(jdbcUrl, slotName);
+        if (slot != null) {
+            schedule(slot, DROP_ATTEMPTS, 0);
+        }
+        return HttpResponses.forwardToPreviousPage();
+    }
+
+    @RequirePOST
+    public HttpResponse doDismiss(@QueryParameter String jdbcUrl, @QueryParameter String slotName) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        PostgresInstance slot = find(jdbcUrl, slotName);
+        PostgresEventTriggerConfiguration config = PostgresEventTriggerConfiguration.get();
+        if (slot != null && config != null) {
+            config.removeOrphanedSlot(slot);
+        }
+        return HttpResponses.forwardToPreviousPage();
+    }
+}
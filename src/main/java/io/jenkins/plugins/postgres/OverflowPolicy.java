@@ -0,0 +1,20 @@
+package io.jenkins.plugins.postgres;
+
+/**
+ * What an {@link EventQueue} does with a new event when it is already full.
+ */
+public enum OverflowPolicy {
+    BLOCK("Block the connection briefly until there is room, then drop the event"),
+    DROP_OLDEST("Drop the oldest queued event"),
+    COALESCE("Replace the newest queued event for the same table and event type");
+
+    private final String displayName;
+
+    OverflowPolicy(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
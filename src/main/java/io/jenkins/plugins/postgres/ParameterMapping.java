@@ -0,0 +1,256 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.model.BooleanParameterValue;
+import hudson.model.ParameterValue;
+import hudson.model.StringParameterValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts build parameters from a change payload with JSONPath expressions such as
+ * {@code ORDER_ID=$.record.id}. The expressions are compiled into one tree of paths when the trigger
+ * starts, and a payload is read in a single pass that descends only into the members and elements some
+ * path needs and skips over everything else without building any JSON objects.
+ *
+ * <p>Only member ({@code .name} or {@code ['name']}) and array index ({@code [0]}) steps are supported.
+ * Booleans become boolean parameters; strings, numbers and nested objects or arrays (as JSON text)
+ * become string parameters. Paths that are missing or null give an empty string.
+ */
+final class ParameterMapping {
+
+    static final ParameterMapping NONE = new ParameterMapping(Collections.emptyList(), new Node());
+
+    static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final List<String> names;
+    private final Node root;
+
+    private ParameterMapping(List<String> names, Node root) {
+        this.names = names;
+        this.root = root;
+    }
+
+    /**
+     * Compiles mappings given one per line as {@code NAME=$.path}; blank lines and lines starting with
+     * {@code #} are ignored.
+     *
+     * @throws IllegalArgumentException if a line is not a valid mapping or a name is used twice
+     */
+    static ParameterMapping compile(String mappings) {
+        if (mappings == null || mappings.trim().isEmpty()) {
+            return NONE;
+        }
+        List<String> names = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        Node root = new Node();
+        for (String line : mappings.split("\\r?\\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int eq = line.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected NAME=$.path, got '" + line + "'");
+            }
+            String name = line.substring(0, eq).trim();
+            if (!NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Invalid parameter name '" + name + "'");
+            }
+            if (name.startsWith("POSTGRES_EVENT_") || name.equals("POSTGRES_TABLE_NAME")) {
+                throw new IllegalArgumentException("Parameter name '" + name + "' is reserved");
+            }
+            if (!seen.add(name)) {
+                throw new IllegalArgumentException("Parameter '" + name + "' is mapped more than once");
+            }
+            Node node = root;
+            for (Object step : parsePath(line.substring(eq + 1).trim())) {
+                node = node.child(step);
+            }
+            node.slots.add(names.size());
+            names.add(name);
+        }
+        return names.isEmpty() ? NONE : new ParameterMapping(names, root);
+    }
+
+    /** Splits {@code $.a['b'][0]} into the member names and array indices {@code a}, {@code b} and {@code 0}. */
+    static List<Object> parsePath(String path) {
+        if (!path.startsWith("$")) {
+            throw new IllegalArgumentException("Path must start with $: '" + path + "'");
+        }
+        List<Object> steps = new ArrayList<>();
+        int pos = 1;
+        while (pos < path.length()) {
+            char c = path.charAt(pos);
+            if (c == '.') {
+                int end = pos + 1;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == pos + 1) {
+                    throw new IllegalArgumentException("Empty member name in '" + path + "'");
+                }
+                steps.add(path.substring(pos + 1, end));
+                pos = end;
+            } else if (c == '[') {
+                int end = path.indexOf(']', pos);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated [ in '" + path + "'");
+                }
+                String inner = path.substring(pos + 1, end).trim();
+                if (inner.length() >= 2 && (inner.charAt(0) == '\'' || inner.charAt(0) == '"')
+                        && inner.charAt(inner.length() - 1) == inner.charAt(0)) {
+                    steps.add(inner.substring(1, inner.length() - 1));
+                } else {
+                    try {
+                        steps.add(Integer.valueOf(Integer.parseUnsignedInt(inner)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Expected an index or quoted name in [" + inner + "] of '"
+                            + path + "'");
+                    }
+                }
+                pos = end + 1;
+            } else {
+                throw new IllegalArgumentException("Unexpected '" + c + "' in '" + path + "'");
+            }
+        }
+        return steps;
+    }
+
+    boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    /**
+     * Evaluates the mappings against a payload. Every mapped parameter is returned, in the order of the
+     * mappings; payloads that are not JSON leave all of them empty.
+     */
+    List<ParameterValue> apply(String payload) {
+        if (names.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object[] values = new Object[names.size()];
+        if (payload != null) {
+            try {
+                int start = RealtimeFrame.skipWhitespace(payload, 0);
+                if (start < payload.length()) {
+                    visit(payload, start, root, values);
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // Not JSON, or truncated; whatever was read before the error is kept
+            }
+        }
+        List<ParameterValue> parameters = new ArrayList<>(names.size());
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            parameters.add(value instanceof Boolean
+                ? new BooleanParameterValue(names.get(i), (Boolean) value)
+                : new StringParameterValue(names.get(i), value != null ? (String) value : ""));
+        }
+        return parameters;
+    }
+
+    /** Reads the value at {@code pos} for a node of the path tree and returns the index just past it. */
+    private static int visit(String text, int pos, Node node, Object[] values) {
+        char c = text.charAt(pos);
+        int end;
+        if (c == '{' && node.members != null) {
+            end = visitObject(text, pos, node, values);
+        } else if (c == '[' && node.elements != null) {
+            end = visitArray(text, pos, node, values);
+        } else {
+            end = RealtimeFrame.skipValue(text, pos);
+        }
+        if (!node.slots.isEmpty()) {
+            Object value = valueOf(text, pos, end);
+            for (int slot : node.slots) {
+                values[slot] = value;
+            }
+        }
+        return end;
+    }
+
+    private static int visitObject(String text, int objectStart, Node node, Object[] values) {
+        int pos = RealtimeFrame.skipWhitespace(text, objectStart + 1);
+        if (text.charAt(pos) == '}') {
+            return pos + 1;
+        }
+        while (true) {
+            int keyEnd = RealtimeFrame.skipString(text, pos);
+            Node child = node.members.get(RealtimeFrame.readString(text, pos, keyEnd));
+            pos = RealtimeFrame.skipWhitespace(text, keyEnd);
+            if (text.charAt(pos) != ':') {
+                throw new IllegalArgumentException("Expected ':' at offset " + pos);
+            }
+            int valueStart = RealtimeFrame.skipWhitespace(text, pos + 1);
+            int valueEnd = child != null ? visit(text, valueStart, child, values) : RealtimeFrame.skipValue(text, valueStart);
+            pos = RealtimeFrame.skipWhitespace(text, valueEnd);
+            if (text.charAt(pos) == '}') {
+                return pos + 1;
+            }
+            pos = RealtimeFrame.skipWhitespace(text, pos + 1);
+        }
+    }
+
+    private static int visitArray(String text, int arrayStart, Node node, Object[] values) {
+        int pos = RealtimeFrame.skipWhitespace(text, arrayStart + 1);
+        if (text.charAt(pos) == ']') {
+            return pos + 1;
+        }
+        for (int index = 0; ; index++) {
+            Node child = node.elements.get(index);
+            int valueEnd = child != null ? visit(text, pos, child, values) : RealtimeFrame.skipValue(text, pos);
+            pos = RealtimeFrame.skipWhitespace(text, valueEnd);
+            if (text.charAt(pos) == ']') {
+                return pos + 1;
+            }
+            pos = RealtimeFrame.skipWhitespace(text, pos + 1);
+        }
+    }
+
+    /** The parameter value of the JSON value in {@code [start, end)}: a Boolean, a String or null. */
+    private static Object valueOf(String text, int start, int end) {
+        char c = text.charAt(start);
+        if (c == '"') {
+            return RealtimeFrame.readString(text, start, end);
+        }
+        if (text.startsWith("true", start) && end - start == 4) {
+            return Boolean.TRUE;
+        }
+        if (text.startsWith("false", start) && end - start == 5) {
+            return Boolean.FALSE;
+        }
+        if (text.startsWith("null", start) && end - start == 4) {
+            return null;
+        }
+        // Numbers as written, objects and arrays as JSON text
+        return text.substring(start, end);
+    }
+
+    private static final class Node {
+        // Children by member name and by array index, null if there are none
+        private Map<String, Node> members;
+        private Map<Integer, Node> elements;
+        // Parameters taking this node's value
+        private final List<Integer> slots = new ArrayList<>(1);
+
+        Node child(Object step) {
+            if (step instanceof Integer) {
+                if (elements == null) {
+                    elements = new HashMap<>();
+                }
+                return elements.computeIfAbsent((Integer) step, i -> new Node());
+            }
+            if (members == null) {
+                members = new HashMap<>();
+            }
+            return members.computeIfAbsent((String) step, name -> new Node());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Narrows a change payload to the columns a job needs before it is stored as a build parameter. The
+ * columns of {@code record} and {@code old_record}, and the matching entries of the {@code columns}
+ * description, are kept if they are included (or nothing is included) and not excluded; {@code old_record}
+ * can be dropped altogether. Payloads are only parsed if the projection changes something.
+ */
+final class PayloadProjection {
+
+    static final PayloadProjection NONE = new PayloadProjection(Collections.emptySet(), Collections.emptySet(), false);
+
+    private final Set<String> includes;
+    private final Set<String> excludes;
+    private final boolean omitOldRecord;
+
+    PayloadProjection(Set<String> includes, Set<String> excludes, boolean omitOldRecord) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.omitOldRecord = omitOldRecord;
+    }
+
+    /** Creates a projection from comma or whitespace separated column lists, either of which may be null. */
+    static PayloadProjection of(String includes, String excludes, boolean omitOldRecord) {
+        Set<String> included = parseColumns(includes);
+        Set<String> excluded = parseColumns(excludes);
+        if (included.isEmpty() && excluded.isEmpty() && !omitOldRecord) {
+            return NONE;
+        }
+        return new PayloadProjection(included, excluded, omitOldRecord);
+    }
+
+    static Set<String> parseColumns(String columns) {
+        Set<String> result = new LinkedHashSet<>();
+        if (columns != null) {
+            for (String column : columns.split("[,;\\s]+")) {
+                if (!column.isEmpty()) {
+                    result.add(column);
+                }
+            }
+        }
+        return result;
+    }
+
+    boolean isIdentity() {
+        return includes.isEmpty() && excludes.isEmpty() && !omitOldRecord;
+    }
+
+    /** Returns the projected payload; payloads that are not JSON objects are returned unchanged. */
+    String apply(String payload) {
+        if (isIdentity() || payload == null || !payload.startsWith("{")) {
+            return payload;
+        }
+        JsonObject json;
+        try {
+            json = JsonParser.parseString(payload).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            return payload;
+        }
+        if (omitOldRecord) {
+            json.remove("old_record");
+        }
+        if (!includes.isEmpty() || !excludes.isEmpty()) {
+            project(json.get("record"));
+            project(json.get("old_record"));
+            JsonElement columns = json.get("columns");
+            if (columns != null && columns.isJsonArray()) {
+                JsonArray kept = new JsonArray();
+                for (JsonElement column : columns.getAsJsonArray()) {
+                    JsonElement name = column.isJsonObject() ? column.getAsJsonObject().get("name") : null;
+                    if (name == null || !name.isJsonPrimitive() || isKept(name.getAsString())) {
+                        kept.add(column);
+                    }
+                }
+                json.add("columns", kept);
+            }
+        }
+        return json.toString();
+    }
+
+    private void project(JsonElement record) {
+        if (record == null || !record.isJsonObject()) {
+            return;
+        }
+        Iterator<Map.Entry<String, JsonElement>> columns = record.getAsJsonObject().entrySet().iterator();
+        while (columns.hasNext()) {
+            if (!isKept(columns.next().getKey())) {
+                columns.remove();
+            }
+        }
+    }
+
+    private boolean isKept(String column) {
+        return (includes.isEmpty() || includes.contains(column)) && !excludes.contains(column);
+    }
+}
@@ -0,0 +1,332 @@
+package io.jenkins.plugins.postgres;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes messages of the binary {@code pgoutput} logical replication protocol (version 1) one at a
+ * time as they are read from the stream. Relation metadata is cached from the {@code Relation} messages
+ * the server sends before the first change of each table; transaction and type messages only update
+ * that state.
+ */
+final class PgOutputDecoder {
+
+    // pgoutput timestamps are microseconds since 2000-01-01T00:00:00Z
+    private static final long POSTGRES_EPOCH_MICROS = 946_684_800_000_000L;
+
+    private static final int BOOL_OID = 16;
+    private static final int INT8_OID = 20;
+    private static final int INT2_OID = 21;
+    private static final int INT4_OID = 23;
+    private static final int OID_OID = 26;
+    private static final int JSON_OID = 114;
+    private static final int FLOAT4_OID = 700;
+    private static final int FLOAT8_OID = 701;
+    private static final int NUMERIC_OID = 1700;
+    private static final int JSONB_OID = 3802;
+
+    private final Map<Integer, Relation> relations = new HashMap<>();
+    private long transactionLsn;
+    private long commitTimestamp;
+    // Number of changes decoded so far in the current transaction
+    private int transactionChanges;
+
+    /**
+     * Decodes one message. Returns the row change for {@code Insert}, {@code Update} and {@code Delete}
+     * messages and {@code null} for everything else.
+     */
+    Change decode(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case 'B':
+                transactionLsn = buffer.getLong();
+                commitTimestamp = buffer.getLong();
+                transactionChanges = 0;
+                return null;
+            case 'R':
+                decodeRelation(buffer);
+                return null;
+            case 'I': {
+                Relation relation = relation(buffer.getInt());
+                buffer.get(); // 'N'
+                return new Change(relation, "INSERT", readTuple(buffer, relation), null, transactionLsn, transactionChanges++, commitTimestamp);
+            }
+            case 'U': {
+                Relation relation = relation(buffer.getInt());
+                Tuple oldRow = null;
+                byte kind = buffer.get();
+                if (kind == 'K' || kind == 'O') {
+                    // Old key or full old row, depending on the table's replica identity
+                    oldRow = readTuple(buffer, relation);
+                    buffer.get(); // 'N'
+                }
+                return new Change(relation, "UPDATE", readTuple(buffer, relation), oldRow, transactionLsn, transactionChanges++, commitTimestamp);
+            }
+            case 'D': {
+                Relation relation = relation(buffer.getInt());
+                buffer.get(); // 'K' or 'O'
+                return new Change(relation, "DELETE", null, readTuple(buffer, relation), transactionLsn, transactionChanges++, commitTimestamp);
+            }
+            default:
+                // Commit, Origin, Type, Truncate and logical decoding messages carry no row changes
+                return null;
+        }
+    }
+
+    boolean isCommit(ByteBuffer buffer) {
+        return buffer.get(buffer.position()) == 'C';
+    }
+
+    private Relation relation(int oid) {
+        Relation relation = relations.get(oid);
+        if (relation == null) {
+            throw new IllegalStateException("Change for relation " + oid + " received before its Relation message");
+        }
+        return relation;
+    }
+
+    private void decodeRelation(ByteBuffer buffer) {
+        int oid = buffer.getInt();
+        String schema = readCString(buffer);
+        String table = readCString(buffer);
+        buffer.get(); // replica identity setting
+        int count = buffer.getShort();
+        String[] columns = new String[count];
+        int[] types = new int[count];
+        for (int i = 0; i < count; i++) {
+            buffer.get(); // flags, 1 marks a key column
+            columns[i] = readCString(buffer);
+            types[i] = buffer.getInt();
+            buffer.getInt(); // type modifier
+        }
+        relations.put(oid, new Relation(schema, table, columns, types));
+    }
+
+    private static Tuple readTuple(ByteBuffer buffer, Relation relation) {
+        int count = buffer.getShort();
+        Tuple tuple = new Tuple(relation.columns.length);
+        for (int i = 0; i < count; i++) {
+            byte kind = buffer.get();
+            switch (kind) {
+                case 'n':
+                    break;
+                case 'u':
+                    // TOASTed value not changed by an UPDATE; the server does not send it again
+                    tuple.unchanged[i] = true;
+                    break;
+                default: {
+                    // 't' (text) and 'b' (binary, only sent when requested) are both length-prefixed
+                    int length = buffer.getInt();
+                    tuple.values[i] = readUtf8(buffer, buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                }
+            }
+        }
+        return tuple;
+    }
+
+    private static String readCString(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = start;
+        while (buffer.get(end) != 0) {
+            end++;
+        }
+        String value = readUtf8(buffer, start, end - start);
+        buffer.position(end + 1);
+        return value;
+    }
+
+    private static String readUtf8(ByteBuffer buffer, int start, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static final class Tuple {
+        final String[] values;
+        final boolean[] unchanged;
+
+        Tuple(int columns) {
+            this.values = new String[columns];
+            this.unchanged = new boolean[columns];
+        }
+    }
+
+    static final class Relation {
+        final String schema;
+        final String table;
+        final String[] columns;
+        final int[] types;
+
+        Relation(String schema, String table, String[] columns, int[] types) {
+            this.schema = schema;
+            this.table = table;
+            this.columns = columns;
+            this.types = types;
+        }
+
+        int indexOf(String column) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(column)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    static final class Change {
+        final Relation relation;
+        final String type;
+        final Tuple newRow;
+        final Tuple oldRow;
+        // Commit LSN of the change's transaction
+        final long lsn;
+        // Position of the change within its transaction, from 0
+        final int index;
+        final long commitTimestamp;
+
+        Change(Relation relation, String type, Tuple newRow, Tuple oldRow, long lsn, int index, long commitTimestamp) {
+            this.relation = relation;
+            this.type = type;
+            this.newRow = newRow;
+            this.oldRow = oldRow;
+            this.lsn = lsn;
+            this.index = index;
+            this.commitTimestamp = commitTimestamp;
+        }
+
+        /**
+         * Whether the change comes after the first {@code changes} changes of the transaction committed
+         * at {@code lsn}. Transactions are sent in commit order, so this is false for every change the
+         * journal already holds when the server resends a transaction that was only partly recorded.
+         */
+        boolean isAfter(long lsn, int changes) {
+            return this.lsn > lsn || (this.lsn == lsn && index >= changes);
+        }
+
+        /** The column's text value from the new row, or from the old row for deletes. */
+        String getValue(String column) {
+            int index = relation.indexOf(column);
+            Tuple row = newRow != null ? newRow : oldRow;
+            if (index < 0 || row == null) {
+                return null;
+            }
+            return row.values[index];
+        }
+
+        /**
+         * Formats the change like a Supabase Realtime payload, so builds see the same
+         * {@code POSTGRES_EVENT_DATA} whichever source the trigger uses.
+         */
+        String toJson() {
+            StringBuilder json = new StringBuilder(128);
+            json.append("{\"schema\":");
+            appendString(json, relation.schema);
+            json.append(",\"table\":");
+            appendString(json, relation.table);
+            json.append(",\"commit_timestamp\":");
+            long micros = commitTimestamp + POSTGRES_EPOCH_MICROS;
+            appendString(json, Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000).toString());
+            json.append(",\"type\":");
+            appendString(json, type);
+            json.append(",\"record\":");
+            appendRecord(json, newRow);
+            json.append(",\"old_record\":");
+            appendRecord(json, oldRow);
+            return json.append('}').toString();
+        }
+
+        private void appendRecord(StringBuilder json, Tuple row) {
+            if (row == null) {
+                json.append("{}");
+                return;
+            }
+            String[] values = row.values;
+            json.append('{');
+            boolean first = true;
+            for (int i = 0; i < values.length; i++) {
+                if (row.unchanged[i]) {
+                    continue;
+                }
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendString(json, relation.columns[i]);
+                json.append(':');
+                appendValue(json, relation.types[i], values[i]);
+            }
+            json.append('}');
+        }
+
+        private static void appendValue(StringBuilder json, int type, String value) {
+            if (value == null) {
+                json.append("null");
+                return;
+            }
+            switch (type) {
+                case BOOL_OID:
+                    json.append("t".equals(value) ? "true" : "false");
+                    return;
+                case INT2_OID:
+                case INT4_OID:
+                case INT8_OID:
+                case OID_OID:
+                case JSON_OID:
+                case JSONB_OID:
+                    json.append(value);
+                    return;
+                case FLOAT4_OID:
+                case FLOAT8_OID:
+                case NUMERIC_OID:
+                    // NaN and Infinity have no JSON number form
+                    if (Character.isDigit(value.charAt(value.length() - 1))) {
+                        json.append(value);
+                    } else {
+                        appendString(json, value);
+                    }
+                    return;
+                default:
+                    appendString(json, value);
+            }
+        }
+    }
+
+    static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
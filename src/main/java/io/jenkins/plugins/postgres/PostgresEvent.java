@@ -0,0 +1,169 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A single row change received from an event source, as handed to trigger dispatch. The payload is
+ * kept as the raw JSON text received on the wire and only parsed if something asks for the tree.
+ */
+public final class PostgresEvent {
+
+    private final String schema;
+    private final String table;
+    private final String eventType;
+    private final String rawPayload;
+    private final long receivedAt;
+    private volatile JsonObject payload;
+    // Position in the instance's EventJournal, -1 if the event was not journaled
+    private volatile long offset = -1;
+
+    public PostgresEvent(String schema, String table, String eventType, String rawPayload) {
+        this(schema, table, eventType, rawPayload, System.currentTimeMillis());
+    }
+
+    PostgresEvent(String schema, String table, String eventType, String rawPayload, long receivedAt) {
+        this.schema = schema;
+        this.table = table;
+        this.eventType = eventType;
+        this.rawPayload = rawPayload;
+        this.receivedAt = receivedAt;
+    }
+
+    public PostgresEvent(String schema, String table, String eventType, JsonObject payload) {
+        this(schema, table, eventType, payload.toString());
+        this.payload = payload;
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getRawPayload() {
+        return rawPayload;
+    }
+
+    public JsonObject getPayload() {
+        JsonObject result = payload;
+        if (result == null) {
+            result = JsonParser.parseString(rawPayload).getAsJsonObject();
+            payload = result;
+        }
+        return result;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /** The text value of a column of the changed row, for evaluating row filters; see {@link #readRecordValue}. */
+    String getRecordValue(String column) {
+        return readRecordValue(rawPayload, column);
+    }
+
+    /**
+     * Reads a column from a change payload without parsing it into a tree. The column is looked up in
+     * {@code record}, then in {@code old_record} (deletes only carry the old row), and otherwise at the
+     * top level. Strings are unescaped, other values are returned as written and JSON {@code null} as null.
+     */
+    static String readRecordValue(String json, String column) {
+        int objectStart = 0;
+        int recordStart = RealtimeFrame.findMember(json, 0, "record");
+        if (recordStart >= 0 && json.charAt(recordStart) == '{') {
+            objectStart = recordStart;
+            int oldRecordStart = RealtimeFrame.findMember(json, 0, "old_record");
+            if (RealtimeFrame.findMember(json, recordStart, column) < 0
+                    && oldRecordStart >= 0 && json.charAt(oldRecordStart) == '{') {
+                objectStart = oldRecordStart;
+            }
+        }
+        int valueStart = RealtimeFrame.findMember(json, objectStart, column);
+        if (valueStart < 0) {
+            return null;
+        }
+        int valueEnd = RealtimeFrame.skipValue(json, valueStart);
+        if (json.charAt(valueStart) == '"') {
+            return RealtimeFrame.readString(json, valueStart, valueEnd);
+        }
+        String value = json.substring(valueStart, valueEnd);
+        return "null".equals(value) ? null : value;
+    }
+
+    /**
+     * Identifies the database change behind this event: its table, event type, commit timestamp and a
+     * 64-bit fingerprint of the changed row, which includes the primary key. The same change delivered
+     * twice has the same key. Returns null if the payload has no commit timestamp, as identical payloads
+     * without one (a plain {@code NOTIFY}, for example) may well be separate changes.
+     */
+    String getChangeKey() {
+        String json = rawPayload;
+        if (json.isEmpty() || json.charAt(0) != '{') {
+            return null;
+        }
+        try {
+            int timestampStart = RealtimeFrame.findMember(json, 0, "commit_timestamp");
+            if (timestampStart < 0 || json.startsWith("null", timestampStart)) {
+                return null;
+            }
+            String timestamp = json.substring(timestampStart, RealtimeFrame.skipValue(json, timestampStart));
+            // Deletes only carry the old row
+            int rowStart = RealtimeFrame.findMember(json, 0, "DELETE".equals(eventType) ? "old_record" : "record");
+            long fingerprint = rowStart >= 0 ? fingerprint(json, rowStart, RealtimeFrame.skipValue(json, rowStart)) : 0;
+            return schema + '.' + table + ' ' + eventType + ' ' + timestamp + ' ' + Long.toHexString(fingerprint);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /** The time the change was committed in milliseconds since the epoch, or -1 if the payload does not say. */
+    long getCommitTimestamp() {
+        String json = rawPayload;
+        if (json.isEmpty() || json.charAt(0) != '{') {
+            return -1;
+        }
+        try {
+            int timestampStart = RealtimeFrame.findMember(json, 0, "commit_timestamp");
+            if (timestampStart < 0 || json.charAt(timestampStart) != '"') {
+                return -1;
+            }
+            String timestamp = RealtimeFrame.readString(json, timestampStart, RealtimeFrame.skipValue(json, timestampStart));
+            return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(timestamp, Instant::from).toEpochMilli();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    // 64-bit FNV-1a, so that rows of a large transaction do not collide
+    private static long fingerprint(String text, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    boolean isSameSource(PostgresEvent other) {
+        return eventType.equals(other.eventType) && table.equals(other.table) && schema.equals(other.schema);
+    }
+}
@@ -1,8 +1,8 @@
 package io.jenkins.plugins.postgres;
 
-import com.google.gson.JsonObject;
 import hudson.Extension;
 import hudson.model.*;
+import hudson.model.Queue;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
 import hudson.util.FormValidation;
@@ -12,22 +12,54 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class PostgresEventTrigger extends Trigger<Job<?, ?>> {
 
     private static final Logger LOGGER = Logger.getLogger(PostgresEventTrigger.class.getName());
+    // How long replay waits before looking for room in a full queue again
+    private static final long REPLAY_RETRY_MILLIS = 100;
     
     private final String instanceName;
     private final String tables;
     private boolean subscribeInsert = false;
     private boolean subscribeUpdate = false;
     private boolean subscribeDelete = false;
+    private int batchWindowSeconds = 0;
+    private int batchMaxEvents = 0;
+    private BatchFiring batchFiring = BatchFiring.TRAILING;
+    private DeliveryOrder deliveryOrder = DeliveryOrder.TABLE;
+    private String orderingKeyColumns;
+    private String filters;
+    private String includeColumns;
+    private String excludeColumns;
+    private boolean omitOldRecord = false;
+    private int maxPayloadBytes = 0;
+    private int maxBuildsPerMinute = 0;
+    private int maxInFlightBuilds = 0;
+    private String parameterMappings;
+    private String conditions;
     
-    private transient SupabaseRealtimeClient client;
-    private transient Set<String> subscribedTables = new HashSet<>();
+    private transient PayloadProjection projection;
+    private transient ParameterMapping mapping;
+    private transient List<EventCondition> eventConditions;
+    private transient EventSource client;
+    private transient EventSourceInstance boundInstance;
+    private transient List<EventSource.Subscription> subscriptions;
+    private transient EventQueue eventQueue;
+    private transient CommitTracker commitTracker;
+    private transient EventBatcher batcher;
+    private transient BuildLimiter limiter;
+    private transient DuplicateEventCache duplicates;
+    private transient EventMetrics metrics;
+    // Live events held back while the journal is replayed, null once replay is over
+    private transient List<PostgresEvent> heldEvents;
 
     @DataBoundConstructor
     public PostgresEventTrigger(String instanceName, String tables) {
@@ -70,42 +102,228 @@ public class PostgresEventTrigger extends Trigger<Job<?, ?>> {
         this.subscribeDelete = subscribeDelete;
     }
 
+    public String getFilters() {
+        return filters;
+    }
+
+    @DataBoundSetter
+    public void setFilters(String filters) {
+        this.filters = filters != null && !filters.trim().isEmpty() ? filters.trim() : null;
+    }
+
+    /**
+     * Returns the configured row filters, one per line. Each filter becomes its own server-side
+     * subscription, so a row is delivered if it matches any of them. An empty list means no filtering.
+     */
+    static List<String> parseFilters(String filters) {
+        List<String> result = new ArrayList<>();
+        if (filters == null) {
+            return result;
+        }
+        for (String line : filters.split("\\r?\\n")) {
+            String filter = line.trim();
+            if (!filter.isEmpty()) {
+                result.add(filter);
+            }
+        }
+        return result;
+    }
+
+    public int getBatchWindowSeconds() {
+        return batchWindowSeconds;
+    }
+
+    @DataBoundSetter
+    public void setBatchWindowSeconds(int batchWindowSeconds) {
+        this.batchWindowSeconds = Math.max(0, batchWindowSeconds);
+    }
+
+    public int getBatchMaxEvents() {
+        return batchMaxEvents;
+    }
+
+    @DataBoundSetter
+    public void setBatchMaxEvents(int batchMaxEvents) {
+        this.batchMaxEvents = Math.max(0, batchMaxEvents);
+    }
+
+    public BatchFiring getBatchFiring() {
+        return batchFiring != null ? batchFiring : BatchFiring.TRAILING;
+    }
+
+    @DataBoundSetter
+    public void setBatchFiring(BatchFiring batchFiring) {
+        this.batchFiring = batchFiring;
+    }
+
+    public DeliveryOrder getDeliveryOrder() {
+        return deliveryOrder != null ? deliveryOrder : DeliveryOrder.TABLE;
+    }
+
+    @DataBoundSetter
+    public void setDeliveryOrder(DeliveryOrder deliveryOrder) {
+        this.deliveryOrder = deliveryOrder;
+    }
+
+    public String getOrderingKeyColumns() {
+        return orderingKeyColumns;
+    }
+
+    /** Columns identifying a row when events are delivered in order per row; {@code id} if empty. */
+    @DataBoundSetter
+    public void setOrderingKeyColumns(String orderingKeyColumns) {
+        this.orderingKeyColumns = orderingKeyColumns != null && !orderingKeyColumns.trim().isEmpty()
+            ? orderingKeyColumns.trim() : null;
+    }
+
+    public String getIncludeColumns() {
+        return includeColumns;
+    }
+
+    @DataBoundSetter
+    public void setIncludeColumns(String includeColumns) {
+        this.includeColumns = includeColumns != null && !includeColumns.trim().isEmpty() ? includeColumns.trim() : null;
+    }
+
+    public String getExcludeColumns() {
+        return excludeColumns;
+    }
+
+    @DataBoundSetter
+    public void setExcludeColumns(String excludeColumns) {
+        this.excludeColumns = excludeColumns != null && !excludeColumns.trim().isEmpty() ? excludeColumns.trim() : null;
+    }
+
+    public boolean isOmitOldRecord() {
+        return omitOldRecord;
+    }
+
+    @DataBoundSetter
+    public void setOmitOldRecord(boolean omitOldRecord) {
+        this.omitOldRecord = omitOldRecord;
+    }
+
+    public int getMaxPayloadBytes() {
+        return maxPayloadBytes;
+    }
+
+    /** Event data larger than this is spilled to a file instead of being stored in the build; 0 means no limit. */
+    @DataBoundSetter
+    public void setMaxPayloadBytes(int maxPayloadBytes) {
+        this.maxPayloadBytes = Math.max(0, maxPayloadBytes);
+    }
+
+    public String getConditions() {
+        return conditions;
+    }
+
+    /** Conditions an event must meet to start a build, one expression per line. */
+    @DataBoundSetter
+    public void setConditions(String conditions) {
+        this.conditions = conditions != null && !conditions.trim().isEmpty() ? conditions.trim() : null;
+    }
+
+    public String getParameterMappings() {
+        return parameterMappings;
+    }
+
+    /** Build parameters taken from the payload, one {@code NAME=$.path} per line. */
+    @DataBoundSetter
+    public void setParameterMappings(String parameterMappings) {
+        this.parameterMappings = parameterMappings != null && !parameterMappings.trim().isEmpty()
+            ? parameterMappings.trim() : null;
+    }
+
+    public int getMaxBuildsPerMinute() {
+        return maxBuildsPerMinute;
+    }
+
+    /** Builds this trigger may schedule per minute; further events wait and are coalesced. 0 means no limit. */
+    @DataBoundSetter
+    public void setMaxBuildsPerMinute(int maxBuildsPerMinute) {
+        this.maxBuildsPerMinute = Math.max(0, maxBuildsPerMinute);
+    }
+
+    public int getMaxInFlightBuilds() {
+        return maxInFlightBuilds;
+    }
+
+    /** Builds of the job that may be queued or running before further events wait; 0 means no limit. */
+    @DataBoundSetter
+    public void setMaxInFlightBuilds(int maxInFlightBuilds) {
+        this.maxInFlightBuilds = Math.max(0, maxInFlightBuilds);
+    }
+
+    public boolean isBatching() {
+        return batchWindowSeconds > 0;
+    }
+
     @Override
     public void start(Job<?, ?> job, boolean newInstance) {
         super.start(job, newInstance);
         LOGGER.info("Starting PostgresEventTrigger for job: " + job.getName());
+        subscriptions = new ArrayList<>();
         
         try {
             PostgresEventTriggerConfiguration config = PostgresEventTriggerConfiguration.get();
-            SupabaseInstance instance = config.getInstanceByName(instanceName);
+            EventSourceInstance instance = config.getEventSourceInstance(instanceName);
             
             if (instance == null) {
-                LOGGER.warning("Supabase instance not found: " + instanceName);
+                LOGGER.warning("Instance not found: " + instanceName);
                 return;
             }
             
-            String url = instance.getUrl();
-            if (!url.startsWith("ws://") && !url.startsWith("wss://")) {
-                url = url.replace("https://", "wss://").replace("http://", "ws://");
-                if (!url.contains("/realtime/")) {
-                    url = url + "/realtime/v1/websocket";
-                }
+            // Events are handled on the dispatcher pool, never on the socket reader thread
+            EventDispatcher dispatcher = EventDispatcher.get();
+            TokenBucket instanceBucket = TokenBucket.forInstance(instanceName, instance.getMaxBuildsPerMinute());
+            if (maxBuildsPerMinute > 0 || maxInFlightBuilds > 0 || instanceBucket != null) {
+                // No more events wait for the limits than the trigger's queue holds
+                limiter = new BuildLimiter(maxBuildsPerMinute > 0 ? new TokenBucket(maxBuildsPerMinute) : null,
+                    instanceBucket, maxInFlightBuilds, () -> countInFlight(job), events -> scheduleBuild(job, events),
+                    config.getDispatchQueueCapacity(), event -> commit(Collections.singletonList(event)),
+                    PostgresEventTriggerTimer.get(), dispatcher.getExecutor());
             }
-            
-            client = new SupabaseRealtimeClient(url, instance.getApiKey());
-            client.connect();
-            
-            // Wait for connection
-            int attempts = 0;
-            while (!client.isOpen() && attempts < 10) {
-                Thread.sleep(500);
-                attempts++;
+            if (isBatching()) {
+                batcher = new EventBatcher(TimeUnit.SECONDS.toMillis(batchWindowSeconds), batchMaxEvents, getBatchFiring(),
+                    this::submitBuild, PostgresEventTriggerTimer.get(), dispatcher.getExecutor());
             }
+            metrics = EventMetrics.forInstance(instanceName);
+            projection = PayloadProjection.of(includeColumns, excludeColumns, omitOldRecord);
+            eventConditions = compileConditions(conditions, job);
+            try {
+                mapping = ParameterMapping.compile(parameterMappings);
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Ignoring parameter mappings of job " + job.getFullName() + ": " + e.getMessage());
+                mapping = ParameterMapping.NONE;
+            }
+            duplicates = new DuplicateEventCache(config.getDuplicateCacheSize(),
+                TimeUnit.SECONDS.toMillis(config.getDuplicateWindowSeconds()));
+            DeliveryOrder order = getDeliveryOrder();
+            List<String> keyColumns = new ArrayList<>(PayloadProjection.parseColumns(
+                orderingKeyColumns != null ? orderingKeyColumns : "id"));
+            commitTracker = new CommitTracker();
+            eventQueue = dispatcher.createQueue(job.getFullName(), event -> order.keyOf(event, keyColumns),
+                event -> handleEvent(job, event), event -> commit(Collections.singletonList(event)));
             
-            if (client.isOpen()) {
-                subscribeToTables(job);
-            } else {
-                LOGGER.warning("Failed to connect to Supabase Realtime");
+            // The shared connection opens in the background; subscriptions take effect once it is up
+            client = RealtimeConnectionManager.get().acquire(instance);
+            boundInstance = instance;
+            EventJournal journal = client.getJournal();
+            // Taken before subscribing, so every live event this trigger receives comes after it
+            long end = -1;
+            if (journal != null) {
+                journal.attach(job.getFullName());
+                end = journal.getEndOffset();
+                synchronized (this) {
+                    heldEvents = new ArrayList<>();
+                }
+            }
+            subscribeToTables();
+            if (journal != null) {
+                // Replay can wait for queue room, so it must not hold up Jenkins start-up
+                EventQueue queue = eventQueue;
+                long replayEnd = end;
+                dispatcher.getExecutor().execute(() -> replayJournal(journal, queue, replayEnd));
             }
             
         } catch (Exception e) {
@@ -113,9 +331,11 @@ public class PostgresEventTrigger extends Trigger<Job<?, ?>> {
         }
     }
 
-    private void subscribeToTables(Job<?, ?> job) {
+    /** Splits the configured tables into {@code {schema, table}} pairs; the schema defaults to {@code public}. */
+    static List<String[]> parseTables(String tables) {
+        List<String[]> result = new ArrayList<>();
         if (tables == null || tables.trim().isEmpty()) {
-            return;
+            return result;
         }
         
         String[] tableArray = tables.split("[,;\\s]+");
@@ -132,38 +352,266 @@ public class PostgresEventTrigger extends Trigger<Job<?, ?>> {
                 schema = parts[0];
                 tableName = parts[1];
             }
-            
-            final String finalSchema = schema;
-            final String finalTableName = tableName;
-            
-            if (subscribeInsert) {
-                client.subscribeToTable(finalSchema, finalTableName, "INSERT", 
-                    payload -> handleEvent(job, "INSERT", finalTableName, payload));
+            result.add(new String[] {schema, tableName});
+        }
+        return result;
+    }
+
+    private void subscribeToTables() {
+        List<String> eventTypes = getEventTypes();
+        if (eventTypes.size() == 3) {
+            // One registration per table instead of one per event type
+            eventTypes = List.of(RoutingIndex.ALL_EVENTS);
+        }
+        for (String[] table : parseTables(tables)) {
+            List<String> rowFilters = parseFilters(filters);
+            if (rowFilters.isEmpty()) {
+                rowFilters.add(null);
             }
-            if (subscribeUpdate) {
-                client.subscribeToTable(finalSchema, finalTableName, "UPDATE", 
-                    payload -> handleEvent(job, "UPDATE", finalTableName, payload));
+            for (String rowFilter : rowFilters) {
+                for (String eventType : eventTypes) {
+                    subscriptions.add(client.subscribeToTable(table[0], table[1], rowFilter, eventType, this::onEvent));
+                }
             }
-            if (subscribeDelete) {
-                client.subscribeToTable(finalSchema, finalTableName, "DELETE", 
-                    payload -> handleEvent(job, "DELETE", finalTableName, payload));
+        }
+    }
+
+    private void onEvent(PostgresEvent event) {
+        synchronized (this) {
+            if (heldEvents != null) {
+                heldEvents.add(event);
+                return;
+            }
+        }
+        enqueue(event);
+    }
+
+    private void enqueue(PostgresEvent event) {
+        commitTracker.track(event.getOffset());
+        eventQueue.offer(event);
+    }
+
+    /**
+     * Queues the journaled events this trigger has not built yet, then the live events that arrived
+     * meanwhile, so events reach the queue in journal order. A trigger without a committed offset
+     * starts at the end of the journal. Runs on the dispatcher pool and never waits for room in the
+     * queue, which would take a worker from the events draining it; it queues as many events as fit and
+     * continues once the queue has room again. Replay is abandoned when the trigger stops.
+     */
+    private void replayJournal(EventJournal journal, EventQueue queue, long end) {
+        String consumerId = job.getFullName();
+        long committed = journal.getCommittedOffset(consumerId);
+        if (committed < 0) {
+            journal.commit(consumerId, end);
+            committed = end;
+        } else if (committed < end) {
+            LOGGER.info("Replaying journaled events " + (committed + 1) + " to " + end + " for job: " + consumerId);
+        }
+        replayJournal(journal, queue, committed, end);
+    }
+
+    private void replayJournal(EventJournal journal, EventQueue queue, long after, long end) {
+        try {
+            while (after < end) {
+                if (queue.isClosed()) {
+                    return;
+                }
+                int room = queue.getCapacity() - queue.getDepth();
+                if (room <= 0) {
+                    long next = after;
+                    retryReplay(() -> replayJournal(journal, queue, next, end));
+                    return;
+                }
+                // Replay is the only producer until the held events are released, so these fit
+                long upTo = Math.min(end, after + room);
+                journal.read(after, upTo, event -> {
+                    if (accepts(event)) {
+                        enqueue(event);
+                    }
+                });
+                after = upTo;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to replay the event journal for job: " + job.getFullName(), e);
+        }
+        releaseHeldEvents(queue, end);
+    }
+
+    private void releaseHeldEvents(EventQueue queue, long end) {
+        while (true) {
+            List<PostgresEvent> released;
+            synchronized (this) {
+                List<PostgresEvent> held = heldEvents;
+                if (held == null || queue.isClosed()) {
+                    return;
+                }
+                if (held.isEmpty()) {
+                    heldEvents = null;
+                    return;
+                }
+                int room = queue.getCapacity() - queue.getDepth();
+                if (room <= 0) {
+                    retryReplay(() -> releaseHeldEvents(queue, end));
+                    return;
+                }
+                List<PostgresEvent> slice = held.subList(0, Math.min(room, held.size()));
+                released = new ArrayList<>(slice);
+                slice.clear();
+            }
+            for (PostgresEvent event : released) {
+                // Events that were journaled before the trigger subscribed were replayed already
+                if (event.getOffset() < 0 || event.getOffset() > end) {
+                    enqueue(event);
+                }
             }
-            
-            subscribedTables.add(schema + "." + tableName);
         }
     }
 
-    private void handleEvent(Job<?, ?> job, String eventType, String tableName, JsonObject payload) {
-        LOGGER.info("Received " + eventType + " event for table " + tableName);
+    private static void retryReplay(Runnable step) {
+        PostgresEventTriggerTimer.get().schedule(() -> EventDispatcher.get().getExecutor().execute(step),
+            REPLAY_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Whether a journaled event is one this trigger subscribes to, including its row filters. */
+    boolean accepts(PostgresEvent event) {
+        if (!getEventTypes().contains(event.getEventType())) {
+            return false;
+        }
+        boolean subscribed = false;
+        for (String[] table : parseTables(tables)) {
+            subscribed |= table[0].equals(event.getSchema()) && TableMatcher.compile(table[1]).matches(event.getTable());
+        }
+        if (!subscribed) {
+            return false;
+        }
+        List<String> rowFilters = parseFilters(filters);
+        if (rowFilters.isEmpty()) {
+            return true;
+        }
+        for (String rowFilter : rowFilters) {
+            try {
+                RowFilter filter = RowFilter.parse(rowFilter);
+                if (filter.matches(event.getRecordValue(filter.getColumn()))) {
+                    return true;
+                }
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.FINE, "Cannot evaluate row filter " + rowFilter + " on journaled event", e);
+            }
+        }
+        return false;
+    }
+
+    private List<String> getEventTypes() {
+        List<String> eventTypes = new ArrayList<>();
+        if (subscribeInsert) {
+            eventTypes.add("INSERT");
+        }
+        if (subscribeUpdate) {
+            eventTypes.add("UPDATE");
+        }
+        if (subscribeDelete) {
+            eventTypes.add("DELETE");
+        }
+        return eventTypes;
+    }
+
+    private void handleEvent(Job<?, ?> job, PostgresEvent event) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Received " + event.getEventType() + " event for table " + event.getTable());
+        }
+        metrics.dispatched(event);
+        
+        DuplicateEventCache currentDuplicates = duplicates;
+        if (currentDuplicates != null && currentDuplicates.isDuplicate(event)) {
+            EventMetrics.eventDuplicate();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Dropped duplicate " + event.getEventType() + " event for table " + event.getTable());
+            }
+            commit(Collections.singletonList(event));
+            return;
+        }
         
+        List<EventCondition> currentConditions = eventConditions;
+        EventCondition rejecting = currentConditions != null ? EventCondition.firstRejecting(currentConditions, event) : null;
+        if (rejecting != null) {
+            EventMetrics.eventRejected();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Condition '" + rejecting.getExpression() + "' rejected " + event.getEventType()
+                    + " event for table " + event.getTable());
+            }
+            commit(Collections.singletonList(event));
+            return;
+        }
+        
+        EventBatcher currentBatcher = batcher;
+        if (currentBatcher != null) {
+            currentBatcher.add(event);
+        } else {
+            submitBuild(Collections.singletonList(event));
+        }
+    }
+
+    /** Compiles the conditions one by one, so that an invalid one is ignored rather than all of them. */
+    private static List<EventCondition> compileConditions(String conditions, Job<?, ?> job) {
+        List<EventCondition> compiled = new ArrayList<>();
+        if (conditions != null) {
+            for (String line : conditions.split("\\r?\\n")) {
+                try {
+                    compiled.addAll(EventCondition.compileAll(line));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warning("Ignoring condition of job " + job.getFullName() + ": " + e.getMessage());
+                }
+            }
+        }
+        return compiled;
+    }
+
+    private void submitBuild(List<PostgresEvent> events) {
+        BuildLimiter currentLimiter = limiter;
+        if (currentLimiter != null) {
+            currentLimiter.submit(events);
+        } else {
+            scheduleBuild(job, events);
+        }
+    }
+
+    /** Builds of the job that are queued or running, counting running builds from the newest back. */
+    static int countInFlight(Job<?, ?> job) {
+        int count = 0;
+        if (job instanceof Queue.Task) {
+            count += Queue.getInstance().getItems((Queue.Task) job).size();
+        }
+        for (Run<?, ?> run = job.getLastBuild(); run != null && run.isBuilding(); run = run.getPreviousBuild()) {
+            count++;
+        }
+        return count;
+    }
+
+    private void scheduleBuild(Job<?, ?> job, List<PostgresEvent> events) {
         try {
-            List<ParameterValue> parameters = new ArrayList<>();
-            parameters.add(new StringParameterValue("POSTGRES_EVENT_TYPE", eventType));
-            parameters.add(new StringParameterValue("POSTGRES_TABLE_NAME", tableName));
-            parameters.add(new StringParameterValue("POSTGRES_EVENT_DATA", payload.toString()));
+            String eventTypes = joinDistinct(events, PostgresEvent::getEventType);
+            String tableNames = joinDistinct(events, PostgresEvent::getTable);
             
+            String data = eventData(events, isBatching(), projection != null ? projection : PayloadProjection.NONE);
+            SpilledEventData spilled = null;
+            if (exceedsLimit(data, maxPayloadBytes)) {
+                try {
+                    spilled = SpilledEventData.spill(data);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not spill " + data.length() + " characters of event data for job "
+                        + job.getFullName() + "; passing it as a parameter", e);
+                }
+            }
+            List<ParameterValue> parameters = buildParameters(events, data, spilled);
+            ParameterMapping currentMapping = mapping;
+            if (currentMapping != null) {
+                // Mapped from the last event's full payload, before any projection
+                parameters.addAll(currentMapping.apply(events.get(events.size() - 1).getRawPayload()));
+            }
             ParametersAction parametersAction = new ParametersAction(parameters);
-            CauseAction causeAction = new CauseAction(new PostgresEventCause(eventType, tableName));
+            CauseAction causeAction = new CauseAction(new PostgresEventCause(eventTypes, tableNames, events.size()));
+            Action[] actions = spilled != null
+                ? new Action[] {parametersAction, causeAction, spilled} : new Action[] {parametersAction, causeAction};
             
             if (job instanceof ParameterizedJobMixIn.ParameterizedJob) {
                 ParameterizedJobMixIn<?, ?> pJob = new ParameterizedJobMixIn() {
@@ -172,25 +620,168 @@ public class PostgresEventTrigger extends Trigger<Job<?, ?>> {
                         return job;
                     }
                 };
-                pJob.scheduleBuild2(0, parametersAction, causeAction);
-                LOGGER.info("Scheduled build for job: " + job.getName());
+                if (pJob.scheduleBuild2(0, actions) != null) {
+                    EventMetrics.buildScheduled();
+                    EventMetrics.eventsCoalesced(events.size() - 1);
+                    metrics.queued(events);
+                }
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Scheduled build for job: " + job.getName() + " (" + events.size() + " event(s))");
+                }
             }
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error triggering build", e);
         }
+        commit(events);
+    }
+
+    /**
+     * Marks events as built or discarded. Events of different tables may finish out of order, so the
+     * journal offset only moves past events that are all finished.
+     */
+    private void commit(List<PostgresEvent> events) {
+        EventSource current = client;
+        EventJournal journal = current != null ? current.getJournal() : null;
+        CommitTracker tracker = commitTracker;
+        long offset = tracker != null ? tracker.finish(events) : -1;
+        if (journal != null && offset >= 0) {
+            // The job's current name, the journal moves the offset when the job is renamed
+            journal.commit(job.getFullName(), offset);
+        }
+    }
+
+    /**
+     * Builds the parameters passed to a triggered build. A batching trigger always gets a JSON array
+     * in {@code POSTGRES_EVENT_DATA}; otherwise it is the single event's payload, or an array of the
+     * payloads if several events were coalesced into the build.
+     */
+    static List<ParameterValue> buildParameters(List<PostgresEvent> events, boolean batched) {
+        return buildParameters(events, eventData(events, batched, PayloadProjection.NONE), null);
+    }
+
+    /**
+     * Builds the parameters passed to a triggered build for its event data. Spilled data is left out of
+     * {@code POSTGRES_EVENT_DATA}, which is then empty, and {@code POSTGRES_EVENT_DATA_SPILLED} is set.
+     */
+    static List<ParameterValue> buildParameters(List<PostgresEvent> events, String data, SpilledEventData spilled) {
+        List<ParameterValue> parameters = new ArrayList<>();
+        parameters.add(new StringParameterValue("POSTGRES_EVENT_TYPE", joinDistinct(events, PostgresEvent::getEventType)));
+        parameters.add(new StringParameterValue("POSTGRES_TABLE_NAME", joinDistinct(events, PostgresEvent::getTable)));
+        parameters.add(new StringParameterValue("POSTGRES_EVENT_DATA", spilled != null ? "" : data));
+        parameters.add(new StringParameterValue("POSTGRES_EVENT_COUNT", String.valueOf(events.size())));
+        if (spilled != null) {
+            parameters.add(new StringParameterValue("POSTGRES_EVENT_DATA_SPILLED", "true"));
+        }
+        return parameters;
+    }
+
+    /**
+     * The event data of a build: the projected payload or, for a batching trigger and for events
+     * coalesced while the build waited for its limits, a JSON array of them.
+     */
+    static String eventData(List<PostgresEvent> events, boolean batched, PayloadProjection projection) {
+        // Payloads are passed through as received unless projected, never parsed and re-serialised
+        if (!batched && events.size() == 1) {
+            return projection.apply(events.get(events.size() - 1).getRawPayload());
+        }
+        StringBuilder payloads = new StringBuilder("[");
+        for (PostgresEvent event : events) {
+            if (payloads.length() > 1) {
+                payloads.append(',');
+            }
+            payloads.append(projection.apply(event.getRawPayload()));
+        }
+        return payloads.append(']').toString();
+    }
+
+    /** Whether data is larger than {@code maxBytes} in UTF-8, counting without encoding when the length decides. */
+    static boolean exceedsLimit(String data, int maxBytes) {
+        if (maxBytes <= 0 || data.length() <= maxBytes / 3) {
+            return false;
+        }
+        return data.length() > maxBytes || data.getBytes(StandardCharsets.UTF_8).length > maxBytes;
+    }
+
+    private static String joinDistinct(List<PostgresEvent> events, Function<PostgresEvent, String> field) {
+        Set<String> values = new LinkedHashSet<>();
+        for (PostgresEvent event : events) {
+            values.add(field.apply(event));
+        }
+        return String.join(",", values);
+    }
+
+    public EventSource.ConnectionState getConnectionState() {
+        EventSource current = client;
+        return current != null ? current.getState() : null;
+    }
+
+    public int getReconnectCount() {
+        EventSource current = client;
+        return current != null ? current.getReconnectCount() : 0;
+    }
+
+    public long getDisconnectedMillis() {
+        EventSource current = client;
+        return current != null ? current.getDisconnectedMillis() : 0;
+    }
+
+    public EventQueue getEventQueue() {
+        return eventQueue;
+    }
+
+    public DuplicateEventCache getDuplicateEventCache() {
+        return duplicates;
+    }
+
+    public BuildLimiter getBuildLimiter() {
+        return limiter;
+    }
+
+    /** The compiled conditions with their rejection counts, empty if the trigger has none or is not started. */
+    public List<EventCondition> getEventConditions() {
+        List<EventCondition> current = eventConditions;
+        return current != null ? current : Collections.emptyList();
+    }
+
+    public int getSubscriptionCount() {
+        List<EventSource.Subscription> current = subscriptions;
+        return current != null ? current.size() : 0;
+    }
+
+    @Override
+    public Collection<? extends Action> getProjectActions() {
+        return Collections.singletonList(new PostgresEventTriggerAction(this));
     }
 
     @Override
     public void stop() {
         LOGGER.info("Stopping PostgresEventTrigger");
-        if (client != null && client.isOpen()) {
-            for (String table : subscribedTables) {
-                String[] parts = table.split("\\.", 2);
-                if (parts.length == 2) {
-                    client.unsubscribeFromTable(parts[0], parts[1]);
-                }
+        if (client != null) {
+            for (EventSource.Subscription subscription : subscriptions) {
+                client.unsubscribe(subscription);
+            }
+            subscriptions.clear();
+            EventJournal journal = client.getJournal();
+            if (journal != null && job != null) {
+                journal.detach(job.getFullName());
             }
-            client.close();
+            RealtimeConnectionManager.get().release(boundInstance);
+            client = null;
+            boundInstance = null;
+        }
+        if (eventQueue != null) {
+            eventQueue.close();
+        }
+        synchronized (this) {
+            heldEvents = null;
+        }
+        if (batcher != null) {
+            batcher.close();
+            batcher = null;
+        }
+        if (limiter != null) {
+            limiter.close();
+            limiter = null;
         }
         super.stop();
     }
@@ -198,14 +789,28 @@ public class PostgresEventTrigger extends Trigger<Job<?, ?>> {
     public static class PostgresEventCause extends Cause {
         private final String eventType;
         private final String tableName;
+        private final int eventCount;
 
         public PostgresEventCause(String eventType, String tableName) {
+            this(eventType, tableName, 1);
+        }
+
+        public PostgresEventCause(String eventType, String tableName, int eventCount) {
             this.eventType = eventType;
             this.tableName = tableName;
+            this.eventCount = eventCount;
+        }
+
+        public int getEventCount() {
+            // Causes recorded before batching was introduced have no count
+            return Math.max(1, eventCount);
         }
 
         @Override
         public String getShortDescription() {
+            if (getEventCount() > 1) {
+                return "Triggered by " + eventCount + " Postgres " + eventType + " events on table " + tableName;
+            }
             return "Triggered by Postgres " + eventType + " event on table " + tableName;
         }
     }
@@ -248,6 +853,54 @@ public class PostgresEventTrigger extends Trigger<Job<?, ?>> {
             return FormValidation.ok();
         }
 
+        public FormValidation doCheckFilters(@QueryParameter String value) {
+            for (String filter : parseFilters(value)) {
+                if (!RowFilter.PATTERN.matcher(filter).matches()) {
+                    return FormValidation.error("Invalid filter '" + filter
+                        + "'. Expected column=operator.value, for example status=eq.ready or tenant_id=in.(1,2)");
+                }
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckConditions(@QueryParameter String value) {
+            try {
+                EventCondition.compileAll(value);
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckParameterMappings(@QueryParameter String value) {
+            try {
+                ParameterMapping.compile(value);
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckBatchWindowSeconds(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        public FormValidation doCheckBatchMaxEvents(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        public FormValidation doCheckMaxBuildsPerMinute(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        public FormValidation doCheckMaxInFlightBuilds(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        public FormValidation doCheckMaxPayloadBytes(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
         public FormValidation doCheckInstanceName(@QueryParameter String value) {
             if (value == null || value.trim().isEmpty()) {
                 return FormValidation.error("Instance name is required");
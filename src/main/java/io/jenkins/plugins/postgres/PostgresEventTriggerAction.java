@@ -0,0 +1,74 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.Util;
+import hudson.model.Action;
+
+import java.util.List;
+
+/**
+ * Shows the state of a job's Postgres event trigger on the job page.
+ */
+public class PostgresEventTriggerAction implements Action {
+
+    private final PostgresEventTrigger trigger;
+
+    public PostgresEventTriggerAction(PostgresEventTrigger trigger) {
+        this.trigger = trigger;
+    }
+
+    public PostgresEventTrigger getTrigger() {
+        return trigger;
+    }
+
+    public String getInstanceName() {
+        return trigger.getInstanceName();
+    }
+
+    public String getConnectionStatus() {
+        EventSource.ConnectionState state = trigger.getConnectionState();
+        return state != null ? state.getDisplayName() : "Not started";
+    }
+
+    public int getSubscriptionCount() {
+        return trigger.getSubscriptionCount();
+    }
+
+    public int getReconnectCount() {
+        return trigger.getReconnectCount();
+    }
+
+    public String getTimeDisconnected() {
+        return Util.getTimeSpanString(trigger.getDisconnectedMillis());
+    }
+
+    public EventQueue getEventQueue() {
+        return trigger.getEventQueue();
+    }
+
+    public DuplicateEventCache getDuplicateEventCache() {
+        return trigger.getDuplicateEventCache();
+    }
+
+    public List<EventCondition> getEventConditions() {
+        return trigger.getEventConditions();
+    }
+
+    public BuildLimiter getBuildLimiter() {
+        return trigger.getBuildLimiter();
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Postgres Event Trigger";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
@@ -1,21 +1,52 @@
 package io.jenkins.plugins.postgres;
 
 import hudson.Extension;
+import hudson.model.Job;
+import hudson.triggers.Trigger;
 import hudson.util.FormValidation;
 import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import jenkins.model.ParameterizedJobMixIn;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Logger;
 
 @Extension
 public class PostgresEventTriggerConfiguration extends GlobalConfiguration {
 
+    private static final Logger LOGGER = Logger.getLogger(PostgresEventTriggerConfiguration.class.getName());
+
+    static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    static final int DEFAULT_JOURNAL_RETENTION_MEGABYTES = 256;
+    static final int DEFAULT_DUPLICATE_CACHE_SIZE = 10000;
+    static final int DEFAULT_DUPLICATE_WINDOW_SECONDS = 600;
+
     private List<SupabaseInstance> supabaseInstances;
+    private List<PostgresInstance> postgresInstances;
+    private int dispatchThreads = EventDispatcher.DEFAULT_THREADS;
+    private int dispatchQueueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.COALESCE;
+    private int duplicateCacheSize = DEFAULT_DUPLICATE_CACHE_SIZE;
+    private int duplicateWindowSeconds = DEFAULT_DUPLICATE_WINDOW_SECONDS;
+    private boolean journalEnabled = true;
+    private int journalRetentionMegabytes = DEFAULT_JOURNAL_RETENTION_MEGABYTES;
+    // Replication slots of removed instances that are not dropped yet; see OrphanedSlotMonitor
+    private List<PostgresInstance> orphanedSlots;
+    // Built on first lookup and dropped whenever the instance lists change
+    private transient volatile InstanceIndex index;
 
     public PostgresEventTriggerConfiguration() {
         load();
@@ -32,53 +63,298 @@ public class PostgresEventTriggerConfiguration extends GlobalConfiguration {
     @DataBoundSetter
     public void setSupabaseInstances(List<SupabaseInstance> supabaseInstances) {
         this.supabaseInstances = supabaseInstances;
+        index = null;
+        save();
+    }
+
+    public List<PostgresInstance> getPostgresInstances() {
+        return postgresInstances;
+    }
+
+    @DataBoundSetter
+    public void setPostgresInstances(List<PostgresInstance> postgresInstances) {
+        this.postgresInstances = postgresInstances;
+        index = null;
+        save();
+    }
+
+    public int getDispatchThreads() {
+        return dispatchThreads > 0 ? dispatchThreads : EventDispatcher.DEFAULT_THREADS;
+    }
+
+    @DataBoundSetter
+    public void setDispatchThreads(int dispatchThreads) {
+        this.dispatchThreads = dispatchThreads;
+        EventDispatcher.get().setThreads(getDispatchThreads());
+        save();
+    }
+
+    public int getDispatchQueueCapacity() {
+        return dispatchQueueCapacity > 0 ? dispatchQueueCapacity : DEFAULT_QUEUE_CAPACITY;
+    }
+
+    @DataBoundSetter
+    public void setDispatchQueueCapacity(int dispatchQueueCapacity) {
+        this.dispatchQueueCapacity = dispatchQueueCapacity;
+        save();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy != null ? overflowPolicy : OverflowPolicy.COALESCE;
+    }
+
+    @DataBoundSetter
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        save();
+    }
+
+    public int getDuplicateCacheSize() {
+        return duplicateCacheSize > 0 ? duplicateCacheSize : DEFAULT_DUPLICATE_CACHE_SIZE;
+    }
+
+    @DataBoundSetter
+    public void setDuplicateCacheSize(int duplicateCacheSize) {
+        this.duplicateCacheSize = duplicateCacheSize;
+        save();
+    }
+
+    public int getDuplicateWindowSeconds() {
+        return duplicateWindowSeconds > 0 ? duplicateWindowSeconds : DEFAULT_DUPLICATE_WINDOW_SECONDS;
+    }
+
+    @DataBoundSetter
+    public void setDuplicateWindowSeconds(int duplicateWindowSeconds) {
+        this.duplicateWindowSeconds = duplicateWindowSeconds;
+        save();
+    }
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    @DataBoundSetter
+    public void setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+        save();
+    }
+
+    public int getJournalRetentionMegabytes() {
+        return journalRetentionMegabytes > 0 ? journalRetentionMegabytes : DEFAULT_JOURNAL_RETENTION_MEGABYTES;
+    }
+
+    @DataBoundSetter
+    public void setJournalRetentionMegabytes(int journalRetentionMegabytes) {
+        this.journalRetentionMegabytes = journalRetentionMegabytes;
         save();
     }
 
     @Override
     public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        Map<String, EventSourceInstance> before = getIndex().instances;
+        // Lists with every entry deleted are missing from the form and would not be reset by bindJSON
+        supabaseInstances = null;
+        postgresInstances = null;
         req.bindJSON(this, json);
+        index = null;
+        List<PostgresInstance> removedSlots = removedSlots(before, getIndex().instances);
+        synchronized (this) {
+            if (orphanedSlots != null) {
+                // A slot taken over by an instance again is in use, not orphaned
+                orphanedSlots.removeIf(slot -> isSlotRead(slot, getIndex().instances.values()));
+            }
+            for (PostgresInstance slot : removedSlots) {
+                addOrphanedSlot(slot);
+            }
+        }
         save();
+        restartTriggers(changedInstances(before, getIndex().instances));
+        // Dropped once the removed instances' connections have closed
+        OrphanedSlotMonitor.get().dropSlots(removedSlots);
         return true;
     }
 
-    public FormValidation doCheckUrl(@QueryParameter String value) {
-        if (value == null || value.trim().isEmpty()) {
-            return FormValidation.error("URL is required");
+    /**
+     * The instances that read a replication slot before but whose slot, identified by database URL and slot
+     * name, is no longer read by any instance.
+     */
+    static List<PostgresInstance> removedSlots(Map<String, EventSourceInstance> before, Map<String, EventSourceInstance> after) {
+        List<PostgresInstance> removed = new ArrayList<>();
+        for (EventSourceInstance instance : before.values()) {
+            if (readsSlot(instance) && !isSlotRead((PostgresInstance) instance, after.values())) {
+                removed.add((PostgresInstance) instance);
+            }
         }
-        if (!value.startsWith("http://") && !value.startsWith("https://") && !value.startsWith("ws://") && !value.startsWith("wss://")) {
-            return FormValidation.error("URL must start with http://, https://, ws://, or wss://");
+        return removed;
+    }
+
+    private static boolean readsSlot(EventSourceInstance instance) {
+        return instance instanceof PostgresInstance
+            && ((PostgresInstance) instance).getCaptureMode() == CaptureMode.LOGICAL_REPLICATION;
+    }
+
+    private static boolean isSlotRead(PostgresInstance slot, Collection<EventSourceInstance> instances) {
+        for (EventSourceInstance instance : instances) {
+            if (readsSlot(instance) && sameSlot(slot, (PostgresInstance) instance)) {
+                return true;
+            }
         }
-        return FormValidation.ok();
+        return false;
     }
 
-    public FormValidation doCheckName(@QueryParameter String value) {
-        if (value == null || value.trim().isEmpty()) {
-            return FormValidation.error("Name is required");
+    static boolean sameSlot(PostgresInstance a, PostgresInstance b) {
+        return Objects.equals(a.getJdbcUrl(), b.getJdbcUrl()) && Objects.equals(a.getSlotName(), b.getSlotName());
+    }
+
+    /** Replication slots of removed instances that have not been dropped. */
+    public synchronized List<PostgresInstance> getOrphanedSlots() {
+        return orphanedSlots != null ? new ArrayList<>(orphanedSlots) : Collections.emptyList();
+    }
+
+    synchronized void addOrphanedSlot(PostgresInstance slot) {
+        if (orphanedSlots == null) {
+            orphanedSlots = new ArrayList<>();
+        }
+        if (orphanedSlots.stream().noneMatch(orphaned -> sameSlot(orphaned, slot))) {
+            orphanedSlots.add(slot);
         }
-        return FormValidation.ok();
     }
 
-    public SupabaseInstance getInstanceByName(String name) {
-        if (supabaseInstances == null || name == null) {
-            return null;
+    /** Forgets an orphaned slot, once it is dropped or the administrator dismissed it, and saves. */
+    void removeOrphanedSlot(PostgresInstance slot) {
+        synchronized (this) {
+            if (orphanedSlots == null || !orphanedSlots.removeIf(orphaned -> sameSlot(orphaned, slot))) {
+                return;
+            }
         }
-        for (SupabaseInstance instance : supabaseInstances) {
-            if (name.equals(instance.getName())) {
-                return instance;
+        save();
+    }
+
+    /** Names of the instances that were added, removed or changed in a way their triggers must pick up. */
+    static Set<String> changedInstances(Map<String, EventSourceInstance> before, Map<String, EventSourceInstance> after) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, EventSourceInstance> entry : before.entrySet()) {
+            EventSourceInstance updated = after.get(entry.getKey());
+            if (!entry.getValue().equals(updated)
+                    || entry.getValue().getMaxBuildsPerMinute() != updated.getMaxBuildsPerMinute()) {
+                changed.add(entry.getKey());
             }
         }
-        return null;
+        for (String name : after.keySet()) {
+            if (!before.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Restarts the triggers bound to the given instances, so they reconnect with the new settings; other
+     * triggers keep their subscriptions. An instance whose connection settings did not change keeps its
+     * connection open while its triggers restart.
+     */
+    private void restartTriggers(Set<String> instanceNames) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (instanceNames.isEmpty() || jenkins == null) {
+            return;
+        }
+        List<EventSourceInstance> retained = new ArrayList<>();
+        for (String name : instanceNames) {
+            EventSourceInstance instance = getEventSourceInstance(name);
+            if (instance != null && RealtimeConnectionManager.get().retain(instance)) {
+                retained.add(instance);
+            }
+        }
+        try {
+            for (Job<?, ?> job : jenkins.getAllItems(Job.class)) {
+                if (!(job instanceof ParameterizedJobMixIn.ParameterizedJob)) {
+                    continue;
+                }
+                for (Trigger<?> trigger : ((ParameterizedJobMixIn.ParameterizedJob<?, ?>) job).getTriggers().values()) {
+                    if (trigger instanceof PostgresEventTrigger
+                            && instanceNames.contains(((PostgresEventTrigger) trigger).getInstanceName())) {
+                        LOGGER.info("Restarting Postgres event trigger of " + job.getFullName() + " for changed instance "
+                            + ((PostgresEventTrigger) trigger).getInstanceName());
+                        PostgresEventTrigger postgresTrigger = (PostgresEventTrigger) trigger;
+                        postgresTrigger.stop();
+                        postgresTrigger.start(job, false);
+                    }
+                }
+            }
+        } finally {
+            for (EventSourceInstance instance : retained) {
+                RealtimeConnectionManager.get().release(instance);
+            }
+        }
+    }
+
+    public FormValidation doCheckDispatchThreads(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckDispatchQueueCapacity(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckDuplicateCacheSize(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckDuplicateWindowSeconds(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public FormValidation doCheckJournalRetentionMegabytes(@QueryParameter String value) {
+        return FormValidation.validatePositiveInteger(value);
+    }
+
+    public SupabaseInstance getInstanceByName(String name) {
+        return name != null ? getIndex().supabase.get(name) : null;
+    }
+
+    public PostgresInstance getPostgresInstanceByName(String name) {
+        return name != null ? getIndex().postgres.get(name) : null;
+    }
+
+    /**
+     * Looks up a Supabase or PostgreSQL instance by name; Supabase instances win if both use the same name.
+     */
+    public EventSourceInstance getEventSourceInstance(String name) {
+        return name != null ? getIndex().instances.get(name) : null;
     }
 
     public List<String> getInstanceNames() {
-        if (supabaseInstances == null) {
-            return Collections.emptyList();
+        return new ArrayList<>(getIndex().instances.keySet());
+    }
+
+    private InstanceIndex getIndex() {
+        InstanceIndex current = index;
+        if (current == null) {
+            current = new InstanceIndex(supabaseInstances, postgresInstances);
+            index = current;
         }
-        List<String> names = new ArrayList<>();
-        for (SupabaseInstance instance : supabaseInstances) {
-            names.add(instance.getName());
+        return current;
+    }
+
+    /** Instances by name, in configuration order; the first of several instances with the same name wins. */
+    private static final class InstanceIndex {
+        private final Map<String, SupabaseInstance> supabase = new HashMap<>();
+        private final Map<String, PostgresInstance> postgres = new HashMap<>();
+        private final Map<String, EventSourceInstance> instances = new LinkedHashMap<>();
+
+        private InstanceIndex(List<SupabaseInstance> supabaseInstances, List<PostgresInstance> postgresInstances) {
+            if (supabaseInstances != null) {
+                for (SupabaseInstance instance : supabaseInstances) {
+                    supabase.putIfAbsent(instance.getName(), instance);
+                    instances.putIfAbsent(instance.getName(), instance);
+                }
+            }
+            if (postgresInstances != null) {
+                for (PostgresInstance instance : postgresInstances) {
+                    postgres.putIfAbsent(instance.getName(), instance);
+                    instances.putIfAbsent(instance.getName(), instance);
+                }
+            }
         }
-        return names;
     }
 }
@@ -0,0 +1,38 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Plugin-wide scheduler for short periodic work such as Realtime heartbeats. Tasks run on a
+ * single daemon thread and must not block.
+ */
+public final class PostgresEventTriggerTimer {
+
+    private static ScheduledThreadPoolExecutor executor;
+
+    private PostgresEventTriggerTimer() {
+    }
+
+    public static synchronized ScheduledExecutorService get() {
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(1,
+                new NamingThreadFactory(new DaemonThreadFactory(), "PostgresEventTrigger.Timer"));
+            // Cancelled heartbeats of closed sockets should not linger in the queue
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        return executor;
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
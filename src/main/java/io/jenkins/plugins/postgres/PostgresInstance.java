@@ -0,0 +1,165 @@
+package io.jenkins.plugins.postgres;
+
+import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.security.ACL;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A plain PostgreSQL database, read through a logical replication slot with the {@code pgoutput} plugin
+ * or through {@code LISTEN/NOTIFY}.
+ */
+public class PostgresInstance extends AbstractDescribableImpl<PostgresInstance> implements EventSourceInstance, Serializable {
+
+    private static final long serialVersionUID = 1L;
+    // Replication slot names may only contain lower case letters, numbers and underscores
+    private static final Pattern SLOT_NAME_PATTERN = Pattern.compile("[a-z0-9_]{1,63}");
+
+    private final String name;
+    private final String jdbcUrl;
+    private final String credentialsId;
+    private final String slotName;
+    private final String publicationName;
+    private CaptureMode captureMode = CaptureMode.LOGICAL_REPLICATION;
+    private int maxBuildsPerMinute = 0;
+
+    @DataBoundConstructor
+    public PostgresInstance(String name, String jdbcUrl, String credentialsId, String slotName, String publicationName) {
+        this.name = name;
+        this.jdbcUrl = jdbcUrl;
+        this.credentialsId = credentialsId;
+        this.slotName = slotName;
+        this.publicationName = publicationName;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public String getCredentialsId() {
+        return credentialsId;
+    }
+
+    public String getSlotName() {
+        return slotName;
+    }
+
+    public String getPublicationName() {
+        return publicationName;
+    }
+
+    public CaptureMode getCaptureMode() {
+        return captureMode != null ? captureMode : CaptureMode.LOGICAL_REPLICATION;
+    }
+
+    @DataBoundSetter
+    public void setCaptureMode(CaptureMode captureMode) {
+        this.captureMode = captureMode;
+    }
+
+    @Override
+    public int getMaxBuildsPerMinute() {
+        return maxBuildsPerMinute;
+    }
+
+    @DataBoundSetter
+    public void setMaxBuildsPerMinute(int maxBuildsPerMinute) {
+        this.maxBuildsPerMinute = Math.max(0, maxBuildsPerMinute);
+    }
+
+    public StandardUsernamePasswordCredentials getCredentials() {
+        return CredentialsCache.get(StandardUsernamePasswordCredentials.class, credentialsId);
+    }
+
+    @Override
+    public EventSource openEventSource(EventJournal journal) {
+        JdbcEventSource client = getCaptureMode() == CaptureMode.LISTEN_NOTIFY
+            ? new ListenNotifyClient(this, journal)
+            : new LogicalReplicationClient(this, journal);
+        client.connect();
+        return client;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PostgresInstance)) {
+            return false;
+        }
+        PostgresInstance that = (PostgresInstance) o;
+        return Objects.equals(name, that.name)
+            && Objects.equals(jdbcUrl, that.jdbcUrl)
+            && Objects.equals(credentialsId, that.credentialsId)
+            && Objects.equals(slotName, that.slotName)
+            && Objects.equals(publicationName, that.publicationName)
+            && getCaptureMode() == that.getCaptureMode();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, jdbcUrl, credentialsId, slotName, publicationName, getCaptureMode());
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<PostgresInstance> {
+
+        @Override
+        public String getDisplayName() {
+            return "PostgreSQL Instance";
+        }
+
+        @SuppressWarnings("deprecation")
+        public ListBoxModel doFillCredentialsIdItems(@QueryParameter String credentialsId) {
+            if (!Jenkins.get().hasPermission(Jenkins.ADMINISTER)) {
+                return new StandardListBoxModel().includeCurrentValue(credentialsId);
+            }
+
+            return new StandardListBoxModel()
+                .includeEmptyValue()
+                .includeAs(ACL.SYSTEM, Jenkins.get(), StandardUsernamePasswordCredentials.class);
+        }
+
+        public FormValidation doCheckJdbcUrl(@QueryParameter String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return FormValidation.error("JDBC URL is required");
+            }
+            if (!value.startsWith("jdbc:postgresql:")) {
+                return FormValidation.error("JDBC URL must start with jdbc:postgresql:");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckSlotName(@QueryParameter String value) {
+            if (value == null || !SLOT_NAME_PATTERN.matcher(value).matches()) {
+                return FormValidation.error("Slot name must be 1-63 lower case letters, digits or underscores");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckPublicationName(@QueryParameter String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return FormValidation.error("Publication name is required");
+            }
+            return FormValidation.ok();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.init.Terminator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller-wide registry of event source connections. Every trigger bound to the same
+ * {@link EventSourceInstance} shares one {@link EventSource}, such as a Supabase Realtime socket
+ * or a replication stream; the connection is closed when the last trigger releases it.
+ *
+ * <p>Journals are kept per instance name, which is also their directory. While the triggers of an edited
+ * instance restart one at a time, its old and new connections both record into the same journal, and the
+ * journal is closed only when the last connection using it is closed. Sources never close their journal.
+ */
+public final class RealtimeConnectionManager {
+
+    private static final Logger LOGGER = Logger.getLogger(RealtimeConnectionManager.class.getName());
+    private static final RealtimeConnectionManager INSTANCE = new RealtimeConnectionManager();
+
+    private final Map<EventSourceInstance, SharedConnection> connections = new HashMap<>();
+    // Instance name -> journal, referenced by each open connection of that name
+    private final Map<String, SharedJournal> journals = new HashMap<>();
+
+    private RealtimeConnectionManager() {
+    }
+
+    public static RealtimeConnectionManager get() {
+        return INSTANCE;
+    }
+
+    public synchronized EventSource acquire(EventSourceInstance instance) throws Exception {
+        SharedConnection connection = connections.get(instance);
+        if (connection == null) {
+            EventJournal journal = retainJournal(instance);
+            EventSource client;
+            try {
+                client = instance.openEventSource(journal);
+            } catch (Exception | Error e) {
+                releaseJournal(instance.getName());
+                throw e;
+            }
+            connection = new SharedConnection(client);
+            connections.put(instance, connection);
+            EventMetrics.forInstance(instance.getName()).register(connection.client);
+            LOGGER.info("Opened shared connection for instance: " + instance.getName());
+        }
+        connection.references++;
+        return connection.client;
+    }
+
+    private EventJournal retainJournal(EventSourceInstance instance) {
+        SharedJournal shared = journals.get(instance.getName());
+        if (shared == null) {
+            EventJournal journal = openJournal(instance);
+            if (journal == null) {
+                return null;
+            }
+            shared = new SharedJournal(journal);
+            journals.put(instance.getName(), shared);
+        }
+        shared.references++;
+        return shared.journal;
+    }
+
+    private void releaseJournal(String instanceName) {
+        SharedJournal shared = journals.get(instanceName);
+        if (shared != null && --shared.references <= 0) {
+            journals.remove(instanceName);
+            shared.journal.close();
+        }
+    }
+
+    private static EventJournal openJournal(EventSourceInstance instance) {
+        PostgresEventTriggerConfiguration config = PostgresEventTriggerConfiguration.get();
+        if (config == null || !config.isJournalEnabled()) {
+            return null;
+        }
+        try {
+            return EventJournal.open(instance.getName(), config.getJournalRetentionMegabytes() * 1024L * 1024L);
+        } catch (IOException e) {
+            // Triggering keeps working without the journal, only replay after a restart is lost
+            LOGGER.log(Level.WARNING, "Failed to open event journal for instance: " + instance.getName(), e);
+            return null;
+        }
+    }
+
+    /** Takes another reference to an open connection; returns false, without opening one, if there is none. */
+    public synchronized boolean retain(EventSourceInstance instance) {
+        SharedConnection connection = connections.get(instance);
+        if (connection == null) {
+            return false;
+        }
+        connection.references++;
+        return true;
+    }
+
+    public synchronized void release(EventSourceInstance instance) {
+        SharedConnection connection = connections.get(instance);
+        if (connection == null) {
+            return;
+        }
+        if (--connection.references <= 0) {
+            connections.remove(instance);
+            EventMetrics metrics = EventMetrics.forInstance(instance.getName());
+            metrics.unregister();
+            // The gauges are named by instance; hand them to a connection of the same name that is still open
+            for (Map.Entry<EventSourceInstance, SharedConnection> other : connections.entrySet()) {
+                if (other.getKey().getName().equals(instance.getName())) {
+                    metrics.register(other.getValue().client);
+                    break;
+                }
+            }
+            connection.client.shutdown();
+            releaseJournal(instance.getName());
+            LOGGER.info("Closed shared connection for instance: " + instance.getName());
+        }
+    }
+
+    /** The journals of the open connections. */
+    synchronized List<EventJournal> getOpenJournals() {
+        List<EventJournal> open = new ArrayList<>();
+        for (SharedJournal shared : journals.values()) {
+            open.add(shared.journal);
+        }
+        return open;
+    }
+
+    public synchronized int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Terminator
+    public static void shutdown() {
+        synchronized (INSTANCE) {
+            for (Map.Entry<EventSourceInstance, SharedConnection> entry : INSTANCE.connections.entrySet()) {
+                SharedConnection connection = entry.getValue();
+                EventMetrics.forInstance(entry.getKey().getName()).unregister();
+                try {
+                    connection.client.shutdown();
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Error closing event source connection", e);
+                }
+            }
+            INSTANCE.connections.clear();
+            for (SharedJournal shared : INSTANCE.journals.values()) {
+                shared.journal.close();
+            }
+            INSTANCE.journals.clear();
+        }
+    }
+
+    private static final class SharedJournal {
+        private final EventJournal journal;
+        private int references;
+
+        private SharedJournal(EventJournal journal) {
+            this.journal = journal;
+        }
+    }
+
+    private static final class SharedConnection {
+        private final EventSource client;
+        private int references;
+
+        private SharedConnection(EventSource client) {
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package io.jenkins.plugins.postgres;
+
+/**
+ * Routing view of a Phoenix JSON frame ({@code {"topic":..,"event":..,"payload":..,"ref":..}}).
+ * Decoding only reads the routing fields and records where the payload sits in the frame text; no
+ * JSON tree is built and the payload is handed on as raw text, so frames nobody listens to cost a
+ * single pass over the characters.
+ */
+final class RealtimeFrame {
+
+    private final String text;
+    private String topic;
+    private String event;
+    private String ref;
+    private int payloadStart = -1;
+    private int payloadEnd = -1;
+
+    private RealtimeFrame(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Decodes the top-level fields of a frame.
+     *
+     * @throws IllegalArgumentException if the text is not a JSON object
+     */
+    static RealtimeFrame decode(String text) {
+        RealtimeFrame frame = new RealtimeFrame(text);
+        int pos = skipWhitespace(text, 0);
+        expect(text, pos, '{');
+        pos = skipWhitespace(text, pos + 1);
+        if (pos < text.length() && text.charAt(pos) == '}') {
+            return frame;
+        }
+        while (true) {
+            expect(text, pos, '"');
+            int keyEnd = skipString(text, pos);
+            // Routing keys never contain escapes, so compare the raw key in place
+            int keyStart = pos + 1;
+            int keyLength = keyEnd - 1 - keyStart;
+            pos = skipWhitespace(text, keyEnd);
+            expect(text, pos, ':');
+            int valueStart = skipWhitespace(text, pos + 1);
+            int valueEnd = skipValue(text, valueStart);
+
+            if (matches(text, keyStart, keyLength, "topic")) {
+                frame.topic = readString(text, valueStart, valueEnd);
+            } else if (matches(text, keyStart, keyLength, "event")) {
+                frame.event = readString(text, valueStart, valueEnd);
+            } else if (matches(text, keyStart, keyLength, "ref")) {
+                frame.ref = readString(text, valueStart, valueEnd);
+            } else if (matches(text, keyStart, keyLength, "payload")) {
+                frame.payloadStart = valueStart;
+                frame.payloadEnd = valueEnd;
+            }
+
+            pos = skipWhitespace(text, valueEnd);
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException("Unterminated frame");
+            }
+            char c = text.charAt(pos);
+            if (c == '}') {
+                return frame;
+            }
+            expect(text, pos, ',');
+            pos = skipWhitespace(text, pos + 1);
+        }
+    }
+
+    String getTopic() {
+        return topic;
+    }
+
+    String getEvent() {
+        return event;
+    }
+
+    String getRef() {
+        return ref;
+    }
+
+    boolean hasObjectPayload() {
+        return payloadStart >= 0 && text.charAt(payloadStart) == '{';
+    }
+
+    String getRawPayload() {
+        return payloadStart >= 0 ? text.substring(payloadStart, payloadEnd) : null;
+    }
+
+    /**
+     * Narrows a {@code postgres_changes} frame to its {@code payload.data} object and returns the
+     * change type found in {@code data.type}, or {@code null} if the payload has no such object.
+     * After this call {@link #getRawPayload()} returns the data object.
+     */
+    String selectChangeData() {
+        if (!hasObjectPayload()) {
+            return null;
+        }
+        int dataStart = findMember(text, payloadStart, "data");
+        if (dataStart < 0 || text.charAt(dataStart) != '{') {
+            return null;
+        }
+        int typeStart = findMember(text, dataStart, "type");
+        if (typeStart < 0) {
+            return null;
+        }
+        payloadStart = dataStart;
+        payloadEnd = skipValue(text, dataStart);
+        return readString(text, typeStart, skipValue(text, typeStart));
+    }
+
+    /** Reads a string member of the payload object, or returns null if it has no such member. */
+    String getPayloadString(String name) {
+        if (!hasObjectPayload()) {
+            return null;
+        }
+        int valueStart = findMember(text, payloadStart, name);
+        if (valueStart < 0 || text.charAt(valueStart) != '"') {
+            return null;
+        }
+        return readString(text, valueStart, skipValue(text, valueStart));
+    }
+
+    /**
+     * Returns the index of the value of member {@code name} in the object starting at {@code objectStart},
+     * or -1 if there is no such member.
+     */
+    static int findMember(String text, int objectStart, String name) {
+        int pos = skipWhitespace(text, objectStart + 1);
+        if (pos >= text.length() || text.charAt(pos) == '}') {
+            return -1;
+        }
+        while (pos < text.length()) {
+            expect(text, pos, '"');
+            int keyEnd = skipString(text, pos);
+            boolean found = matches(text, pos + 1, keyEnd - pos - 2, name);
+            pos = skipWhitespace(text, keyEnd);
+            expect(text, pos, ':');
+            int valueStart = skipWhitespace(text, pos + 1);
+            if (found) {
+                return valueStart;
+            }
+            pos = skipWhitespace(text, skipValue(text, valueStart));
+            if (pos >= text.length() || text.charAt(pos) == '}') {
+                return -1;
+            }
+            expect(text, pos, ',');
+            pos = skipWhitespace(text, pos + 1);
+        }
+        return -1;
+    }
+
+    private static boolean matches(String text, int start, int length, String name) {
+        return length == name.length() && text.regionMatches(start, name, 0, length);
+    }
+
+    private static void expect(String text, int pos, char c) {
+        if (pos >= text.length() || text.charAt(pos) != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at offset " + pos);
+        }
+    }
+
+    static int skipWhitespace(String text, int pos) {
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /** Returns the index just past the JSON value starting at {@code pos}. */
+    static int skipValue(String text, int pos) {
+        if (pos >= text.length()) {
+            throw new IllegalArgumentException("Missing value at offset " + pos);
+        }
+        char c = text.charAt(pos);
+        if (c == '"') {
+            return skipString(text, pos);
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < text.length()) {
+                char d = text.charAt(pos);
+                if (d == '"') {
+                    pos = skipString(text, pos);
+                    continue;
+                }
+                if (d == '{' || d == '[') {
+                    depth++;
+                } else if (d == '}' || d == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return pos + 1;
+                    }
+                }
+                pos++;
+            }
+            throw new IllegalArgumentException("Unterminated value");
+        }
+        // number, true, false or null
+        while (pos < text.length()) {
+            char d = text.charAt(pos);
+            if (d == ',' || d == '}' || d == ']' || d == ' ' || d == '\n' || d == '\r' || d == '\t') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /** Returns the index just past the closing quote of the string starting at {@code pos}. */
+    static int skipString(String text, int pos) {
+        pos++;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '\\') {
+                pos += 2;
+                continue;
+            }
+            if (c == '"') {
+                return pos + 1;
+            }
+            pos++;
+        }
+        throw new IllegalArgumentException("Unterminated string");
+    }
+
+    /** Reads a JSON string value; returns {@code null} for non-string values such as {@code null}. */
+    static String readString(String text, int start, int end) {
+        if (text.charAt(start) != '"') {
+            return null;
+        }
+        boolean escaped = false;
+        for (int i = start + 1; i < end - 1 && !escaped; i++) {
+            escaped = text.charAt(i) == '\\';
+        }
+        if (!escaped) {
+            return text.substring(start + 1, end - 1);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start + 1; i < end - 1; i++) {
+            char c = text.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = text.charAt(++i);
+            switch (e) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default: sb.append(e); break;
+            }
+        }
+        return sb.toString();
+    }
+}
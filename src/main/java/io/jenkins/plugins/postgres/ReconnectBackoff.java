@@ -0,0 +1,36 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Capped exponential backoff with full jitter: the n-th retry waits a random time between zero and
+ * {@code min(max, base * 2^n)}, so connections dropped together do not retry together.
+ */
+final class ReconnectBackoff {
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private int attempts;
+
+    ReconnectBackoff(long baseMillis, long maxMillis) {
+        this.baseMillis = Math.max(1, baseMillis);
+        this.maxMillis = Math.max(this.baseMillis, maxMillis);
+    }
+
+    synchronized long nextDelayMillis() {
+        long ceiling = baseMillis << Math.min(attempts, 30);
+        if (ceiling <= 0 || ceiling > maxMillis) {
+            ceiling = maxMillis;
+        }
+        attempts++;
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    synchronized int getAttempts() {
+        return attempts;
+    }
+
+    synchronized void reset() {
+        attempts = 0;
+    }
+}
@@ -0,0 +1,125 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Concurrent two-level index from topic to event type to handlers, used by the event sources to route
+ * incoming changes. Lookups on the connection threads take no lock and allocate nothing: each route keeps
+ * its handlers in an immutable map of arrays that is replaced whenever a subscription changes. Changes are
+ * serialised on the index, so code that keeps per-route state in step with the subscriptions, such as
+ * joining a channel, can do so by synchronising on the index as well.
+ *
+ * <p>A {@link EventSource.Subscription} holds its route, so unsubscribing goes straight to it instead of
+ * searching the topics; only the handlers registered for the same topic and event type are copied.
+ */
+final class RoutingIndex<R extends RoutingIndex.Route> {
+
+    /** Event type of handlers that receive inserts, updates and deletes alike. */
+    static final String ALL_EVENTS = "*";
+    @SuppressWarnings("unchecked")
+    static final Consumer<PostgresEvent>[] NO_HANDLERS = new Consumer[0];
+
+    private final ConcurrentHashMap<String, R> routes = new ConcurrentHashMap<>();
+
+    /** The route of a topic, or null if nobody is subscribed to it. */
+    R get(String topic) {
+        return routes.get(topic);
+    }
+
+    /** All routes; iteration is weakly consistent with concurrent changes. */
+    Collection<R> routes() {
+        return routes.values();
+    }
+
+    int size() {
+        return routes.size();
+    }
+
+    /** Adds a handler for an event type of a topic, creating the topic's route with {@code factory} if needed. */
+    synchronized EventSource.Subscription add(String topic, Function<String, R> factory, String event,
+                                              Consumer<PostgresEvent> handler) {
+        R route = routes.get(topic);
+        if (route == null) {
+            route = factory.apply(topic);
+            routes.put(topic, route);
+        }
+        route.add(event, handler);
+        return new EventSource.Subscription(topic, event, handler, route);
+    }
+
+    /**
+     * Removes a subscription. Returns its route if that was the route's last handler and the route has
+     * been dropped from the index, otherwise null.
+     */
+    synchronized R remove(EventSource.Subscription subscription) {
+        Route route = subscription.getRoute();
+        if (route == null || routes.get(route.topic) != route || !route.remove(subscription.getEvent(), subscription.getHandler())) {
+            return null;
+        }
+        if (!route.isEmpty()) {
+            return null;
+        }
+        return routes.remove(route.topic);
+    }
+
+    /** The handlers of one topic, grouped by event type. Subclasses carry whatever the source needs per topic. */
+    static class Route {
+
+        final String topic;
+        // event type -> handlers; never modified, only replaced
+        private volatile Map<String, Consumer<PostgresEvent>[]> handlers = Map.of();
+
+        Route(String topic) {
+            this.topic = topic;
+        }
+
+        /** The handlers for an event type; the array must not be modified. */
+        final Consumer<PostgresEvent>[] handlers(String event) {
+            Consumer<PostgresEvent>[] result = handlers.get(event);
+            return result != null ? result : NO_HANDLERS;
+        }
+
+        final boolean isEmpty() {
+            return handlers.isEmpty();
+        }
+
+        // Only called by the index, with its lock held
+        void add(String event, Consumer<PostgresEvent> handler) {
+            Map<String, Consumer<PostgresEvent>[]> updated = new HashMap<>(handlers);
+            Consumer<PostgresEvent>[] current = updated.getOrDefault(event, NO_HANDLERS);
+            Consumer<PostgresEvent>[] added = Arrays.copyOf(current, current.length + 1);
+            added[current.length] = handler;
+            updated.put(event, added);
+            handlers = Map.copyOf(updated);
+        }
+
+        // Only called by the index, with its lock held; removes one registration of the handler
+        boolean remove(String event, Consumer<PostgresEvent> handler) {
+            Consumer<PostgresEvent>[] current = handlers.get(event);
+            if (current == null) {
+                return false;
+            }
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == handler) {
+                    Map<String, Consumer<PostgresEvent>[]> updated = new HashMap<>(handlers);
+                    if (current.length == 1) {
+                        updated.remove(event);
+                    } else {
+                        Consumer<PostgresEvent>[] removed = Arrays.copyOf(current, current.length - 1);
+                        System.arraycopy(current, i + 1, removed, i, current.length - i - 1);
+                        updated.put(event, removed);
+                    }
+                    handlers = Map.copyOf(updated);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
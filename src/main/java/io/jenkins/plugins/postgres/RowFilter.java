@@ -0,0 +1,108 @@
+package io.jenkins.plugins.postgres;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A row filter in Supabase Realtime syntax ({@code column=operator.value}), evaluated on the controller
+ * for event sources that cannot filter on the server. Values are compared as numbers when both sides
+ * are numeric and as text otherwise; a SQL {@code NULL} never matches.
+ */
+final class RowFilter {
+
+    static final Pattern COLUMN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    static final Pattern PATTERN = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)=(eq|neq|lt|lte|gt|gte|in)\\.(.+)");
+
+    private final String column;
+    private final String operator;
+    private final List<String> values;
+
+    private RowFilter(String column, String operator, List<String> values) {
+        this.column = column;
+        this.operator = operator;
+        this.values = values;
+    }
+
+    static RowFilter parse(String filter) {
+        Matcher matcher = PATTERN.matcher(filter.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid row filter: " + filter);
+        }
+        String operator = matcher.group(2);
+        String value = matcher.group(3);
+        List<String> values = new ArrayList<>();
+        if ("in".equals(operator)) {
+            String list = value.startsWith("(") && value.endsWith(")") ? value.substring(1, value.length() - 1) : value;
+            for (String item : list.split(",")) {
+                values.add(unquote(item.trim()));
+            }
+        } else {
+            values.add(unquote(value));
+        }
+        return new RowFilter(matcher.group(1), operator, values);
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    String getColumn() {
+        return column;
+    }
+
+    boolean matches(String actual) {
+        if (actual == null) {
+            return false;
+        }
+        switch (operator) {
+            case "eq":
+                return compare(actual, values.get(0)) == 0;
+            case "neq":
+                return compare(actual, values.get(0)) != 0;
+            case "lt":
+                return compare(actual, values.get(0)) < 0;
+            case "lte":
+                return compare(actual, values.get(0)) <= 0;
+            case "gt":
+                return compare(actual, values.get(0)) > 0;
+            case "gte":
+                return compare(actual, values.get(0)) >= 0;
+            case "in":
+                for (String value : values) {
+                    if (compare(actual, value) == 0) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /** Compares two values as numbers if both are numeric, otherwise as text. */
+    static int compare(String actual, String expected) {
+        BigDecimal left = toNumber(actual);
+        BigDecimal right = left != null ? toNumber(expected) : null;
+        if (left != null && right != null) {
+            return left.compareTo(right);
+        }
+        return actual.compareTo(expected);
+    }
+
+    private static BigDecimal toNumber(String value) {
+        if (value.isEmpty() || !(Character.isDigit(value.charAt(0)) || value.charAt(0) == '-' || value.charAt(0) == '.')) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
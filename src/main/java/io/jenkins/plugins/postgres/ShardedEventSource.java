@@ -0,0 +1,107 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Spreads the subscriptions of one instance over several connections, each with its own reader thread,
+ * so that a high volume of changes is decoded on several cores. A subscription goes to the connection
+ * chosen by hashing its topic, {@code schema.table} or {@code schema} for a table pattern, so all changes
+ * of a table subscription arrive on one connection and stay in order. The connections' events are merged
+ * by the triggers' job queues on the dispatcher pool, as for a single connection. The connections share
+ * the instance's journal.
+ */
+final class ShardedEventSource implements EventSource {
+
+    private final List<? extends EventSource> shards;
+    private final EventJournal journal;
+    // Subscriptions do not override equals, so this is keyed by identity
+    private final Map<Subscription, EventSource> subscriptions = new ConcurrentHashMap<>();
+
+    ShardedEventSource(List<? extends EventSource> shards, EventJournal journal) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one connection is required");
+        }
+        this.shards = shards;
+        this.journal = journal;
+    }
+
+    /** The connection a topic is subscribed on. */
+    static int shardOf(String schema, String table, int shardCount) {
+        String topic = TableMatcher.isPattern(table) ? schema : schema + "." + table;
+        // Spread the hash bits, so topics differing only in their last characters land on different shards
+        int hash = topic.hashCode();
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, shardCount);
+    }
+
+    @Override
+    public Subscription subscribeToTable(String schema, String table, String filter, String event,
+                                         Consumer<PostgresEvent> handler) {
+        EventSource shard = shards.get(shardOf(schema, table, shards.size()));
+        Subscription subscription = shard.subscribeToTable(schema, table, filter, event, handler);
+        subscriptions.put(subscription, shard);
+        return subscription;
+    }
+
+    @Override
+    public void unsubscribe(Subscription subscription) {
+        EventSource shard = subscriptions.remove(subscription);
+        if (shard != null) {
+            shard.unsubscribe(subscription);
+        }
+    }
+
+    /** Connected once every connection is, disconnected while any of them is. */
+    @Override
+    public ConnectionState getState() {
+        ConnectionState state = ConnectionState.CONNECTED;
+        for (EventSource shard : shards) {
+            ConnectionState shardState = shard.getState();
+            if (shardState == ConnectionState.DISCONNECTED) {
+                return shardState;
+            }
+            if (shardState == ConnectionState.CONNECTING) {
+                state = shardState;
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public int getReconnectCount() {
+        int count = 0;
+        for (EventSource shard : shards) {
+            count += shard.getReconnectCount();
+        }
+        return count;
+    }
+
+    /** The longest time any of the connections has been down. */
+    @Override
+    public long getDisconnectedMillis() {
+        long millis = 0;
+        for (EventSource shard : shards) {
+            millis = Math.max(millis, shard.getDisconnectedMillis());
+        }
+        return millis;
+    }
+
+    @Override
+    public EventJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void shutdown() {
+        for (EventSource shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    int getShardCount() {
+        return shards.size();
+    }
+}
@@ -0,0 +1,98 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import jenkins.model.RunAction2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Event data too large for the {@code POSTGRES_EVENT_DATA} parameter. The data is written to a spill
+ * file when the build is scheduled and moved into the build's directory once the build starts, so it is
+ * deleted with the build; {@link FetchPostgresEventDataBuilder} copies it into the workspace on demand.
+ */
+public final class SpilledEventData extends InvisibleAction implements RunAction2 {
+
+    private static final Logger LOGGER = Logger.getLogger(SpilledEventData.class.getName());
+    static final String FILE_NAME = "postgres-event-data.json";
+    // Spill files of builds that never started, for example because they were cancelled in the queue
+    private static final long ORPHAN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final String spillName;
+    private final long size;
+    private transient Run<?, ?> run;
+
+    private SpilledEventData(String spillName, long size) {
+        this.spillName = spillName;
+        this.size = size;
+    }
+
+    /** Writes event data to a new spill file. */
+    static SpilledEventData spill(String data) throws IOException {
+        File directory = getSpillDirectory();
+        Files.createDirectories(directory.toPath());
+        purgeOrphans(directory);
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        String name = UUID.randomUUID() + ".json";
+        Files.write(new File(directory, name).toPath(), bytes);
+        return new SpilledEventData(name, bytes.length);
+    }
+
+    private static File getSpillDirectory() {
+        return new File(Jenkins.get().getRootDir(), "postgres-event-trigger/spill");
+    }
+
+    private static void purgeOrphans(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - ORPHAN_MILLIS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && !file.delete()) {
+                LOGGER.fine("Could not delete spilled event data " + file);
+            }
+        }
+    }
+
+    /** The size of the event data in bytes. */
+    public long getSize() {
+        return size;
+    }
+
+    /** The file holding the event data: in the build directory once the build has started. */
+    File getFile() {
+        Run<?, ?> current = run;
+        return current != null ? new File(current.getRootDir(), FILE_NAME) : new File(getSpillDirectory(), spillName);
+    }
+
+    String read() throws IOException {
+        return new String(Files.readAllBytes(getFile().toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        File spilled = new File(getSpillDirectory(), spillName);
+        this.run = run;
+        try {
+            Files.createDirectories(run.getRootDir().toPath());
+            Files.move(spilled.toPath(), getFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not move spilled event data " + spilled + " to " + run, e);
+        }
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.run = run;
+    }
+}
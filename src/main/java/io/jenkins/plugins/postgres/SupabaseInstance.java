@@ -1,28 +1,34 @@
 package io.jenkins.plugins.postgres;
 
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
-import com.cloudbees.plugins.credentials.CredentialsMatchers;
-import com.cloudbees.plugins.credentials.CredentialsProvider;
 import hudson.Extension;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import hudson.security.ACL;
+import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
-public class SupabaseInstance extends AbstractDescribableImpl<SupabaseInstance> implements Serializable {
+public class SupabaseInstance extends AbstractDescribableImpl<SupabaseInstance> implements EventSourceInstance, Serializable {
     
     private static final long serialVersionUID = 1L;
+    static final int MAX_CONNECTIONS = 64;
     
     private final String name;
     private final String url;
     private final String credentialsId;
+    private int maxBuildsPerMinute = 0;
+    private int connections = 1;
 
     @DataBoundConstructor
     public SupabaseInstance(String name, String url, String credentialsId) {
@@ -31,6 +37,7 @@ public class SupabaseInstance extends AbstractDescribableImpl<SupabaseInstance>
         this.credentialsId = credentialsId;
     }
 
+    @Override
     public String getName() {
         return name;
     }
@@ -43,24 +50,73 @@ public class SupabaseInstance extends AbstractDescribableImpl<SupabaseInstance>
         return credentialsId;
     }
 
-    @SuppressWarnings("deprecation")
+    @Override
+    public int getMaxBuildsPerMinute() {
+        return maxBuildsPerMinute;
+    }
+
+    @DataBoundSetter
+    public void setMaxBuildsPerMinute(int maxBuildsPerMinute) {
+        this.maxBuildsPerMinute = Math.max(0, maxBuildsPerMinute);
+    }
+
+    /** Realtime sockets the instance's subscriptions are spread over; configurations saved without it have one. */
+    public int getConnections() {
+        return Math.max(1, connections);
+    }
+
+    @DataBoundSetter
+    public void setConnections(int connections) {
+        this.connections = Math.max(1, Math.min(MAX_CONNECTIONS, connections));
+    }
+
+    public String getRealtimeUrl() {
+        String realtimeUrl = url;
+        if (!realtimeUrl.startsWith("ws://") && !realtimeUrl.startsWith("wss://")) {
+            realtimeUrl = realtimeUrl.replace("https://", "wss://").replace("http://", "ws://");
+            if (!realtimeUrl.contains("/realtime/")) {
+                realtimeUrl = realtimeUrl + "/realtime/v1/websocket";
+            }
+        }
+        return realtimeUrl;
+    }
+
     public Secret getApiKey() {
-        if (credentialsId == null || credentialsId.isEmpty()) {
-            return null;
+        StringCredentials credentials = CredentialsCache.get(StringCredentials.class, credentialsId);
+        return credentials != null ? credentials.getSecret() : null;
+    }
+
+    @Override
+    public EventSource openEventSource(EventJournal journal) throws Exception {
+        int count = getConnections();
+        List<SupabaseRealtimeClient> clients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            clients.add(new SupabaseRealtimeClient(name, getRealtimeUrl(), getApiKey(), journal));
         }
-        
-        StringCredentials credentials = CredentialsMatchers.firstOrNull(
-            CredentialsProvider.lookupCredentials(
-                StringCredentials.class,
-                Jenkins.get()
-            ),
-            CredentialsMatchers.withId(credentialsId)
-        );
-        
-        if (credentials != null) {
-            return credentials.getSecret();
+        for (SupabaseRealtimeClient client : clients) {
+            client.connect();
         }
-        return null;
+        return count == 1 ? clients.get(0) : new ShardedEventSource(clients, journal);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SupabaseInstance)) {
+            return false;
+        }
+        SupabaseInstance that = (SupabaseInstance) o;
+        return Objects.equals(name, that.name)
+            && Objects.equals(url, that.url)
+            && Objects.equals(credentialsId, that.credentialsId)
+            && getConnections() == that.getConnections();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, url, credentialsId, getConnections());
     }
 
     @Extension
@@ -81,5 +137,33 @@ public class SupabaseInstance extends AbstractDescribableImpl<SupabaseInstance>
                 .includeEmptyValue()
                 .includeAs(ACL.SYSTEM, Jenkins.get(), StringCredentials.class);
         }
+
+        public FormValidation doCheckName(@QueryParameter String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return FormValidation.error("Name is required");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckUrl(@QueryParameter String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return FormValidation.error("URL is required");
+            }
+            if (!value.startsWith("http://") && !value.startsWith("https://") && !value.startsWith("ws://") && !value.startsWith("wss://")) {
+                return FormValidation.error("URL must start with http://, https://, ws://, or wss://");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckConnections(@QueryParameter String value) {
+            FormValidation positive = FormValidation.validatePositiveInteger(value);
+            if (positive.kind != FormValidation.Kind.OK) {
+                return positive;
+            }
+            if (Integer.parseInt(value.trim()) > MAX_CONNECTIONS) {
+                return FormValidation.error("At most " + MAX_CONNECTIONS + " connections are supported");
+            }
+            return FormValidation.ok();
+        }
     }
 }
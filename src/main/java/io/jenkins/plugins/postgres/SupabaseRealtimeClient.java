@@ -1,70 +1,176 @@
 package io.jenkins.plugins.postgres;
 
+import com.codahale.metrics.Meter;
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import hudson.util.Secret;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ServerHandshake;
 
 import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class SupabaseRealtimeClient extends WebSocketClient {
+public class SupabaseRealtimeClient extends WebSocketClient implements EventSource {
     
     private static final Logger LOGGER = Logger.getLogger(SupabaseRealtimeClient.class.getName());
     private static final Gson GSON = new Gson();
+    static final long HEARTBEAT_INTERVAL_SECONDS =
+        Long.getLong(SupabaseRealtimeClient.class.getName() + ".heartbeatIntervalSeconds", 30);
+    static final long RECONNECT_BASE_MILLIS =
+        Long.getLong(SupabaseRealtimeClient.class.getName() + ".reconnectBaseMillis", 1000);
+    static final long RECONNECT_MAX_MILLIS =
+        Long.getLong(SupabaseRealtimeClient.class.getName() + ".reconnectMaxMillis", 60000);
     
     private final String apiKey;
-    private final Map<String, Consumer<JsonObject>> eventHandlers = new HashMap<>();
+    private final EventJournal journal;
+    private final EventMetrics metrics;
     private final AtomicInteger refCounter = new AtomicInteger(0);
-    private final Map<String, String> channelRefs = new HashMap<>();
+    // topic -> joined channel; a topic is joined once no matter how many triggers listen on it. Join
+    // state changes synchronise on the index so they stay in step with the subscriptions
+    private final RoutingIndex<Channel> channels = new RoutingIndex<>();
+    private volatile ConnectionState state = ConnectionState.CONNECTING;
+    private final Object timerLock = new Object();
+    private ScheduledFuture<?> heartbeatTask;
+    private ScheduledFuture<?> reconnectTask;
+    private final ReconnectBackoff backoff = new ReconnectBackoff(RECONNECT_BASE_MILLIS, RECONNECT_MAX_MILLIS);
+    private volatile boolean shutdown;
+    private final AtomicInteger reconnects = new AtomicInteger();
+    private volatile long disconnectedSince;
+    private volatile long totalDisconnectedMillis;
+    // ref of the last heartbeat that has not been acknowledged by a phx_reply yet
+    private volatile String pendingHeartbeatRef;
+    private volatile long missedHeartbeats;
     private String accessToken;
 
     public SupabaseRealtimeClient(String url, Secret apiKey) throws Exception {
+        this(url, url, apiKey, null);
+    }
+
+    public SupabaseRealtimeClient(String instanceName, String url, Secret apiKey, EventJournal journal) throws Exception {
         super(new URI(url));
+        this.journal = journal;
+        this.metrics = EventMetrics.forInstance(instanceName);
         this.apiKey = apiKey != null ? apiKey.getPlainText() : null;
-        addHeader("apikey", this.apiKey);
+        if (this.apiKey != null) {
+            addHeader("apikey", this.apiKey);
+        }
     }
 
     @Override
     public void onOpen(ServerHandshake handshakedata) {
         LOGGER.info("Connected to Supabase Realtime");
-        sendHeartbeat();
+        state = ConnectionState.CONNECTED;
+        backoff.reset();
+        if (disconnectedSince > 0) {
+            totalDisconnectedMillis += System.currentTimeMillis() - disconnectedSince;
+            disconnectedSince = 0;
+        }
+        // Joins every channel, including those joined before a reconnect
+        joinPendingChannels();
+        startHeartbeat();
     }
 
     @Override
     public void onMessage(String message) {
+        long start = System.nanoTime();
         try {
-            JsonObject json = GSON.fromJson(message, JsonObject.class);
-            String event = json.has("event") ? json.get("event").getAsString() : null;
-            String topic = json.has("topic") ? json.get("topic").getAsString() : null;
+            RealtimeFrame frame = RealtimeFrame.decode(message);
+            String event = frame.getEvent();
+            String topic = frame.getTopic();
             
-            LOGGER.fine("Received message - Event: " + event + ", Topic: " + topic);
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("Received message - Event: " + event + ", Topic: " + topic);
+            }
+            
+            if (event == null || topic == null) {
+                return;
+            }
             
-            if (event != null && topic != null) {
-                String key = topic + ":" + event;
-                Consumer<JsonObject> handler = eventHandlers.get(key);
-                if (handler != null) {
-                    JsonElement payload = json.get("payload");
-                    if (payload != null && payload.isJsonObject()) {
-                        handler.accept(payload.getAsJsonObject());
-                    }
+            if ("phx_reply".equals(event) && "phoenix".equals(topic)) {
+                String ref = frame.getRef();
+                if (ref != null && ref.equals(pendingHeartbeatRef)) {
+                    pendingHeartbeatRef = null;
                 }
+                return;
             }
+            
+            Channel channel = channels.get(topic);
+            if (channel == null) {
+                return;
+            }
+            
+            if ("postgres_changes".equals(event)) {
+                // postgres_changes wraps the row change in "data" and carries the change type inside it
+                event = frame.selectChangeData();
+                if (event == null) {
+                    return;
+                }
+            }
+            boolean rowChange = isRowChange(event);
+            Consumer<PostgresEvent>[] handlers = channel.handlers(event);
+            Consumer<PostgresEvent>[] allEventHandlers = rowChange ? channel.handlers(RoutingIndex.ALL_EVENTS) : RoutingIndex.NO_HANDLERS;
+            if ((handlers.length == 0 && allEventHandlers.length == 0 && (journal == null || !rowChange))
+                    || !frame.hasObjectPayload()) {
+                return;
+            }
+            // A schema channel carries every table of the schema; the change names its table
+            String table = channel.table != null ? channel.table : frame.getPayloadString("table");
+            if (table == null) {
+                return;
+            }
+            
+            channel.received.mark();
+            PostgresEvent change = new PostgresEvent(channel.schema, table, event, frame.getRawPayload());
+            if (journal != null && rowChange) {
+                // Realtime cannot resume from a position, so there is no LSN to record
+                journal.record(change, 0);
+            }
+            metrics.decoded(start);
+            deliver(handlers, change);
+            deliver(allEventHandlers, change);
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Error processing message: " + message, e);
         }
     }
 
+    private static boolean isRowChange(String event) {
+        return "INSERT".equals(event) || "UPDATE".equals(event) || "DELETE".equals(event);
+    }
+
+    private static void deliver(Consumer<PostgresEvent>[] handlers, PostgresEvent change) {
+        for (Consumer<PostgresEvent> handler : handlers) {
+            try {
+                handler.accept(change);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error in handler for " + change.getSchema() + "." + change.getTable()
+                    + " " + change.getEventType(), e);
+            }
+        }
+    }
+
     @Override
     public void onClose(int code, String reason, boolean remote) {
         LOGGER.info("Disconnected from Supabase Realtime: " + reason);
+        state = ConnectionState.DISCONNECTED;
+        if (disconnectedSince == 0) {
+            disconnectedSince = System.currentTimeMillis();
+        }
+        stopHeartbeat();
+        synchronized (channels) {
+            for (Channel channel : channels.routes()) {
+                channel.joined = false;
+            }
+        }
+        scheduleReconnect();
     }
 
     @Override
@@ -72,36 +178,110 @@ public class SupabaseRealtimeClient extends WebSocketClient {
         LOGGER.log(Level.SEVERE, "WebSocket error", ex);
     }
 
-    public void subscribeToTable(String schema, String table, String event, Consumer<JsonObject> handler) {
-        String topic = "realtime:" + schema + ":" + table;
-        String ref = String.valueOf(refCounter.incrementAndGet());
+    public Subscription subscribeToTable(String schema, String table, String event, Consumer<PostgresEvent> handler) {
+        return subscribeToTable(schema, table, null, event, handler);
+    }
+
+    /**
+     * Subscribes to changes of one table. A non-empty {@code filter} is sent to the server in the channel's
+     * {@code postgres_changes} config, so only matching rows are pushed. Table patterns share one channel
+     * for the whole schema, whatever the pattern and filter; their tables and filters are matched here.
+     */
+    @Override
+    public Subscription subscribeToTable(String schema, String table, String filter, String event,
+                                         Consumer<PostgresEvent> handler) {
+        boolean filtered = filter != null && !filter.isEmpty();
+        boolean wildcard = TableMatcher.isPattern(table);
+        String topic = wildcard ? "realtime:" + schema : "realtime:" + schema + ":" + table + (filtered ? ":" + filter : "");
+        Consumer<PostgresEvent> routed = wildcard
+            ? TableMatcher.compile(table).filter(filtered ? RowFilter.parse(filter) : null, handler) : handler;
+        String joinMessage = null;
+        Subscription subscription;
         
-        // Store channel reference
-        channelRefs.put(topic, ref);
+        synchronized (channels) {
+            subscription = channels.add(topic, t -> new Channel(t, String.valueOf(refCounter.incrementAndGet()),
+                schema, wildcard ? null : table, wildcard || !filtered ? null : filter,
+                metrics.received(schema + "." + (wildcard ? "*" : table))), event, routed);
+            Channel channel = (Channel) subscription.getRoute();
+            // Not connected yet: the join is sent from onOpen
+            if (!channel.joined && isOpen()) {
+                channel.joined = true;
+                joinMessage = buildJoinMessage(topic, channel);
+            }
+        }
+        
+        if (joinMessage != null) {
+            send(joinMessage);
+            LOGGER.info("Joined " + topic);
+        }
+        LOGGER.fine("Subscribed to " + topic + " for event " + event);
+        return subscription;
+    }
+
+    private void joinPendingChannels() {
+        List<String> messages = new ArrayList<>();
+        synchronized (channels) {
+            for (Channel channel : channels.routes()) {
+                if (!channel.joined) {
+                    channel.joined = true;
+                    messages.add(buildJoinMessage(channel.topic, channel));
+                }
+            }
+        }
+        for (String message : messages) {
+            send(message);
+        }
+        if (!messages.isEmpty()) {
+            LOGGER.info("Joined " + messages.size() + " pending Realtime channel(s)");
+        }
+    }
+
+    private String buildJoinMessage(String topic, Channel channel) {
+        JsonObject change = new JsonObject();
+        // The channel is shared by triggers watching different event types; they are told apart client-side
+        change.addProperty("event", "*");
+        change.addProperty("schema", channel.schema);
+        if (channel.table != null) {
+            change.addProperty("table", channel.table);
+        }
+        if (channel.filter != null) {
+            change.addProperty("filter", channel.filter);
+        }
+        JsonArray changes = new JsonArray();
+        changes.add(change);
+        
+        JsonObject config = new JsonObject();
+        config.add("postgres_changes", changes);
         
-        // Register handler
-        String handlerKey = topic + ":" + event;
-        eventHandlers.put(handlerKey, handler);
+        JsonObject payload = new JsonObject();
+        payload.add("config", config);
+        if (apiKey != null) {
+            payload.addProperty("access_token", apiKey);
+        }
         
-        // Send join message
         JsonObject message = new JsonObject();
         message.addProperty("topic", topic);
         message.addProperty("event", "phx_join");
-        message.addProperty("ref", ref);
-        
-        JsonObject payload = new JsonObject();
-        payload.addProperty("config", "{}");
+        message.addProperty("ref", channel.ref);
         message.add("payload", payload);
         
-        send(GSON.toJson(message));
-        LOGGER.info("Subscribed to " + topic + " for event " + event);
+        return GSON.toJson(message);
     }
 
-    public void unsubscribeFromTable(String schema, String table) {
-        String topic = "realtime:" + schema + ":" + table;
-        String ref = channelRefs.remove(topic);
+    @Override
+    public void unsubscribe(Subscription subscription) {
+        String topic = subscription.getTopic();
+        String ref = null;
+        
+        synchronized (channels) {
+            // Last listener on the topic leaves the channel
+            Channel channel = channels.remove(subscription);
+            if (channel != null && channel.joined) {
+                ref = channel.ref;
+            }
+        }
         
-        if (ref != null) {
+        if (ref != null && isOpen()) {
             JsonObject message = new JsonObject();
             message.addProperty("topic", topic);
             message.addProperty("event", "phx_leave");
@@ -109,32 +289,151 @@ public class SupabaseRealtimeClient extends WebSocketClient {
             message.add("payload", new JsonObject());
             
             send(GSON.toJson(message));
-            
-            // Remove handlers
-            eventHandlers.keySet().removeIf(key -> key.startsWith(topic + ":"));
-            LOGGER.info("Unsubscribed from " + topic);
+            LOGGER.info("Left " + topic);
         }
     }
 
-    private void sendHeartbeat() {
-        if (isOpen()) {
-            JsonObject message = new JsonObject();
-            message.addProperty("topic", "phoenix");
-            message.addProperty("event", "heartbeat");
-            message.addProperty("ref", String.valueOf(refCounter.incrementAndGet()));
-            message.add("payload", new JsonObject());
-            
+    @Override
+    public ConnectionState getState() {
+        return state;
+    }
+
+    @Override
+    public int getReconnectCount() {
+        return reconnects.get();
+    }
+
+    @Override
+    public long getDisconnectedMillis() {
+        long since = disconnectedSince;
+        return totalDisconnectedMillis + (since > 0 ? System.currentTimeMillis() - since : 0);
+    }
+
+    private void scheduleReconnect() {
+        synchronized (timerLock) {
+            if (shutdown || reconnectTask != null) {
+                return;
+            }
+            long delay = backoff.nextDelayMillis();
+            LOGGER.info("Reconnecting to " + getURI() + " in " + delay + "ms (attempt " + backoff.getAttempts() + ")");
+            // reconnect() must not run on the socket's own threads and may block briefly, so hand it off from the timer
+            reconnectTask = PostgresEventTriggerTimer.get().schedule(
+                () -> EventDispatcher.get().getExecutor().execute(this::reconnectNow), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reconnectNow() {
+        synchronized (timerLock) {
+            reconnectTask = null;
+            if (shutdown) {
+                return;
+            }
+        }
+        reconnects.incrementAndGet();
+        state = ConnectionState.CONNECTING;
+        try {
+            reconnect();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to reconnect to " + getURI(), e);
+            state = ConnectionState.DISCONNECTED;
+            scheduleReconnect();
+        }
+    }
+
+    @Override
+    public EventJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (timerLock) {
+            shutdown = true;
+            if (reconnectTask != null) {
+                reconnectTask.cancel(false);
+                reconnectTask = null;
+            }
+        }
+        close();
+    }
+
+    public int getChannelCount() {
+        synchronized (channels) {
+            return channels.size();
+        }
+    }
+
+    public long getMissedHeartbeats() {
+        return missedHeartbeats;
+    }
+
+    private void startHeartbeat() {
+        synchronized (timerLock) {
+            if (heartbeatTask != null) {
+                heartbeatTask.cancel(false);
+            }
+            pendingHeartbeatRef = null;
+            heartbeatTask = PostgresEventTriggerTimer.get().scheduleWithFixedDelay(this::sendHeartbeat,
+                0, HEARTBEAT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void stopHeartbeat() {
+        synchronized (timerLock) {
+            if (heartbeatTask != null) {
+                heartbeatTask.cancel(false);
+                heartbeatTask = null;
+            }
+            pendingHeartbeatRef = null;
+        }
+    }
+
+    void sendHeartbeat() {
+        if (!isOpen()) {
+            return;
+        }
+        if (pendingHeartbeatRef != null) {
+            // The previous heartbeat was never acknowledged; the socket is dead even if TCP has not noticed
+            missedHeartbeats++;
+            LOGGER.warning("Supabase Realtime heartbeat " + pendingHeartbeatRef + " was not acknowledged within "
+                + HEARTBEAT_INTERVAL_SECONDS + "s, closing connection to " + getURI());
+            pendingHeartbeatRef = null;
+            closeConnection(CloseFrame.ABNORMAL_CLOSE, "Heartbeat timeout");
+            return;
+        }
+        
+        String ref = String.valueOf(refCounter.incrementAndGet());
+        JsonObject message = new JsonObject();
+        message.addProperty("topic", "phoenix");
+        message.addProperty("event", "heartbeat");
+        message.addProperty("ref", ref);
+        message.add("payload", new JsonObject());
+        
+        pendingHeartbeatRef = ref;
+        try {
             send(GSON.toJson(message));
-            
-            // Schedule next heartbeat
-            new Thread(() -> {
-                try {
-                    Thread.sleep(30000); // 30 seconds
-                    sendHeartbeat();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }).start();
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to send heartbeat", e);
+        }
+    }
+
+    private static final class Channel extends RoutingIndex.Route {
+        private final String ref;
+        private final String schema;
+        // Null for a channel that receives every table of the schema
+        private final String table;
+        private final String filter;
+        private final Meter received;
+        // Guarded by the routing index
+        private boolean joined;
+
+        private Channel(String topic, String ref, String schema, String table, String filter, Meter received) {
+            super(topic);
+            this.ref = ref;
+            this.schema = schema;
+            this.table = table;
+            this.filter = filter;
+            this.received = received;
         }
     }
 }
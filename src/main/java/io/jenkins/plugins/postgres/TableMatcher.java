@@ -0,0 +1,99 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * A table name or glob pattern, compiled once at subscription time. {@code *} matches any run of
+ * characters and {@code ?} a single character; patterns that are a plain prefix or suffix are matched
+ * without a regular expression.
+ */
+final class TableMatcher {
+
+    private static final TableMatcher ANY = new TableMatcher("*", null, null, null, null);
+
+    private final String pattern;
+    private final String exact;
+    private final String prefix;
+    private final String suffix;
+    private final Pattern regex;
+
+    private TableMatcher(String pattern, String exact, String prefix, String suffix, Pattern regex) {
+        this.pattern = pattern;
+        this.exact = exact;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.regex = regex;
+    }
+
+    static boolean isPattern(String table) {
+        return table.indexOf('*') >= 0 || table.indexOf('?') >= 0;
+    }
+
+    static TableMatcher compile(String pattern) {
+        if ("*".equals(pattern)) {
+            return ANY;
+        }
+        if (!isPattern(pattern)) {
+            return new TableMatcher(pattern, pattern, null, null, null);
+        }
+        int star = pattern.indexOf('*');
+        if (pattern.indexOf('?') < 0 && star == pattern.lastIndexOf('*')) {
+            if (star == pattern.length() - 1) {
+                return new TableMatcher(pattern, null, pattern.substring(0, star), null, null);
+            }
+            if (star == 0) {
+                return new TableMatcher(pattern, null, null, pattern.substring(1), null);
+            }
+        }
+        StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(pattern.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < pattern.length()) {
+            regex.append(Pattern.quote(pattern.substring(literalStart)));
+        }
+        return new TableMatcher(pattern, null, null, null, Pattern.compile(regex.toString(), Pattern.DOTALL));
+    }
+
+    boolean matches(String table) {
+        if (table == null) {
+            return false;
+        }
+        if (exact != null) {
+            return exact.equals(table);
+        }
+        if (prefix != null) {
+            return table.startsWith(prefix);
+        }
+        if (suffix != null) {
+            return table.endsWith(suffix);
+        }
+        return regex == null || regex.matcher(table).matches();
+    }
+
+    /**
+     * Wraps a handler so that it only receives events of matching tables that pass {@code rowFilter},
+     * for sources that receive a whole schema over one channel and route its tables client-side.
+     */
+    Consumer<PostgresEvent> filter(RowFilter rowFilter, Consumer<PostgresEvent> handler) {
+        return event -> {
+            if (matches(event.getTable()) && (rowFilter == null || rowFilter.matches(event.getRecordValue(rowFilter.getColumn())))) {
+                handler.accept(event);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,79 @@
+package io.jenkins.plugins.postgres;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting how often builds are scheduled. The bucket refills continuously at the configured
+ * rate and holds up to ten seconds' worth of tokens, at least one, so a short burst is let through at once
+ * and a sustained one is spread out at the rate.
+ */
+final class TokenBucket {
+
+    private static final Map<String, TokenBucket> INSTANCES = new ConcurrentHashMap<>();
+
+    private final int perMinute;
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(int perMinute) {
+        this(perMinute, System.nanoTime());
+    }
+
+    TokenBucket(int perMinute, long now) {
+        this.perMinute = perMinute;
+        this.capacity = Math.max(1, perMinute / 6);
+        this.tokensPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * The bucket shared by all triggers of an instance, or null if the instance is not limited. The
+     * bucket is replaced when the configured rate changes.
+     */
+    static TokenBucket forInstance(String instanceName, int perMinute) {
+        if (perMinute <= 0) {
+            INSTANCES.remove(instanceName);
+            return null;
+        }
+        return INSTANCES.compute(instanceName,
+            (name, bucket) -> bucket != null && bucket.perMinute == perMinute ? bucket : new TokenBucket(perMinute));
+    }
+
+    /** Takes a token if one is available and returns 0, otherwise returns the nanoseconds until one will be. */
+    long tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    synchronized long tryAcquire(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+
+    /** Returns a token taken by {@link #tryAcquire} that was not used. */
+    synchronized void release() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+
+    int getPerMinute() {
+        return perMinute;
+    }
+
+    synchronized double getAvailableTokens() {
+        refill(System.nanoTime());
+        return tokens;
+    }
+}
@@ -0,0 +1,339 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pipeline step that waits for a matching row change and returns it. The step registers a handler on the
+ * instance's shared event source, like a trigger does, and holds no thread or executor while it waits; a
+ * waiting build costs one subscription. The subscription is made again when Jenkins restarts, but changes
+ * made while Jenkins was down are not seen.
+ */
+public class WaitForPostgresEventStep extends Step implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String instance;
+    private final String table;
+    private String event = RoutingIndex.ALL_EVENTS;
+    private String filter;
+    private int timeout = 0;
+
+    @DataBoundConstructor
+    public WaitForPostgresEventStep(String instance, String table) {
+        this.instance = instance;
+        this.table = table;
+    }
+
+    public String getInstance() {
+        return instance;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    /** {@code INSERT}, {@code UPDATE}, {@code DELETE} or {@code *} for any of them. */
+    @DataBoundSetter
+    public void setEvent(String event) {
+        this.event = event != null && !event.trim().isEmpty() ? event.trim().toUpperCase(Locale.ROOT) : RoutingIndex.ALL_EVENTS;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    @DataBoundSetter
+    public void setFilter(String filter) {
+        this.filter = filter != null && !filter.trim().isEmpty() ? filter.trim() : null;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /** Seconds to wait before the step fails; 0 waits until the build is aborted. */
+    @DataBoundSetter
+    public void setTimeout(int timeout) {
+        this.timeout = Math.max(0, timeout);
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        if (!isEventType(event)) {
+            throw new AbortException("Unknown event '" + event + "'; expected INSERT, UPDATE, DELETE or *");
+        }
+        return new Execution(context, this);
+    }
+
+    static boolean isEventType(String event) {
+        return RoutingIndex.ALL_EVENTS.equals(event) || "INSERT".equals(event) || "UPDATE".equals(event)
+            || "DELETE".equals(event);
+    }
+
+    /**
+     * The change handed back to the Pipeline: {@code schema}, {@code table}, {@code type}, the row in
+     * {@code record} and {@code old_record} as maps (null if the payload has none) and the payload in
+     * {@code data}. Only plain maps, lists, strings, numbers and booleans are used, so the result can be
+     * kept in Pipeline variables across a restart.
+     */
+    static Map<String, Object> toResult(PostgresEvent event) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("schema", event.getSchema());
+        result.put("table", event.getTable());
+        result.put("type", event.getEventType());
+        JsonObject payload = null;
+        try {
+            payload = event.getPayload();
+        } catch (JsonParseException | IllegalStateException e) {
+            // A LISTEN/NOTIFY payload need not be JSON
+        }
+        result.put("record", payload != null ? toJava(payload.get("record")) : null);
+        result.put("old_record", payload != null ? toJava(payload.get("old_record")) : null);
+        result.put("data", event.getRawPayload());
+        return result;
+    }
+
+    private static Object toJava(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (element.isJsonObject()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                map.put(member.getKey(), toJava(member.getValue()));
+            }
+            return map;
+        }
+        if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            List<Object> list = new ArrayList<>(array.size());
+            for (JsonElement item : array) {
+                list.add(toJava(item));
+            }
+            return list;
+        }
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        if (primitive.isBoolean()) {
+            return primitive.getAsBoolean();
+        }
+        if (primitive.isNumber()) {
+            BigDecimal number = primitive.getAsBigDecimal();
+            try {
+                return number.longValueExact();
+            } catch (ArithmeticException e) {
+                return number.doubleValue();
+            }
+        }
+        return primitive.getAsString();
+    }
+
+    static final class Execution extends StepExecution {
+
+        private static final long serialVersionUID = 1L;
+        private static final Logger LOGGER = Logger.getLogger(Execution.class.getName());
+
+        private final WaitForPostgresEventStep step;
+        // When the step times out in milliseconds since the epoch, 0 for never; kept across restarts
+        private long deadline;
+
+        private transient EventSourceInstance boundInstance;
+        private transient EventSource client;
+        private transient EventSource.Subscription subscription;
+        private transient ScheduledFuture<?> timeoutTask;
+        private transient AtomicBoolean done;
+
+        Execution(StepContext context, WaitForPostgresEventStep step) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            if (step.timeout > 0) {
+                deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(step.timeout);
+            }
+            TaskListener listener = getContext().get(TaskListener.class);
+            if (listener != null) {
+                listener.getLogger().println("Waiting for " + describe());
+            }
+            subscribe();
+            return false;
+        }
+
+        @Override
+        public void onResume() {
+            try {
+                subscribe();
+            } catch (Exception e) {
+                getContext().onFailure(e);
+            }
+        }
+
+        @Override
+        public void stop(Throwable cause) throws Exception {
+            if (finish()) {
+                getContext().onFailure(cause);
+            }
+        }
+
+        @Override
+        public String getStatus() {
+            return "Waiting for " + describe();
+        }
+
+        private String describe() {
+            String events = RoutingIndex.ALL_EVENTS.equals(step.event) ? "any change" : step.event;
+            return events + " on " + step.table + (step.filter != null ? " where " + step.filter : "")
+                + " of instance " + step.instance;
+        }
+
+        private synchronized void subscribe() throws Exception {
+            PostgresEventTriggerConfiguration config = PostgresEventTriggerConfiguration.get();
+            EventSourceInstance instance = config != null ? config.getEventSourceInstance(step.instance) : null;
+            if (instance == null) {
+                throw new AbortException("No Postgres or Supabase instance named " + step.instance);
+            }
+            List<String[]> tables = PostgresEventTrigger.parseTables(step.table);
+            if (tables.size() != 1) {
+                throw new AbortException("Expected one table or table pattern, got '" + step.table + "'");
+            }
+            String[] table = tables.get(0);
+            done = new AtomicBoolean();
+            AtomicBoolean current = done;
+            client = RealtimeConnectionManager.get().acquire(instance);
+            boundInstance = instance;
+            try {
+                // Runs on the connection thread, so only the first match is handed off
+                subscription = client.subscribeToTable(table[0], table[1], step.filter, step.event, event -> {
+                    if (!current.get()) {
+                        EventDispatcher.get().getExecutor().execute(() -> {
+                            if (finish()) {
+                                getContext().onSuccess(toResult(event));
+                            }
+                        });
+                    }
+                });
+            } catch (RuntimeException e) {
+                // An invalid row filter, for example; nothing to finish, so stop() does not release again
+                current.set(true);
+                RealtimeConnectionManager.get().release(instance);
+                client = null;
+                boundInstance = null;
+                throw e;
+            }
+            if (deadline > 0) {
+                long delay = Math.max(0, deadline - System.currentTimeMillis());
+                // Timer tasks must not block, and finishing takes the connection manager's lock
+                timeoutTask = PostgresEventTriggerTimer.get().schedule(() -> EventDispatcher.get().getExecutor().execute(() -> {
+                    if (finish()) {
+                        getContext().onFailure(new AbortException("No matching change within " + step.timeout
+                            + " seconds: " + describe()));
+                    }
+                }), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /** Unsubscribes and releases the connection; returns false if the step has already finished. */
+        private synchronized boolean finish() {
+            if (done == null || !done.compareAndSet(false, true)) {
+                return false;
+            }
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+                timeoutTask = null;
+            }
+            try {
+                client.unsubscribe(subscription);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Error unsubscribing from " + step.table, e);
+            }
+            RealtimeConnectionManager.get().release(boundInstance);
+            client = null;
+            subscription = null;
+            boundInstance = null;
+            return true;
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "waitForPostgresEvent";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Wait for a Postgres/Supabase row change";
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Set.of(TaskListener.class);
+        }
+
+        public ListBoxModel doFillInstanceItems() {
+            ListBoxModel items = new ListBoxModel();
+            PostgresEventTriggerConfiguration config = PostgresEventTriggerConfiguration.get();
+            if (config != null) {
+                for (String name : config.getInstanceNames()) {
+                    items.add(name, name);
+                }
+            }
+            return items;
+        }
+
+        public FormValidation doCheckEvent(@QueryParameter String value) {
+            if (value == null || value.trim().isEmpty() || isEventType(value.trim().toUpperCase(Locale.ROOT))) {
+                return FormValidation.ok();
+            }
+            return FormValidation.error("Expected INSERT, UPDATE, DELETE or *");
+        }
+
+        public FormValidation doCheckFilter(@QueryParameter String value) {
+            if (value != null && !value.trim().isEmpty() && !RowFilter.PATTERN.matcher(value.trim()).matches()) {
+                return FormValidation.error("Expected column=operator.value, for example status=eq.ready");
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckTimeout(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BuildLimiterTest {
+
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+    private final List<List<PostgresEvent>> builds = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    private static List<PostgresEvent> event(int id) {
+        return Collections.singletonList(new PostgresEvent("public", "orders", "INSERT", "{\"id\":" + id + "}"));
+    }
+
+    @Test
+    public void testRateLimitDefersAndCoalesces() {
+        BuildLimiter limiter = new BuildLimiter(new TokenBucket(6), null, 0, () -> 0, builds::add, timer, Runnable::run);
+
+        limiter.submit(event(1));
+        limiter.submit(event(2));
+        limiter.submit(event(3));
+
+        assertEquals(1, builds.size());
+        assertEquals(2, limiter.getPendingCount());
+        assertEquals(1, limiter.getDeferralCount());
+        assertEquals(1, limiter.getCoalescedCount());
+        limiter.close();
+        assertEquals(0, limiter.getPendingCount());
+    }
+
+    @Test
+    public void testInstanceLimitReturnsTriggerToken() {
+        TokenBucket own = new TokenBucket(6);
+        TokenBucket instance = new TokenBucket(6);
+        assertEquals(0, instance.tryAcquire());
+        BuildLimiter limiter = new BuildLimiter(own, instance, 0, () -> 0, builds::add, timer, Runnable::run);
+
+        limiter.submit(event(1));
+
+        assertTrue(builds.isEmpty());
+        assertEquals(1, limiter.getAvailableBuilds());
+        limiter.close();
+    }
+
+    @Test
+    public void testInFlightCapReleasesCoalescedBuild() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger(1);
+        BuildLimiter limiter = new BuildLimiter(null, null, 1, inFlight::get, builds::add, timer, Runnable::run);
+
+        limiter.submit(event(1));
+        limiter.submit(event(2));
+        assertTrue(builds.isEmpty());
+
+        inFlight.set(0);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (builds.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, builds.size());
+        List<PostgresEvent> built = new ArrayList<>(builds.get(0));
+        assertEquals(2, built.size());
+        assertEquals("{\"id\":2}", built.get(1).getRawPayload());
+    }
+
+    @Test
+    public void testCoalescedBuildCarriesEveryPayload() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger(1);
+        BuildLimiter limiter = new BuildLimiter(null, null, 1, inFlight::get, builds::add, timer, Runnable::run);
+        limiter.submit(event(1));
+        limiter.submit(event(2));
+
+        inFlight.set(0);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (builds.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        List<hudson.model.ParameterValue> parameters = PostgresEventTrigger.buildParameters(builds.get(0), false);
+        assertEquals("[{\"id\":1},{\"id\":2}]", parameters.get(2).getValue());
+        assertEquals("2", parameters.get(3).getValue());
+        assertEquals("{\"id\":3}", PostgresEventTrigger.buildParameters(event(3), false).get(2).getValue());
+    }
+
+    @Test
+    public void testPendingEventsAreReducedToLatestPerTable() {
+        List<PostgresEvent> discarded = new ArrayList<>();
+        BuildLimiter limiter = new BuildLimiter(null, null, 1, () -> 1, builds::add, 3, discarded::add, timer, Runnable::run);
+
+        limiter.submit(event(1));
+        limiter.submit(Collections.singletonList(new PostgresEvent("public", "users", "INSERT", "{\"id\":2}")));
+        limiter.submit(event(3));
+        limiter.submit(event(4));
+
+        // Nothing is dropped: each table keeps its latest change and the superseded ones are released
+        assertTrue(builds.isEmpty());
+        assertEquals(2, limiter.getPendingCount());
+        assertEquals(2, limiter.getSupersededCount());
+        assertEquals(2, discarded.size());
+        assertEquals("{\"id\":3}", discarded.get(0).getRawPayload());
+        assertEquals("{\"id\":1}", discarded.get(1).getRawPayload());
+        limiter.close();
+    }
+}
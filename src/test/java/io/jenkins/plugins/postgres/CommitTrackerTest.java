@@ -0,0 +1,54 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CommitTrackerTest {
+
+    private static PostgresEvent event(long offset) {
+        PostgresEvent event = new PostgresEvent("public", "orders", "INSERT", "{}");
+        event.setOffset(offset);
+        return event;
+    }
+
+    @Test
+    public void testOffsetOnlyMovesPastFinishedEvents() {
+        CommitTracker tracker = new CommitTracker();
+        PostgresEvent first = event(10);
+        PostgresEvent second = event(11);
+        PostgresEvent third = event(12);
+        tracker.track(10);
+        tracker.track(11);
+        tracker.track(12);
+
+        // Events of another table finish first; nothing tracked before 10 is in flight
+        assertEquals(9, tracker.finish(Collections.singletonList(third)));
+        assertEquals(9, tracker.finish(Collections.singletonList(second)));
+        assertEquals(12, tracker.finish(Collections.singletonList(first)));
+        assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test
+    public void testOffsetStopsBeforeOldestInFlight() {
+        CommitTracker tracker = new CommitTracker();
+        tracker.track(5);
+        tracker.track(8);
+        tracker.track(9);
+
+        assertEquals(5, tracker.finish(Collections.singletonList(event(5))));
+        assertEquals(7, tracker.finish(Collections.singletonList(event(9))));
+    }
+
+    @Test
+    public void testUntrackedEventsAreIgnored() {
+        CommitTracker tracker = new CommitTracker();
+        tracker.track(-1);
+
+        assertEquals(-1, tracker.finish(Collections.singletonList(event(-1))));
+        assertEquals(-1, tracker.finish(Collections.singletonList(event(3))));
+        assertEquals(0, tracker.getInFlightCount());
+    }
+}
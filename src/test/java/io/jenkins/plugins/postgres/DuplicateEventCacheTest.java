@@ -0,0 +1,69 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuplicateEventCacheTest {
+
+    private static PostgresEvent change(String type, String timestamp, int id) {
+        String row = "{\"id\":" + id + ",\"status\":\"ready\"}";
+        return new PostgresEvent("public", "orders", type, "{\"schema\":\"public\",\"table\":\"orders\","
+            + "\"commit_timestamp\":\"" + timestamp + "\",\"type\":\"" + type + "\","
+            + "\"record\":" + ("DELETE".equals(type) ? "{}" : row) + ",\"old_record\":" + ("DELETE".equals(type) ? row : "{}") + "}");
+    }
+
+    @Test
+    public void testRedeliveredChangeIsDuplicate() {
+        DuplicateEventCache cache = new DuplicateEventCache(100, 60_000);
+
+        assertFalse(cache.isDuplicate(change("INSERT", "2024-01-01T00:00:00Z", 1)));
+        assertTrue(cache.isDuplicate(change("INSERT", "2024-01-01T00:00:00Z", 1)));
+        assertFalse(cache.isDuplicate(change("INSERT", "2024-01-01T00:00:00Z", 2)));
+        assertFalse(cache.isDuplicate(change("UPDATE", "2024-01-01T00:00:00Z", 1)));
+        assertFalse(cache.isDuplicate(change("INSERT", "2024-01-01T00:00:01Z", 1)));
+        assertFalse(cache.isDuplicate(change("DELETE", "2024-01-01T00:00:02Z", 1)));
+        assertFalse(cache.isDuplicate(change("DELETE", "2024-01-01T00:00:02Z", 2)));
+        assertTrue(cache.isDuplicate(change("DELETE", "2024-01-01T00:00:02Z", 2)));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(6, cache.getMissCount());
+        assertEquals(6, cache.getSize());
+    }
+
+    @Test
+    public void testEventsWithoutCommitTimestampAreNeverDuplicates() {
+        DuplicateEventCache cache = new DuplicateEventCache(100, 60_000);
+        PostgresEvent notification = new PostgresEvent("public", "orders", "UPDATE",
+            "{\"schema\":\"public\",\"table\":\"orders\",\"type\":\"UPDATE\",\"payload\":\"UPDATE\"}");
+
+        assertFalse(cache.isDuplicate(notification));
+        assertFalse(cache.isDuplicate(notification));
+        assertFalse(cache.isDuplicate(new PostgresEvent("public", "orders", "UPDATE", "not json")));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void testOldestChangesAreEvictedWhenFull() {
+        DuplicateEventCache cache = new DuplicateEventCache(2, 60_000);
+
+        cache.isDuplicate(change("INSERT", "t", 1));
+        cache.isDuplicate(change("INSERT", "t", 2));
+        cache.isDuplicate(change("INSERT", "t", 3));
+
+        assertEquals(2, cache.getSize());
+        assertFalse(cache.isDuplicate(change("INSERT", "t", 1)));
+        assertTrue(cache.isDuplicate(change("INSERT", "t", 3)));
+    }
+
+    @Test
+    public void testChangesExpireAfterWindow() throws Exception {
+        DuplicateEventCache cache = new DuplicateEventCache(100, 50);
+
+        assertFalse(cache.isDuplicate(change("INSERT", "t", 1)));
+        Thread.sleep(100);
+        assertFalse(cache.isDuplicate(change("INSERT", "t", 1)));
+        assertEquals(1, cache.getSize());
+    }
+}
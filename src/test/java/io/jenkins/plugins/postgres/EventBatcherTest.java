@@ -0,0 +1,119 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.JsonObject;
+import hudson.util.DaemonThreadFactory;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class EventBatcherTest {
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+    private final List<List<PostgresEvent>> batches = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    private static PostgresEvent event(int id) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("id", id);
+        return new PostgresEvent("public", "users", "INSERT", payload);
+    }
+
+    private synchronized void record(List<PostgresEvent> batch) {
+        batches.add(batch);
+        notifyAll();
+    }
+
+    private synchronized void awaitBatches(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (batches.size() < count && System.currentTimeMillis() < deadline) {
+            wait(100);
+        }
+    }
+
+    @Test
+    public void testTrailingWindowCollectsBurstIntoOneBatch() throws Exception {
+        EventBatcher batcher = new EventBatcher(200, 0, BatchFiring.TRAILING, this::record, timer, Runnable::run);
+
+        for (int i = 0; i < 50; i++) {
+            batcher.add(event(i));
+        }
+        assertTrue(batches.isEmpty());
+
+        awaitBatches(1);
+        assertEquals(1, batches.size());
+        assertEquals(50, batches.get(0).size());
+    }
+
+    @Test
+    public void testMaxEventsFlushesEarly() {
+        EventBatcher batcher = new EventBatcher(60000, 10, BatchFiring.TRAILING, this::record, timer, Runnable::run);
+
+        for (int i = 0; i < 25; i++) {
+            batcher.add(event(i));
+        }
+
+        assertEquals(2, batches.size());
+        assertEquals(10, batches.get(0).size());
+        assertEquals(10, batches.get(1).size());
+        assertEquals(5, batcher.getPendingCount());
+        batcher.close();
+    }
+
+    @Test
+    public void testLateCloseOfEndedWindowDoesNotCloseNextWindow() throws Exception {
+        List<Runnable> handedOff = new CopyOnWriteArrayList<>();
+        EventBatcher batcher = new EventBatcher(50, 2, BatchFiring.TRAILING, this::record, timer, handedOff::add);
+        batcher.add(event(1));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handedOff.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, handedOff.size());
+
+        // The first window ends early, too late to cancel its close task, and a second one opens
+        batcher.add(event(2));
+        batcher.add(event(3));
+        handedOff.get(0).run();
+
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(1, batcher.getPendingCount());
+        batcher.close();
+    }
+
+    @Test
+    public void testLeadingFiresFirstEventImmediately() throws Exception {
+        EventBatcher batcher = new EventBatcher(200, 0, BatchFiring.LEADING, this::record, timer, Runnable::run);
+
+        batcher.add(event(1));
+        assertEquals(1, batches.size());
+        assertEquals(1, batches.get(0).size());
+
+        batcher.add(event(2));
+        batcher.add(event(3));
+        awaitBatches(2);
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(1).size());
+    }
+
+    @Test
+    public void testBatchParameters() {
+        List<PostgresEvent> events = List.of(event(1), event(2));
+
+        List<hudson.model.ParameterValue> parameters = PostgresEventTrigger.buildParameters(events, true);
+        assertEquals("2", parameters.get(3).getValue());
+        assertEquals("[{\"id\":1},{\"id\":2}]", parameters.get(2).getValue());
+        assertEquals("INSERT", parameters.get(0).getValue());
+    }
+}
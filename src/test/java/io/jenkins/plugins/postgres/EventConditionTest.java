@@ -0,0 +1,95 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventConditionTest {
+
+    private static final PostgresEvent TOUCHED = update(
+        "{\"id\":1,\"status\":\"new\",\"priority\":5,\"active\":true,\"updated_at\":\"2024-01-02\"}",
+        "{\"id\":1,\"status\":\"new\",\"priority\":5,\"active\":true,\"updated_at\":\"2024-01-01\"}");
+    private static final PostgresEvent SHIPPED = update(
+        "{\"id\":1,\"status\":\"shipped\",\"priority\":5,\"active\":false,\"updated_at\":\"2024-01-02\"}",
+        "{\"id\":1,\"status\":\"new\",\"priority\":5,\"active\":true,\"updated_at\":\"2024-01-01\"}");
+    private static final PostgresEvent INSERT = new PostgresEvent("public", "orders", "INSERT",
+        "{\"type\":\"INSERT\",\"record\":{\"id\":2,\"status\":\"new\",\"priority\":10,\"note\":null},\"old_record\":{}}");
+
+    private static PostgresEvent update(String record, String oldRecord) {
+        return new PostgresEvent("public", "orders", "UPDATE",
+            "{\"type\":\"UPDATE\",\"record\":" + record + ",\"old_record\":" + oldRecord + "}");
+    }
+
+    @Test
+    public void testComparingNewAndOldValues() {
+        EventCondition condition = EventCondition.compile("new.status != old.status");
+
+        assertFalse(condition.test(TOUCHED));
+        assertTrue(condition.test(SHIPPED));
+    }
+
+    @Test
+    public void testChangedColumns() {
+        assertFalse(EventCondition.compile("changedExcept(updated_at)").test(TOUCHED));
+        assertTrue(EventCondition.compile("changedExcept(updated_at)").test(SHIPPED));
+        assertTrue(EventCondition.compile("changed(updated_at)").test(TOUCHED));
+        assertFalse(EventCondition.compile("changed(status, priority)").test(TOUCHED));
+        assertTrue(EventCondition.compile("changed(status, priority)").test(SHIPPED));
+    }
+
+    @Test
+    public void testChangedIsTrueWithoutOldValues() {
+        assertTrue(EventCondition.compile("changed(status)").test(INSERT));
+        assertTrue(EventCondition.compile("changedExcept(updated_at)").test(INSERT));
+    }
+
+    @Test
+    public void testBooleanExpressions() {
+        assertTrue(EventCondition.compile("type == 'INSERT' && new.priority >= 10").test(INSERT));
+        assertFalse(EventCondition.compile("type = 'INSERT' and new.priority > 10").test(INSERT));
+        assertTrue(EventCondition.compile("!(new.priority < 9) || table == \"users\"").test(INSERT));
+        assertTrue(EventCondition.compile("new.active").test(TOUCHED));
+        assertFalse(EventCondition.compile("not new.active").test(TOUCHED));
+        assertTrue(EventCondition.compile("new.note == null && new.missing == null").test(INSERT));
+        assertFalse(EventCondition.compile("new.note < 1 || new.note >= 1").test(INSERT));
+        assertTrue(EventCondition.compile("new.status != null").test(INSERT));
+    }
+
+    @Test
+    public void testRejectionsAreCounted() {
+        List<EventCondition> conditions = EventCondition.compileAll("# only real changes\n"
+            + "changedExcept(updated_at)\n\nnew.status == 'shipped'\n");
+
+        assertEquals(2, conditions.size());
+        assertSame(conditions.get(0), EventCondition.firstRejecting(conditions, TOUCHED));
+        assertNull(EventCondition.firstRejecting(conditions, SHIPPED));
+        assertSame(conditions.get(1), EventCondition.firstRejecting(conditions, INSERT));
+        assertEquals(1, conditions.get(0).getRejectedCount());
+        assertEquals(1, conditions.get(1).getRejectedCount());
+    }
+
+    @Test
+    public void testNonJsonPayloadHasNoColumns() {
+        PostgresEvent notify = new PostgresEvent("public", "orders", "NOTIFY", "order 7 shipped");
+
+        assertFalse(EventCondition.compile("new.status == 'shipped'").test(notify));
+        assertTrue(EventCondition.compile("table == 'orders' && new.status == null").test(notify));
+        assertTrue(EventCondition.compile("changed(status)").test(notify));
+    }
+
+    @Test
+    public void testInvalidExpressions() {
+        for (String invalid : Arrays.asList("", "new.status ==", "status == 'x'", "(new.a == 1", "new.a == 'x",
+                "changed(a", "new.a == 1 1", "new.a ~ 1", "new.a-b == 1")) {
+            try {
+                EventCondition.compile(invalid);
+                fail("Accepted " + invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PostgresEvent event(int id) {
+        return new PostgresEvent("public", "orders", "INSERT", "{\"record\":{\"id\":" + id + ",\"note\":\"\u00fc\"}}");
+    }
+
+    private static List<PostgresEvent> readAll(EventJournal journal, long after) {
+        List<PostgresEvent> events = new ArrayList<>();
+        journal.read(after, Long.MAX_VALUE, events::add);
+        return events;
+    }
+
+    @Test
+    public void testAppendAndRead() throws Exception {
+        EventJournal journal = new EventJournal(folder.newFolder(), Long.MAX_VALUE);
+        assertEquals(-1, journal.getEndOffset());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, journal.append(event(i), 100 + i));
+        }
+
+        assertEquals(9, journal.getEndOffset());
+        assertEquals(109, journal.getLastLsn());
+        List<PostgresEvent> events = readAll(journal, 4);
+        assertEquals(5, events.size());
+        PostgresEvent first = events.get(0);
+        assertEquals(5, first.getOffset());
+        assertEquals("public", first.getSchema());
+        assertEquals("orders", first.getTable());
+        assertEquals("INSERT", first.getEventType());
+        assertEquals(event(5).getRawPayload(), first.getRawPayload());
+
+        List<PostgresEvent> range = new ArrayList<>();
+        journal.read(2, 3, range::add);
+        assertEquals(1, range.size());
+        assertEquals(3, range.get(0).getOffset());
+    }
+
+    @Test
+    public void testReopenResumesOffsetsAndCommittedPositions() throws Exception {
+        File directory = folder.newFolder();
+        EventJournal journal = new EventJournal(directory, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            journal.append(event(i), 10 + i);
+        }
+        journal.commit("job-a", 2);
+        journal.commit("job-a", 1);
+        journal.commit("job-b", 4);
+        journal.close();
+
+        EventJournal reopened = new EventJournal(directory, Long.MAX_VALUE);
+        assertEquals(4, reopened.getEndOffset());
+        assertEquals(14, reopened.getLastLsn());
+        assertEquals(1, reopened.getLastLsnCount());
+        assertEquals(2, reopened.getCommittedOffset("job-a"));
+        assertEquals(4, reopened.getCommittedOffset("job-b"));
+        assertEquals(-1, reopened.getCommittedOffset("job-c"));
+        assertEquals(5, reopened.append(event(5), 15));
+        assertEquals(3, readAll(reopened, 2).size());
+    }
+
+    @Test
+    public void testTornRecordIsDiscardedOnRecovery() throws Exception {
+        File directory = folder.newFolder();
+        EventJournal journal = new EventJournal(directory, Long.MAX_VALUE);
+        journal.append(event(0), 0);
+        journal.append(event(1), 0);
+        journal.force();
+
+        // Corrupt the body of the second record, as a crash in the middle of a write would
+        File segment = directory.listFiles((dir, name) -> name.endsWith(".log"))[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(0);
+            int firstLength = file.readInt();
+            file.seek(firstLength + 40L);
+            file.writeByte('x');
+        }
+
+        EventJournal reopened = new EventJournal(directory, Long.MAX_VALUE);
+        assertEquals(0, reopened.getEndOffset());
+        assertEquals(1, reopened.append(event(2), 0));
+        assertEquals(2, readAll(reopened, -1).size());
+    }
+
+    @Test
+    public void testEventsSpanSegments() throws Exception {
+        EventJournal journal = new EventJournal(folder.newFolder(), Long.MAX_VALUE);
+        StringBuilder large = new StringBuilder("{\"record\":{\"blob\":\"");
+        while (large.length() < EventJournal.SEGMENT_BYTES / 3) {
+            large.append("0123456789abcdef");
+        }
+        String payload = large.append("\"}}").toString();
+        for (int i = 0; i < 7; i++) {
+            journal.append(new PostgresEvent("public", "files", "UPDATE", payload), 0);
+        }
+
+        List<PostgresEvent> events = readAll(journal, -1);
+        assertEquals(7, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i, events.get(i).getOffset());
+            assertEquals(payload, events.get(i).getRawPayload());
+        }
+    }
+
+    @Test
+    public void testCompactionDeletesConsumedSegments() throws Exception {
+        File directory = folder.newFolder();
+        EventJournal journal = new EventJournal(directory, Long.MAX_VALUE);
+        String payload = "{\"blob\":\"" + "x".repeat(EventJournal.SEGMENT_BYTES / 2) + "\"}";
+        for (int i = 0; i < 6; i++) {
+            journal.append(new PostgresEvent("public", "files", "UPDATE", payload), 0);
+        }
+        int segments = directory.listFiles((dir, name) -> name.endsWith(".log")).length;
+        assertTrue(segments >= 3);
+
+        journal.commit("slow", 1);
+        journal.commit("fast", 5);
+        journal.compact();
+        List<PostgresEvent> retained = readAll(journal, -1);
+        assertEquals(4, retained.size());
+        assertEquals(2, retained.get(0).getOffset());
+
+        journal.commit("slow", 5);
+        journal.compact();
+        assertEquals(1, directory.listFiles((dir, name) -> name.endsWith(".log")).length);
+        assertEquals(5, journal.getEndOffset());
+    }
+
+    @Test
+    public void testSegmentBeingReadIsDeletedAfterTheRead() throws Exception {
+        File directory = folder.newFolder();
+        EventJournal journal = new EventJournal(directory, Long.MAX_VALUE);
+        String payload = "{\"blob\":\"" + "x".repeat(EventJournal.SEGMENT_BYTES / 2) + "\"}";
+        for (int i = 0; i < 6; i++) {
+            journal.append(new PostgresEvent("public", "files", "UPDATE", payload), 0);
+        }
+        assertTrue(directory.listFiles((dir, name) -> name.endsWith(".log")).length > 2);
+
+        List<PostgresEvent> read = new ArrayList<>();
+        journal.read(-1, Long.MAX_VALUE, event -> {
+            if (read.isEmpty()) {
+                journal.commit("consumer", 5);
+                journal.compact();
+                // The segment being read stays mapped and on disk until the read is done, next to the current one
+                assertEquals(2, directory.listFiles((dir, name) -> name.endsWith(".log")).length);
+            }
+            read.add(event);
+        });
+
+        assertEquals(0, read.get(0).getOffset());
+        assertEquals(1, directory.listFiles((dir, name) -> name.endsWith(".log")).length);
+        journal.close();
+    }
+
+    @Test
+    public void testRetentionLimitDiscardsOldestSegments() throws Exception {
+        File directory = folder.newFolder();
+        EventJournal journal = new EventJournal(directory, EventJournal.SEGMENT_BYTES * 2L);
+        String payload = "{\"blob\":\"" + "x".repeat(EventJournal.SEGMENT_BYTES / 2) + "\"}";
+        for (int i = 0; i < 10; i++) {
+            journal.append(new PostgresEvent("public", "files", "UPDATE", payload), 0);
+        }
+        journal.commit("stuck", 0);
+
+        journal.compact();
+
+        assertTrue(directory.listFiles((dir, name) -> name.endsWith(".log")).length <= 2);
+        assertEquals(9, journal.getEndOffset());
+        assertTrue(readAll(journal, -1).get(0).getOffset() > 0);
+    }
+
+    @Test
+    public void testDeletedAndRenamedJobsNoLongerHoldOffsets() throws Exception {
+        EventJournal journal = new EventJournal(folder.newFolder(), Long.MAX_VALUE);
+        journal.commit("folder/job-a", 1);
+        journal.commit("folder/job-b", 2);
+        journal.commit("folder-2/job", 3);
+        journal.commit("old-name", 4);
+
+        journal.removeConsumer("folder");
+        journal.renameConsumer("old-name", "new-name");
+
+        assertEquals(-1, journal.getCommittedOffset("folder/job-a"));
+        assertEquals(-1, journal.getCommittedOffset("folder/job-b"));
+        assertEquals(3, journal.getCommittedOffset("folder-2/job"));
+        assertEquals(-1, journal.getCommittedOffset("old-name"));
+        assertEquals(4, journal.getCommittedOffset("new-name"));
+
+        // A renamed trigger that already committed under its new name keeps the later offset
+        journal.commit("other", 2);
+        journal.commit("renamed", 6);
+        journal.renameConsumer("other", "renamed");
+        assertEquals(6, journal.getCommittedOffset("renamed"));
+    }
+
+    @Test
+    public void testDetachedConsumersExpire() throws Exception {
+        File directory = folder.newFolder();
+        EventJournal journal = new EventJournal(directory, Long.MAX_VALUE);
+        journal.commit("running", 1);
+        journal.commit("stopped", 2);
+        journal.close();
+
+        // After a restart every consumer is detached until its trigger starts
+        EventJournal reopened = new EventJournal(directory, Long.MAX_VALUE);
+        reopened.attach("running");
+        long now = System.currentTimeMillis();
+        reopened.expireConsumers(now);
+        assertEquals(2, reopened.getCommittedOffset("stopped"));
+
+        reopened.expireConsumers(now + EventJournal.CONSUMER_EXPIRY_MILLIS + 1000);
+        assertEquals(1, reopened.getCommittedOffset("running"));
+        assertEquals(-1, reopened.getCommittedOffset("stopped"));
+
+        reopened.detach("running");
+        reopened.expireConsumers(System.currentTimeMillis() + EventJournal.CONSUMER_EXPIRY_MILLIS + 1000);
+        assertEquals(-1, reopened.getCommittedOffset("running"));
+    }
+
+    @Test
+    public void testClosedJournalRejectsAppends() throws Exception {
+        EventJournal journal = new EventJournal(folder.newFolder(), Long.MAX_VALUE);
+        journal.append(event(0), 0);
+        journal.close();
+        journal.close();
+
+        try {
+            journal.append(event(1), 0);
+            fail("Appended to a closed journal");
+        } catch (ClosedChannelException e) {
+            // expected
+        }
+        PostgresEvent event = event(2);
+        journal.record(event, 0);
+        assertEquals(-1, event.getOffset());
+        assertEquals(0, journal.getEndOffset());
+    }
+}
@@ -0,0 +1,83 @@
+package io.jenkins.plugins.postgres;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class EventMetricsTest {
+
+    private static PostgresEvent committedAt(String timestamp) {
+        return new PostgresEvent("public", "orders", "INSERT",
+            "{\"schema\":\"public\",\"table\":\"orders\",\"commit_timestamp\":\"" + timestamp + "\",\"record\":{\"id\":1}}");
+    }
+
+    @Test
+    public void testCommitTimestampIsReadFromPayload() {
+        assertEquals(1704067200500L, committedAt("2024-01-01T00:00:00.500Z").getCommitTimestamp());
+        assertEquals(1704067200000L, committedAt("2024-01-01T01:00:00+01:00").getCommitTimestamp());
+        assertEquals(-1, committedAt("yesterday").getCommitTimestamp());
+        assertEquals(-1, new PostgresEvent("public", "orders", "UPDATE", "{\"record\":{\"id\":1}}").getCommitTimestamp());
+        assertEquals(-1, new PostgresEvent("public", "orders", "UPDATE", "UPDATE").getCommitTimestamp());
+    }
+
+    @Test
+    public void testQueuedEventsRecordCommitLatency() {
+        EventMetrics metrics = EventMetrics.forInstance("metrics-latency");
+        metrics.queued(Arrays.asList(
+            committedAt(Instant.now().minusSeconds(2).toString()),
+            new PostgresEvent("public", "orders", "UPDATE", "UPDATE")));
+
+        MetricRegistry registry = EventMetrics.registry();
+        assertEquals(1, registry.getTimers().get("postgres-event-trigger.instance.metrics-latency.commit-to-queue").getCount());
+        assertTrue(registry.getTimers().get("postgres-event-trigger.instance.metrics-latency.commit-to-queue")
+            .getSnapshot().getMax() >= 2_000_000_000L);
+    }
+
+    @Test
+    public void testReceivedMetersArePerTable() {
+        EventMetrics metrics = EventMetrics.forInstance("metrics-received");
+        metrics.received("public.orders").mark();
+        metrics.received("public.orders").mark();
+        metrics.received("public.customers").mark();
+
+        MetricRegistry registry = EventMetrics.registry();
+        assertEquals(2, registry.getMeters().get("postgres-event-trigger.instance.metrics-received.received.public.orders").getCount());
+        assertEquals(1, registry.getMeters().get("postgres-event-trigger.instance.metrics-received.received.public.customers").getCount());
+    }
+
+    @Test
+    public void testConnectionGaugesFollowTheSource() {
+        ListenNotifyClient source = new ListenNotifyClient(
+            new PostgresInstance("metrics-connection", "jdbc:postgresql://localhost/db", null, null, null), null);
+        EventMetrics metrics = EventMetrics.forInstance("metrics-connection");
+        metrics.register(source);
+
+        MetricRegistry registry = EventMetrics.registry();
+        Gauge<?> connected = registry.getGauges().get("postgres-event-trigger.instance.metrics-connection.connected");
+        assertEquals(0, connected.getValue());
+        assertEquals(0, registry.getGauges().get("postgres-event-trigger.instance.metrics-connection.reconnects").getValue());
+
+        metrics.unregister();
+        assertNull(registry.getGauges().get("postgres-event-trigger.instance.metrics-connection.connected"));
+    }
+
+    @Test
+    public void testEarlyMetricsMoveToPluginRegistry() {
+        MetricRegistry early = new MetricRegistry();
+        MetricRegistry plugin = new MetricRegistry();
+        early.meter("postgres-event-trigger.events.dropped").mark(3);
+        early.meter("postgres-event-trigger.builds.scheduled").mark();
+        plugin.meter("postgres-event-trigger.builds.scheduled").mark(5);
+
+        EventMetrics.moveMetrics(early, plugin);
+
+        assertTrue(early.getMeters().isEmpty());
+        assertEquals(3, plugin.getMeters().get("postgres-event-trigger.events.dropped").getCount());
+        assertEquals(5, plugin.getMeters().get("postgres-event-trigger.builds.scheduled").getCount());
+    }
+}
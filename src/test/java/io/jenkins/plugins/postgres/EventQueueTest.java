@@ -0,0 +1,170 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventQueueTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<PostgresEvent> handled = new ArrayList<>();
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static PostgresEvent event(String table, String type, int id) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("id", id);
+        return new PostgresEvent("public", table, type, payload);
+    }
+
+    @Test
+    public void testEventsAreDispatchedInOrderOnExecutor() {
+        EventQueue queue = new EventQueue("job", handled::add, tasks::add, 10, OverflowPolicy.BLOCK);
+
+        queue.offer(event("users", "INSERT", 1));
+        queue.offer(event("users", "INSERT", 2));
+        assertTrue(handled.isEmpty());
+        assertEquals(1, tasks.size());
+        assertEquals(2, queue.getDepth());
+
+        runTasks();
+        assertEquals(2, handled.size());
+        assertEquals(1, handled.get(0).getPayload().get("id").getAsInt());
+        assertEquals(2, handled.get(1).getPayload().get("id").getAsInt());
+        assertEquals(0, queue.getDepth());
+        assertEquals(2, queue.getDispatchedCount());
+    }
+
+    @Test
+    public void testDropOldestWhenFull() {
+        EventQueue queue = new EventQueue("job", handled::add, tasks::add, 2, OverflowPolicy.DROP_OLDEST);
+
+        queue.offer(event("users", "INSERT", 1));
+        queue.offer(event("users", "INSERT", 2));
+        queue.offer(event("users", "INSERT", 3));
+        assertEquals(2, queue.getDepth());
+        assertEquals(1, queue.getDroppedCount());
+
+        runTasks();
+        assertEquals(2, handled.get(0).getPayload().get("id").getAsInt());
+        assertEquals(3, handled.get(1).getPayload().get("id").getAsInt());
+    }
+
+    @Test
+    public void testCoalesceReplacesEventForSameTable() {
+        EventQueue queue = new EventQueue("job", handled::add, tasks::add, 2, OverflowPolicy.COALESCE);
+
+        queue.offer(event("users", "INSERT", 1));
+        queue.offer(event("orders", "INSERT", 2));
+        queue.offer(event("users", "INSERT", 3));
+        assertEquals(2, queue.getDepth());
+        assertEquals(1, queue.getCoalescedCount());
+        assertEquals(0, queue.getDroppedCount());
+
+        runTasks();
+        assertEquals("orders", handled.get(0).getTable());
+        assertEquals(3, handled.get(1).getPayload().get("id").getAsInt());
+    }
+
+    @Test
+    public void testClosedQueueDiscardsEvents() {
+        EventQueue queue = new EventQueue("job", handled::add, tasks::add, 10, OverflowPolicy.BLOCK);
+
+        queue.offer(event("users", "INSERT", 1));
+        assertFalse(queue.isClosed());
+        queue.close();
+        queue.offer(event("users", "INSERT", 2));
+        runTasks();
+
+        assertTrue(queue.isClosed());
+        assertTrue(handled.isEmpty());
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    public void testKeysAreDrainedInParallelAndInOrderPerKey() {
+        EventQueue queue = new EventQueue("job", PostgresEvent::getTable, handled::add, null, tasks::add, 10,
+            OverflowPolicy.BLOCK);
+
+        queue.offer(event("users", "INSERT", 1));
+        queue.offer(event("orders", "INSERT", 2));
+        queue.offer(event("users", "UPDATE", 3));
+        // One worker per key
+        assertEquals(2, tasks.size());
+        assertEquals(2, queue.getActiveKeyCount());
+        assertEquals(2, queue.getLaggingKeys().size());
+
+        // Draining orders first does not wait for users
+        tasks.remove(1).run();
+        assertEquals(1, handled.size());
+        assertEquals("orders", handled.get(0).getTable());
+
+        runTasks();
+        assertEquals(3, handled.size());
+        assertEquals(1, handled.get(1).getPayload().get("id").getAsInt());
+        assertEquals(3, handled.get(2).getPayload().get("id").getAsInt());
+        assertEquals(0, queue.getActiveKeyCount());
+        assertEquals(0, queue.getMaxLagMillis());
+    }
+
+    @Test
+    public void testDiscardedEventsAreReported() {
+        List<PostgresEvent> discarded = new ArrayList<>();
+        EventQueue queue = new EventQueue("job", PostgresEvent::getTable, handled::add, discarded::add, tasks::add, 2,
+            OverflowPolicy.DROP_OLDEST);
+
+        queue.offer(event("users", "INSERT", 1));
+        queue.offer(event("orders", "INSERT", 2));
+        queue.offer(event("orders", "INSERT", 3));
+        assertEquals(1, discarded.size());
+        assertEquals(2, queue.getDepth());
+
+        runTasks();
+        assertEquals(2, handled.size());
+        assertFalse(handled.contains(discarded.get(0)));
+    }
+
+    @Test
+    public void testBlockGivesUpAfterTimeout() {
+        List<PostgresEvent> discarded = new ArrayList<>();
+        EventQueue queue = new EventQueue("job", null, handled::add, discarded::add, tasks::add, 1,
+            OverflowPolicy.BLOCK);
+
+        queue.offer(event("users", "INSERT", 1));
+        long start = System.nanoTime();
+        queue.offer(event("users", "INSERT", 2));
+        long waitedMillis = (System.nanoTime() - start) / 1_000_000L;
+
+        // Nothing drains the queue, so the offer waits out the timeout and drops the new event
+        assertTrue(waitedMillis >= EventQueue.BLOCK_TIMEOUT_MILLIS - 10);
+        assertEquals(1, discarded.size());
+        assertEquals(2, discarded.get(0).getPayload().get("id").getAsInt());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(1, queue.getDepth());
+    }
+
+    @Test
+    public void testRowKeys() {
+        PostgresEvent update = new PostgresEvent("public", "orders", "UPDATE",
+            "{\"record\":{\"id\":7,\"tenant\":\"a\"},\"old_record\":{\"id\":7}}");
+        PostgresEvent delete = new PostgresEvent("public", "orders", "DELETE",
+            "{\"record\":{},\"old_record\":{\"id\":7}}");
+        PostgresEvent notify = new PostgresEvent("public", "orders", "NOTIFY", "orders changed");
+
+        assertEquals("public.orders:7", DeliveryOrder.ROW.keyOf(update, List.of("id")));
+        assertEquals("public.orders:7", DeliveryOrder.ROW.keyOf(delete, List.of("id")));
+        assertEquals("public.orders:a:7", DeliveryOrder.ROW.keyOf(update, List.of("tenant", "id")));
+        assertEquals("public.orders", DeliveryOrder.ROW.keyOf(update, List.of("missing")));
+        assertEquals("public.orders", DeliveryOrder.ROW.keyOf(notify, List.of("id")));
+        assertEquals("public.orders", DeliveryOrder.TABLE.keyOf(update, List.of("id")));
+        assertEquals("", DeliveryOrder.JOB.keyOf(update, List.of("id")));
+    }
+}
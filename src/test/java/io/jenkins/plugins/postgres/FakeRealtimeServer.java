@@ -0,0 +1,239 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.java_websocket.WebSocket;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * In-process stand-in for the Supabase Realtime WebSocket endpoint. It speaks enough of the
+ * Phoenix protocol for the plugin ({@code phx_join}, {@code phx_leave}, {@code heartbeat} and
+ * {@code phx_reply}) and pushes {@code postgres_changes} frames to joined topics. Tests can replay
+ * synthetic change streams at a fixed rate, delay replies and pushes, and drop connections.
+ */
+public class FakeRealtimeServer extends WebSocketServer {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final Map<WebSocket, Set<String>> joinedTopics = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "FakeRealtimeServer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong joins = new AtomicLong();
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong pushed = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile boolean acknowledgeHeartbeats = true;
+
+    public FakeRealtimeServer() {
+        super(new InetSocketAddress("localhost", 0));
+        setReuseAddr(true);
+    }
+
+    public FakeRealtimeServer startAndWait() throws InterruptedException {
+        start();
+        if (!started.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Fake Realtime server did not start");
+        }
+        return this;
+    }
+
+    public void shutdown() throws InterruptedException {
+        scheduler.shutdownNow();
+        stop(1000);
+    }
+
+    public String getUrl() {
+        return "ws://localhost:" + getPort() + "/realtime/v1/websocket";
+    }
+
+    /** Delays every reply and pushed change by the given amount. */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /** When false, heartbeats are silently swallowed as by a half-dead server. */
+    public void setAcknowledgeHeartbeats(boolean acknowledgeHeartbeats) {
+        this.acknowledgeHeartbeats = acknowledgeHeartbeats;
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        joinedTopics.put(conn, ConcurrentHashMap.newKeySet());
+        connectionsOpened.incrementAndGet();
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        joinedTopics.remove(conn);
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        // Connections dropped by tests end up here; nothing to do
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        JsonObject json = JsonParser.parseString(message).getAsJsonObject();
+        String topic = json.get("topic").getAsString();
+        String event = json.get("event").getAsString();
+        String ref = json.has("ref") && !json.get("ref").isJsonNull() ? json.get("ref").getAsString() : null;
+        Set<String> topics = joinedTopics.get(conn);
+
+        switch (event) {
+            case "phx_join":
+                joins.incrementAndGet();
+                if (topics != null) {
+                    topics.add(topic);
+                }
+                reply(conn, topic, ref);
+                break;
+            case "phx_leave":
+                if (topics != null) {
+                    topics.remove(topic);
+                }
+                reply(conn, topic, ref);
+                break;
+            case "heartbeat":
+                heartbeats.incrementAndGet();
+                if (acknowledgeHeartbeats) {
+                    reply(conn, topic, ref);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void reply(WebSocket conn, String topic, String ref) {
+        String frame = "{\"topic\":\"" + topic + "\",\"event\":\"phx_reply\",\"payload\":{\"status\":\"ok\",\"response\":{}},"
+            + "\"ref\":" + (ref != null ? "\"" + ref + "\"" : "null") + "}";
+        send(conn, frame);
+    }
+
+    private void send(WebSocket conn, String frame) {
+        long delay = latencyMillis;
+        if (delay > 0) {
+            scheduler.schedule(() -> sendNow(conn, frame), delay, TimeUnit.MILLISECONDS);
+        } else {
+            sendNow(conn, frame);
+        }
+    }
+
+    private static void sendNow(WebSocket conn, String frame) {
+        if (conn.isOpen()) {
+            conn.send(frame);
+        }
+    }
+
+    /**
+     * Pushes a {@code postgres_changes} frame for one row change to every connection that joined the
+     * unfiltered topic of the table. Returns the number of connections it was sent to.
+     */
+    public int push(String schema, String table, String type, String recordJson) {
+        String topic = "realtime:" + schema + ":" + table;
+        String frame = "{\"topic\":\"" + topic + "\",\"event\":\"postgres_changes\",\"payload\":{\"ids\":[1],\"data\":{"
+            + "\"schema\":\"" + schema + "\",\"table\":\"" + table + "\",\"type\":\"" + type + "\","
+            + "\"commit_timestamp\":\"" + java.time.Instant.now() + "\",\"errors\":null,"
+            + "\"record\":" + recordJson + ",\"old_record\":{}}},\"ref\":null}";
+        int receivers = 0;
+        for (Map.Entry<WebSocket, Set<String>> entry : joinedTopics.entrySet()) {
+            if (entry.getValue().contains(topic)) {
+                send(entry.getKey(), frame);
+                receivers++;
+            }
+        }
+        pushed.incrementAndGet();
+        return receivers;
+    }
+
+    /**
+     * Replays {@code count} synthetic changes at roughly {@code eventsPerSecond}, blocking until done.
+     * {@code recordFactory} builds the record JSON of the n-th change.
+     */
+    public void replay(String schema, String table, String type, int count, int eventsPerSecond,
+                       IntFunction<String> recordFactory) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, eventsPerSecond);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long due = start + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 1_000_000) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            push(schema, table, type, recordFactory.apply(i));
+        }
+    }
+
+    /** Drops every open connection without a close handshake, as a network failure would. */
+    public void disconnectAll() {
+        for (WebSocket conn : new ArrayList<>(joinedTopics.keySet())) {
+            conn.closeConnection(CloseFrame.ABNORMAL_CLOSE, "Injected disconnect");
+        }
+    }
+
+    public boolean awaitJoined(String topic, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            for (Set<String> topics : joinedTopics.values()) {
+                if (topics.contains(topic)) {
+                    return true;
+                }
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    public List<String> getJoinedTopics() {
+        List<String> topics = new ArrayList<>();
+        for (Set<String> joined : joinedTopics.values()) {
+            topics.addAll(joined);
+        }
+        return topics;
+    }
+
+    public int getOpenConnectionCount() {
+        return joinedTopics.size();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    public long getJoinCount() {
+        return joins.get();
+    }
+
+    public long getHeartbeatCount() {
+        return heartbeats.get();
+    }
+
+    public long getPushedCount() {
+        return pushed.get();
+    }
+}
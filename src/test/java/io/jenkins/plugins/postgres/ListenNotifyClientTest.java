@@ -0,0 +1,123 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ListenNotifyClientTest {
+
+    private static ListenNotifyClient client() {
+        PostgresInstance instance = new PostgresInstance("db", "jdbc:postgresql://localhost/app", null, "jenkins_events", "jenkins_events");
+        instance.setCaptureMode(CaptureMode.LISTEN_NOTIFY);
+        return new ListenNotifyClient(instance, null);
+    }
+
+    @Test
+    public void testRoutesByChannelAndOperation() {
+        ListenNotifyClient client = client();
+        List<PostgresEvent> orders = new ArrayList<>();
+        List<PostgresEvent> customers = new ArrayList<>();
+        client.subscribeToTable("public", "orders", null, "INSERT", orders::add);
+        client.subscribeToTable("sales", "customers", null, "DELETE", customers::add);
+
+        client.handle("public.orders", "INSERT");
+        client.handle("public.orders", "DELETE");
+        client.handle("sales.customers", "{\"type\":\"delete\",\"record\":{\"id\":3}}");
+        client.handle("public.unknown", "INSERT");
+
+        assertEquals(1, orders.size());
+        assertEquals("INSERT", orders.get(0).getEventType());
+        assertEquals("orders", orders.get(0).getTable());
+        assertEquals("public", orders.get(0).getPayload().get("schema").getAsString());
+        assertEquals("INSERT", orders.get(0).getPayload().get("payload").getAsString());
+
+        assertEquals(1, customers.size());
+        assertEquals("sales", customers.get(0).getSchema());
+        assertEquals("{\"type\":\"delete\",\"record\":{\"id\":3}}", customers.get(0).getRawPayload());
+    }
+
+    @Test
+    public void testUnknownPayloadCountsAsUpdate() {
+        ListenNotifyClient client = client();
+        List<PostgresEvent> events = new ArrayList<>();
+        client.subscribeToTable("public", "orders", null, "UPDATE", events::add);
+
+        client.handle("public.orders", "");
+        client.handle("public.orders", "{\"id\":1}");
+        client.handle("orders", "touched");
+
+        assertEquals(3, events.size());
+        assertTrue(events.get(0).getPayload().get("payload").isJsonNull());
+    }
+
+    @Test
+    public void testRowFiltersReadRecordFields() {
+        ListenNotifyClient client = client();
+        List<PostgresEvent> events = new ArrayList<>();
+        client.subscribeToTable("public", "orders", "status=eq.ready", "INSERT", events::add);
+
+        client.handle("public.orders", "{\"type\":\"INSERT\",\"record\":{\"status\":\"pending\"}}");
+        client.handle("public.orders", "{\"type\":\"INSERT\",\"record\":{\"status\":\"ready\"}}");
+        client.handle("public.orders", "{\"type\":\"INSERT\",\"status\":\"ready\"}");
+        client.handle("public.orders", "INSERT");
+
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void testUnsubscribeStopsDelivery() {
+        ListenNotifyClient client = client();
+        List<PostgresEvent> events = new ArrayList<>();
+        EventSource.Subscription subscription = client.subscribeToTable("public", "orders", null, "INSERT", events::add);
+        assertEquals(List.of("public.orders"), client.getSubscribedTables());
+
+        client.unsubscribe(subscription);
+        client.handle("public.orders", "INSERT");
+
+        assertTrue(events.isEmpty());
+        assertTrue(client.getSubscribedTables().isEmpty());
+    }
+
+    @Test
+    public void testQuotesChannelNames() {
+        assertEquals("\"public.orders\"", ListenNotifyClient.quote("public.orders"));
+        assertEquals("\"a\"\"b\"", ListenNotifyClient.quote("a\"b"));
+    }
+
+    @Test
+    public void testMalformedPayloadIsIgnored() {
+        ListenNotifyClient client = client();
+        List<PostgresEvent> events = new ArrayList<>();
+        client.subscribeToTable("public", "orders", null, "UPDATE", events::add);
+
+        client.handle("public.orders", "{\"type\":");
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testTablePatternsListenOnSchemaChannel() {
+        ListenNotifyClient client = client();
+        List<PostgresEvent> audits = new ArrayList<>();
+        List<PostgresEvent> all = new ArrayList<>();
+        EventSource.Subscription audit = client.subscribeToTable("public", "audit_*", null, "*", audits::add);
+        client.subscribeToTable("public", "*", "id=eq.1", "INSERT", all::add);
+        assertEquals(List.of("public.*"), client.getSubscribedTables());
+
+        client.handle("public.*", "{\"table\":\"audit_log\",\"type\":\"DELETE\",\"record\":{\"id\":2}}");
+        client.handle("public.*", "{\"table\":\"orders\",\"type\":\"INSERT\",\"record\":{\"id\":1}}");
+        client.handle("public.*", "{\"type\":\"INSERT\"}");
+        client.handle("public.*", "INSERT");
+
+        assertEquals(1, audits.size());
+        assertEquals("audit_log", audits.get(0).getTable());
+        assertEquals(1, all.size());
+        assertEquals("orders", all.get(0).getTable());
+
+        client.unsubscribe(audit);
+        assertEquals(List.of("public.*"), client.getSubscribedTables());
+    }
+}
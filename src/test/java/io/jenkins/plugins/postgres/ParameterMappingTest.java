@@ -0,0 +1,93 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.model.BooleanParameterValue;
+import hudson.model.ParameterValue;
+import hudson.model.StringParameterValue;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ParameterMappingTest {
+
+    private static final String UPDATE = "{\"schema\":\"public\",\"table\":\"orders\",\"type\":\"UPDATE\","
+        + "\"record\":{\"id\":42,\"status\":\"shipped\",\"paid\":true,\"tags\":[\"a\",\"b\\\"c\"],\"meta\":{\"k\":[1, 2]}},"
+        + "\"old_record\":{\"id\":42,\"status\":\"new\",\"paid\":false,\"note\":null}}";
+
+    @Test
+    public void testEmptyMappings() {
+        assertSame(ParameterMapping.NONE, ParameterMapping.compile(null));
+        assertSame(ParameterMapping.NONE, ParameterMapping.compile(" \n# comment\n"));
+        assertTrue(ParameterMapping.NONE.apply(UPDATE).isEmpty());
+    }
+
+    @Test
+    public void testMembersAndIndices() {
+        ParameterMapping mapping = ParameterMapping.compile("ORDER_ID=$.record.id\n"
+            + "OLD_STATUS=$.old_record.status\n"
+            + "SECOND_TAG = $.record.tags[1]\n"
+            + "K=$['record']['meta'].k[0]\n"
+            + "META=$.record.meta\n");
+        List<ParameterValue> parameters = mapping.apply(UPDATE);
+
+        assertEquals(Arrays.asList("ORDER_ID", "OLD_STATUS", "SECOND_TAG", "K", "META"), names(parameters));
+        assertEquals("42", string(parameters.get(0)));
+        assertEquals("new", string(parameters.get(1)));
+        assertEquals("b\"c", string(parameters.get(2)));
+        assertEquals("1", string(parameters.get(3)));
+        assertEquals("{\"k\":[1, 2]}", string(parameters.get(4)));
+    }
+
+    @Test
+    public void testBooleansAreTyped() {
+        List<ParameterValue> parameters = ParameterMapping.compile("PAID=$.record.paid\nWAS_PAID=$.old_record.paid").apply(UPDATE);
+
+        assertTrue(parameters.get(0) instanceof BooleanParameterValue);
+        assertEquals(Boolean.TRUE, parameters.get(0).getValue());
+        assertEquals(Boolean.FALSE, parameters.get(1).getValue());
+    }
+
+    @Test
+    public void testMissingAndNullValuesAreEmpty() {
+        ParameterMapping mapping = ParameterMapping.compile("NOTE=$.old_record.note\nMISSING=$.record.nope\nDEEP=$.record.id.x\n"
+            + "OUT=$.record.tags[5]");
+        for (ParameterValue parameter : mapping.apply(UPDATE)) {
+            assertEquals(parameter.getName(), "", string(parameter));
+        }
+        for (ParameterValue parameter : mapping.apply("not json")) {
+            assertEquals(parameter.getName(), "", string(parameter));
+        }
+    }
+
+    @Test
+    public void testSamePathForTwoParameters() {
+        List<ParameterValue> parameters = ParameterMapping.compile("A=$.record.id\nB=$.record.id").apply(UPDATE);
+
+        assertEquals("42", string(parameters.get(0)));
+        assertEquals("42", string(parameters.get(1)));
+    }
+
+    @Test
+    public void testInvalidMappings() {
+        for (String invalid : new String[] {"ORDER_ID", "1X=$.a", "X=record.id", "X=$.", "X=$[abc]", "X=$.a[0",
+                "POSTGRES_EVENT_DATA=$.a", "X=$.a\nX=$.b"}) {
+            try {
+                ParameterMapping.compile(invalid);
+                fail("Accepted " + invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static List<String> names(List<ParameterValue> parameters) {
+        return parameters.stream().map(ParameterValue::getName).collect(Collectors.toList());
+    }
+
+    private static String string(ParameterValue parameter) {
+        return ((StringParameterValue) parameter).getValue();
+    }
+}
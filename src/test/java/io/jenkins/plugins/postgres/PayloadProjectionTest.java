@@ -0,0 +1,59 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PayloadProjectionTest {
+
+    private static final String UPDATE = "{\"schema\":\"public\",\"table\":\"documents\",\"type\":\"UPDATE\","
+        + "\"columns\":[{\"name\":\"id\",\"type\":\"int4\"},{\"name\":\"body\",\"type\":\"jsonb\"}],"
+        + "\"record\":{\"id\":1,\"body\":{\"big\":true}},\"old_record\":{\"id\":1,\"body\":{\"big\":false}}}";
+
+    @Test
+    public void testEmptyProjectionPassesPayloadThrough() {
+        PayloadProjection projection = PayloadProjection.of(" ", null, false);
+        assertSame(PayloadProjection.NONE, projection);
+        assertSame(UPDATE, projection.apply(UPDATE));
+    }
+
+    @Test
+    public void testExcludedColumnsAreRemoved() {
+        JsonObject projected = JsonParser.parseString(PayloadProjection.of(null, "body", false).apply(UPDATE)).getAsJsonObject();
+
+        assertEquals("documents", projected.get("table").getAsString());
+        assertEquals(1, projected.getAsJsonObject("record").size());
+        assertEquals(1, projected.getAsJsonObject("old_record").size());
+        assertEquals(1, projected.getAsJsonArray("columns").size());
+        assertEquals("id", projected.getAsJsonArray("columns").get(0).getAsJsonObject().get("name").getAsString());
+    }
+
+    @Test
+    public void testIncludedColumnsAndOldRecord() {
+        JsonObject projected = JsonParser.parseString(PayloadProjection.of("body, status", "", true).apply(UPDATE)).getAsJsonObject();
+
+        assertFalse(projected.has("old_record"));
+        assertTrue(projected.getAsJsonObject("record").has("body"));
+        assertFalse(projected.getAsJsonObject("record").has("id"));
+    }
+
+    @Test
+    public void testNonJsonPayloadIsUnchanged() {
+        assertEquals("INSERT", PayloadProjection.of("id", null, true).apply("INSERT"));
+        assertEquals("{broken", PayloadProjection.of("id", null, true).apply("{broken"));
+    }
+
+    @Test
+    public void testBatchedDataIsProjectedPerEvent() {
+        PostgresEvent event = new PostgresEvent("public", "documents", "UPDATE", UPDATE);
+        String data = PostgresEventTrigger.eventData(List.of(event, event), true, PayloadProjection.of("id", null, true));
+
+        assertEquals("[{\"schema\":\"public\",\"table\":\"documents\",\"type\":\"UPDATE\","
+            + "\"columns\":[{\"name\":\"id\",\"type\":\"int4\"}],\"record\":{\"id\":1}}", data.substring(0, data.indexOf("},{\"schema") + 1));
+        assertEquals(2, JsonParser.parseString(data).getAsJsonArray().size());
+    }
+}
@@ -0,0 +1,261 @@
+package io.jenkins.plugins.postgres;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PgOutputDecoderTest {
+
+    private static final int RELATION_OID = 16384;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ByteBuffer relation() throws IOException {
+        return message(out -> {
+            out.writeByte('R');
+            out.writeInt(RELATION_OID);
+            cstring(out, "public");
+            cstring(out, "orders");
+            out.writeByte('d');
+            out.writeShort(4);
+            column(out, "id", 23);
+            column(out, "status", 25);
+            column(out, "paid", 16);
+            column(out, "details", 3802);
+        });
+    }
+
+    private static void column(DataOutputStream out, String name, int type) throws IOException {
+        out.writeByte(name.equals("id") ? 1 : 0);
+        cstring(out, name);
+        out.writeInt(type);
+        out.writeInt(-1);
+    }
+
+    private static void cstring(DataOutputStream out, String value) throws IOException {
+        out.write(value.getBytes(StandardCharsets.UTF_8));
+        out.writeByte(0);
+    }
+
+    private static void text(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeByte('t');
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static ByteBuffer begin(long lsn) throws IOException {
+        return message(out -> {
+            out.writeByte('B');
+            out.writeLong(lsn);
+            out.writeLong(0L);
+            out.writeInt(42);
+        });
+    }
+
+    private static ByteBuffer insert(int id) throws IOException {
+        return message(out -> {
+            out.writeByte('I');
+            out.writeInt(RELATION_OID);
+            out.writeByte('N');
+            out.writeShort(4);
+            text(out, String.valueOf(id));
+            text(out, "new");
+            text(out, "f");
+            text(out, "{}");
+        });
+    }
+
+    private static ByteBuffer message(Writer writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.write(new DataOutputStream(bytes));
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    @Test
+    public void testDecodesInsert() throws Exception {
+        PgOutputDecoder decoder = new PgOutputDecoder();
+        assertNull(decoder.decode(message(out -> {
+            out.writeByte('B');
+            out.writeLong(0x16B3748L);
+            out.writeLong(0L);
+            out.writeInt(42);
+        })));
+        assertNull(decoder.decode(relation()));
+
+        PgOutputDecoder.Change change = decoder.decode(message(out -> {
+            out.writeByte('I');
+            out.writeInt(RELATION_OID);
+            out.writeByte('N');
+            out.writeShort(4);
+            text(out, "7");
+            text(out, "say \"hi\"\n");
+            text(out, "t");
+            text(out, "{\"a\": [1, 2]}");
+        }));
+
+        assertEquals("INSERT", change.type);
+        assertEquals("7", change.getValue("id"));
+        JsonObject json = JsonParser.parseString(change.toJson()).getAsJsonObject();
+        assertEquals("public", json.get("schema").getAsString());
+        assertEquals("orders", json.get("table").getAsString());
+        assertEquals("INSERT", json.get("type").getAsString());
+        assertEquals("2000-01-01T00:00:00Z", json.get("commit_timestamp").getAsString());
+        JsonObject record = json.getAsJsonObject("record");
+        assertEquals(7, record.get("id").getAsInt());
+        assertEquals("say \"hi\"\n", record.get("status").getAsString());
+        assertTrue(record.get("paid").getAsBoolean());
+        assertEquals(2, record.getAsJsonObject("details").getAsJsonArray("a").size());
+        assertEquals(0, json.getAsJsonObject("old_record").size());
+    }
+
+    @Test
+    public void testDecodesUpdateWithOldRowAndUnchangedToast() throws Exception {
+        PgOutputDecoder decoder = new PgOutputDecoder();
+        decoder.decode(relation());
+
+        PgOutputDecoder.Change change = decoder.decode(message(out -> {
+            out.writeByte('U');
+            out.writeInt(RELATION_OID);
+            out.writeByte('O');
+            out.writeShort(4);
+            text(out, "7");
+            text(out, "pending");
+            out.writeByte('n');
+            out.writeByte('u');
+            out.writeByte('N');
+            out.writeShort(4);
+            text(out, "7");
+            text(out, "ready");
+            out.writeByte('n');
+            out.writeByte('u');
+        }));
+
+        assertEquals("UPDATE", change.type);
+        assertEquals("ready", change.getValue("status"));
+        JsonObject json = JsonParser.parseString(change.toJson()).getAsJsonObject();
+        JsonObject record = json.getAsJsonObject("record");
+        assertEquals("ready", record.get("status").getAsString());
+        assertTrue(record.get("paid").isJsonNull());
+        assertFalse(record.has("details"));
+        assertEquals("pending", json.getAsJsonObject("old_record").get("status").getAsString());
+    }
+
+    @Test
+    public void testDecodesDeleteKey() throws Exception {
+        PgOutputDecoder decoder = new PgOutputDecoder();
+        decoder.decode(relation());
+
+        PgOutputDecoder.Change change = decoder.decode(message(out -> {
+            out.writeByte('D');
+            out.writeInt(RELATION_OID);
+            out.writeByte('K');
+            out.writeShort(4);
+            text(out, "7");
+            out.writeByte('n');
+            out.writeByte('n');
+            out.writeByte('n');
+        }));
+
+        assertEquals("DELETE", change.type);
+        assertEquals("7", change.getValue("id"));
+        JsonObject json = JsonParser.parseString(change.toJson()).getAsJsonObject();
+        assertEquals(0, json.getAsJsonObject("record").size());
+        assertEquals(7, json.getAsJsonObject("old_record").get("id").getAsInt());
+    }
+
+    @Test
+    public void testCommitIsRecognisedWithoutConsumingIt() throws Exception {
+        PgOutputDecoder decoder = new PgOutputDecoder();
+        ByteBuffer commit = message(out -> {
+            out.writeByte('C');
+            out.writeByte(0);
+            out.writeLong(1L);
+            out.writeLong(2L);
+            out.writeLong(3L);
+        });
+        assertTrue(decoder.isCommit(commit));
+        assertEquals(0, commit.position());
+        assertNull(decoder.decode(commit));
+        assertFalse(decoder.isCommit(relation()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testChangeBeforeRelationIsRejected() throws Exception {
+        new PgOutputDecoder().decode(message(out -> {
+            out.writeByte('I');
+            out.writeInt(RELATION_OID);
+            out.writeByte('N');
+            out.writeShort(0);
+        }));
+    }
+
+    @Test
+    public void testRowFilters() {
+        assertTrue(RowFilter.parse("status=eq.ready").matches("ready"));
+        assertFalse(RowFilter.parse("status=eq.ready").matches("pending"));
+        assertFalse(RowFilter.parse("status=eq.ready").matches(null));
+        assertTrue(RowFilter.parse("status=neq.ready").matches("pending"));
+        assertTrue(RowFilter.parse("amount=gt.9").matches("10"));
+        assertFalse(RowFilter.parse("amount=lte.9.5").matches("10"));
+        assertTrue(RowFilter.parse("tenant_id=in.(1,2,3)").matches("2"));
+        assertFalse(RowFilter.parse("tenant_id=in.(1,2,3)").matches("4"));
+        assertEquals("tenant_id", RowFilter.parse("tenant_id=in.(1,2,3)").getColumn());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRowFilterIsRejected() {
+        RowFilter.parse("status==ready");
+    }
+
+    @Test
+    public void testResentTransactionSkipsOnlyJournaledChanges() throws Exception {
+        File directory = folder.newFolder();
+        EventJournal journal = new EventJournal(directory, Long.MAX_VALUE);
+        PgOutputDecoder decoder = new PgOutputDecoder();
+        decoder.decode(begin(100));
+        decoder.decode(relation());
+        journal.append(new PostgresEvent("public", "orders", "INSERT", decoder.decode(insert(1)).toJson()), 100);
+        decoder.decode(begin(200));
+        // Crash after the second transaction's first two changes were journaled, before its commit
+        for (int id = 2; id <= 3; id++) {
+            journal.append(new PostgresEvent("public", "orders", "INSERT", decoder.decode(insert(id)).toJson()), 200);
+        }
+        journal.close();
+
+        EventJournal reopened = new EventJournal(directory, Long.MAX_VALUE);
+        assertEquals(200, reopened.getLastLsn());
+        assertEquals(2, reopened.getLastLsnCount());
+
+        // The slot resends everything after its confirmed position
+        PgOutputDecoder resumed = new PgOutputDecoder();
+        List<String> delivered = new ArrayList<>();
+        for (ByteBuffer message : new ByteBuffer[] {begin(100), relation(), insert(1),
+                begin(200), insert(2), insert(3), insert(4), begin(300), insert(5)}) {
+            PgOutputDecoder.Change change = resumed.decode(message);
+            if (change != null && change.isAfter(reopened.getLastLsn(), reopened.getLastLsnCount())) {
+                delivered.add(change.getValue("id"));
+            }
+        }
+
+        assertEquals(List.of("4", "5"), delivered);
+    }
+}
@@ -6,7 +6,12 @@ import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -32,6 +37,23 @@ public class PostgresEventTriggerConfigurationTest {
         assertNotNull(config);
     }
 
+    @Test
+    public void testSupabaseInstanceSettingsSurviveConfigRoundtrip() throws Exception {
+        PostgresEventTriggerConfiguration config = getConfiguration();
+        SupabaseInstance instance = new SupabaseInstance("instance1", "https://test1.supabase.co", null);
+        instance.setMaxBuildsPerMinute(12);
+        instance.setConnections(3);
+        config.setSupabaseInstances(Collections.singletonList(instance));
+
+        jenkins.configRoundtrip();
+
+        SupabaseInstance saved = getConfiguration().getInstanceByName("instance1");
+        assertNotNull(saved);
+        assertEquals("https://test1.supabase.co", saved.getUrl());
+        assertEquals(12, saved.getMaxBuildsPerMinute());
+        assertEquals(3, saved.getConnections());
+    }
+
     @Test
     public void testSetAndGetSupabaseInstances() {
         PostgresEventTriggerConfiguration config = getConfiguration();
@@ -84,4 +106,92 @@ public class PostgresEventTriggerConfigurationTest {
         assertTrue(names.contains("instance1"));
         assertTrue(names.contains("instance2"));
     }
+
+    @Test
+    public void testPostgresInstancesAreEventSources() {
+        PostgresEventTriggerConfiguration config = getConfiguration();
+        
+        config.setSupabaseInstances(Collections.singletonList(
+            new SupabaseInstance("supabase", "https://test1.supabase.co", "cred1")));
+        config.setPostgresInstances(Collections.singletonList(
+            new PostgresInstance("warehouse", "jdbc:postgresql://db:5432/app", "pg-cred", "jenkins_events", "jenkins_events")));
+        
+        assertEquals(Arrays.asList("supabase", "warehouse"), config.getInstanceNames());
+        assertTrue(config.getEventSourceInstance("supabase") instanceof SupabaseInstance);
+        EventSourceInstance postgres = config.getEventSourceInstance("warehouse");
+        assertTrue(postgres instanceof PostgresInstance);
+        assertEquals("jenkins_events", ((PostgresInstance) postgres).getSlotName());
+        assertNull(config.getInstanceByName("warehouse"));
+        assertNull(config.getEventSourceInstance("nonexistent"));
+    }
+
+    @Test
+    public void testIndexFollowsReplacedInstances() {
+        PostgresEventTriggerConfiguration config = getConfiguration();
+        config.setSupabaseInstances(Collections.singletonList(new SupabaseInstance("first", "https://a.supabase.co", "cred")));
+        assertNotNull(config.getInstanceByName("first"));
+
+        config.setSupabaseInstances(Arrays.asList(
+            new SupabaseInstance("second", "https://b.supabase.co", "cred"),
+            new SupabaseInstance("second", "https://c.supabase.co", "cred")));
+
+        assertNull(config.getInstanceByName("first"));
+        assertEquals("https://b.supabase.co", config.getInstanceByName("second").getUrl());
+        assertEquals(Collections.singletonList("second"), config.getInstanceNames());
+    }
+
+    @Test
+    public void testOnlyChangedInstancesAreRestarted() {
+        SupabaseInstance unchanged = new SupabaseInstance("unchanged", "https://a.supabase.co", "cred");
+        SupabaseInstance moved = new SupabaseInstance("moved", "https://b.supabase.co", "cred");
+        SupabaseInstance limited = new SupabaseInstance("limited", "https://c.supabase.co", "cred");
+        SupabaseInstance removed = new SupabaseInstance("removed", "https://d.supabase.co", "cred");
+        Map<String, EventSourceInstance> before = Map.of("unchanged", unchanged, "moved", moved, "limited", limited,
+            "removed", removed);
+
+        SupabaseInstance limitedNow = new SupabaseInstance("limited", "https://c.supabase.co", "cred");
+        limitedNow.setMaxBuildsPerMinute(60);
+        Map<String, EventSourceInstance> after = Map.of(
+            "unchanged", new SupabaseInstance("unchanged", "https://a.supabase.co", "cred"),
+            "moved", new SupabaseInstance("moved", "https://b2.supabase.co", "cred"),
+            "limited", limitedNow,
+            "added", new SupabaseInstance("added", "https://e.supabase.co", "cred"));
+
+        assertEquals(Set.of("moved", "limited", "removed", "added"),
+            PostgresEventTriggerConfiguration.changedInstances(before, after));
+    }
+
+    @Test
+    public void testSlotsNoLongerReadAreOrphaned() {
+        PostgresInstance kept = new PostgresInstance("kept", "jdbc:postgresql://db/app", "cred", "kept_slot", "pub");
+        PostgresInstance removed = new PostgresInstance("removed", "jdbc:postgresql://db/app", "cred", "removed_slot", "pub");
+        PostgresInstance renamed = new PostgresInstance("renamed", "jdbc:postgresql://db/app", "cred", "renamed_slot", "pub");
+        PostgresInstance notify = new PostgresInstance("notify", "jdbc:postgresql://db/app", "cred", "notify_slot", "pub");
+        notify.setCaptureMode(CaptureMode.LISTEN_NOTIFY);
+        Map<String, EventSourceInstance> before = Map.of("kept", kept, "removed", removed, "renamed", renamed,
+            "notify", notify);
+
+        // The renamed instance reads the same slot under its new name, the moved one a new slot
+        Map<String, EventSourceInstance> after = Map.of(
+            "kept", new PostgresInstance("kept", "jdbc:postgresql://db/app", "cred", "other_slot", "pub"),
+            "renamed-now", new PostgresInstance("renamed-now", "jdbc:postgresql://db/app", "cred2", "renamed_slot", "pub"));
+
+        List<PostgresInstance> orphaned = PostgresEventTriggerConfiguration.removedSlots(before, after);
+        assertEquals(Set.of("kept", "removed"), orphaned.stream().map(PostgresInstance::getName).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void testOrphanedSlotsAreKeptUntilRemoved() {
+        PostgresEventTriggerConfiguration config = getConfiguration();
+        PostgresInstance slot = new PostgresInstance("removed", "jdbc:postgresql://db/app", "cred", "removed_slot", "pub");
+        config.addOrphanedSlot(slot);
+        config.addOrphanedSlot(new PostgresInstance("again", "jdbc:postgresql://db/app", null, "removed_slot", "pub"));
+
+        assertEquals(1, config.getOrphanedSlots().size());
+        assertTrue(OrphanedSlotMonitor.get().isActivated());
+
+        config.removeOrphanedSlot(slot);
+        assertTrue(config.getOrphanedSlots().isEmpty());
+        assertFalse(OrphanedSlotMonitor.get().isActivated());
+    }
 }
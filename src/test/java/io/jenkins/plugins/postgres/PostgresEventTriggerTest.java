@@ -1,10 +1,19 @@
 package io.jenkins.plugins.postgres;
 
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.StringParameterValue;
+import hudson.util.FormValidation;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class PostgresEventTriggerTest {
@@ -67,4 +76,57 @@ public class PostgresEventTriggerTest {
         assertEquals(instanceName, trigger.getInstanceName());
         assertEquals(tables, trigger.getTables());
     }
+
+    @Test
+    public void testProjectActionReportsConnectionState() throws Exception {
+        PostgresEventTrigger trigger = new PostgresEventTrigger("missing-instance", "users");
+        trigger.setSubscribeInsert(true);
+
+        PostgresEventTriggerAction action = (PostgresEventTriggerAction) trigger.getProjectActions().iterator().next();
+        assertEquals("missing-instance", action.getInstanceName());
+        assertEquals("Not started", action.getConnectionStatus());
+
+        // start() must return immediately even when the instance cannot be resolved
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        trigger.start(project, true);
+        assertEquals(0, action.getSubscriptionCount());
+        trigger.stop();
+    }
+
+    @Test
+    public void testRowFilters() {
+        PostgresEventTrigger trigger = new PostgresEventTrigger("test-instance", "orders");
+        trigger.setFilters("status=eq.ready\n\n  tenant_id=in.(1,2)  \n");
+
+        assertEquals(Arrays.asList("status=eq.ready", "tenant_id=in.(1,2)"),
+            PostgresEventTrigger.parseFilters(trigger.getFilters()));
+
+        PostgresEventTrigger.DescriptorImpl descriptor = new PostgresEventTrigger.DescriptorImpl();
+        assertEquals(FormValidation.Kind.OK, descriptor.doCheckFilters("status=eq.ready\ntenant_id=in.(1,2)").kind);
+        assertEquals(FormValidation.Kind.ERROR, descriptor.doCheckFilters("status = ready").kind);
+    }
+
+    @Test
+    public void testOversizedEventDataIsSpilledAndFetched() throws Exception {
+        String data = "{\"record\":{\"body\":\"" + "x".repeat(1000) + "\"}}";
+        assertTrue(PostgresEventTrigger.exceedsLimit(data, 512));
+        assertFalse(PostgresEventTrigger.exceedsLimit(data, 0));
+        assertFalse(PostgresEventTrigger.exceedsLimit(data, 4096));
+
+        PostgresEvent event = new PostgresEvent("public", "documents", "INSERT", data);
+        SpilledEventData spilled = SpilledEventData.spill(data);
+        List<ParameterValue> parameters = PostgresEventTrigger.buildParameters(List.of(event), data, spilled);
+        assertEquals("", ((StringParameterValue) parameters.get(2)).getValue());
+        assertEquals("POSTGRES_EVENT_DATA_SPILLED", parameters.get(4).getName());
+
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        FetchPostgresEventDataBuilder fetch = new FetchPostgresEventDataBuilder();
+        fetch.setFile("event.json");
+        project.getBuildersList().add(fetch);
+        FreeStyleBuild build = jenkins.assertBuildStatusSuccess(
+            project.scheduleBuild2(0, new Cause.UserIdCause(), new ParametersAction(parameters), spilled));
+
+        assertEquals(data, build.getWorkspace().child("event.json").readToString());
+        assertEquals(data, build.getAction(SpilledEventData.class).read());
+    }
 }
@@ -0,0 +1,58 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RealtimeFrameTest {
+
+    @Test
+    public void testDecodeRoutingFields() {
+        RealtimeFrame frame = RealtimeFrame.decode(
+            "{\"topic\":\"phoenix\",\"event\":\"phx_reply\",\"payload\":{\"status\":\"ok\",\"response\":{}},\"ref\":\"42\"}");
+
+        assertEquals("phoenix", frame.getTopic());
+        assertEquals("phx_reply", frame.getEvent());
+        assertEquals("42", frame.getRef());
+        assertEquals("{\"status\":\"ok\",\"response\":{}}", frame.getRawPayload());
+    }
+
+    @Test
+    public void testRawPayloadIsPassedThroughUnchanged() {
+        String payload = "{ \"record\": {\"id\": 7, \"note\": \"a } tricky \\\"string\\\" ]\"}, \"old_record\": null }";
+        RealtimeFrame frame = RealtimeFrame.decode(
+            "{\"event\": \"INSERT\", \"payload\": " + payload + ", \"ref\": null, \"topic\": \"realtime:public:users\"}");
+
+        assertEquals("realtime:public:users", frame.getTopic());
+        assertEquals("INSERT", frame.getEvent());
+        assertNull(frame.getRef());
+        assertTrue(frame.hasObjectPayload());
+        assertEquals(payload, frame.getRawPayload());
+    }
+
+    @Test
+    public void testSelectPostgresChangesData() {
+        String data = "{\"schema\":\"public\",\"table\":\"orders\",\"commit_timestamp\":\"2024-01-01T00:00:00Z\","
+            + "\"type\":\"UPDATE\",\"record\":{\"id\":1,\"type\":\"not-this\"},\"old_record\":{\"id\":1}}";
+        RealtimeFrame frame = RealtimeFrame.decode(
+            "{\"topic\":\"realtime:public:orders\",\"event\":\"postgres_changes\",\"payload\":{\"ids\":[1,2],\"data\":"
+                + data + "},\"ref\":null}");
+
+        assertEquals("UPDATE", frame.selectChangeData());
+        assertEquals(data, frame.getRawPayload());
+    }
+
+    @Test
+    public void testEscapedStringsAreDecoded() {
+        RealtimeFrame frame = RealtimeFrame.decode("{\"topic\":\"realtime:public:a\\u0062c\",\"event\":\"x\\\"y\"}");
+
+        assertEquals("realtime:public:abc", frame.getTopic());
+        assertEquals("x\"y", frame.getEvent());
+        assertNull(frame.getRawPayload());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonObjectFrames() {
+        RealtimeFrame.decode("[null,\"1\",\"phoenix\",\"heartbeat\",{}]");
+    }
+}
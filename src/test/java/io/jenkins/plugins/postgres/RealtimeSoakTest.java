@@ -0,0 +1,233 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Load tests against {@link FakeRealtimeServer}. The default run is short enough for CI; set
+ * {@code -Dsoak.durationSeconds=N} to keep the stream running for N seconds and check that threads
+ * and heap do not grow.
+ */
+public class RealtimeSoakTest {
+
+    private static final Logger LOGGER = Logger.getLogger(RealtimeSoakTest.class.getName());
+    private static final int EVENTS_PER_SECOND = Integer.getInteger("soak.eventsPerSecond", 10_000);
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private FakeRealtimeServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRealtimeServer().startAndWait();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static String record(int seq) {
+        return "{\"id\":" + seq + ",\"sent\":" + System.nanoTime() + ",\"status\":\"ready\"}";
+    }
+
+    @Test
+    public void testClientThroughputAndLatency() throws Exception {
+        int count = EVENTS_PER_SECOND * 3;
+        AtomicLongArray latencies = new AtomicLongArray(count);
+        AtomicInteger received = new AtomicInteger();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        SupabaseRealtimeClient client = new SupabaseRealtimeClient(server.getUrl(), null);
+        assertTrue(client.connectBlocking(10, TimeUnit.SECONDS));
+        try {
+            client.subscribeToTable("public", "orders", "INSERT", event -> {
+                com.google.gson.JsonObject record = event.getPayload().getAsJsonObject("record");
+                latencies.set(record.get("id").getAsInt(), System.nanoTime() - record.get("sent").getAsLong());
+                received.incrementAndGet();
+            });
+            assertTrue(server.awaitJoined("realtime:public:orders", 5000));
+
+            long start = System.nanoTime();
+            server.replay("public", "orders", "INSERT", count, EVENTS_PER_SECOND, RealtimeSoakTest::record);
+            awaitCount(received, count, 30_000);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            assertEquals(count, received.get());
+            long[] sorted = sortedMillis(latencies, count);
+            LOGGER.info(String.format("Received %d events in %.2fs (%.0f/s); latency p50=%dms p99=%dms max=%dms",
+                count, seconds, count / seconds, percentile(sorted, 50), percentile(sorted, 99), sorted[count - 1]));
+            assertTrue("p99 latency too high: " + percentile(sorted, 99) + "ms", percentile(sorted, 99) < 2000);
+        } finally {
+            client.shutdown();
+        }
+
+        int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+        assertTrue("Threads grew from " + threadsBefore + " to " + threadsAfter, threadsAfter - threadsBefore < 10);
+    }
+
+    @Test
+    public void testTriggersShareOneConnectionAndScheduleBuilds() throws Exception {
+        PostgresEventTriggerConfiguration.get().setSupabaseInstances(
+            Collections.singletonList(new SupabaseInstance("fake", server.getUrl(), null)));
+
+        FreeStyleProject[] projects = new FreeStyleProject[3];
+        PostgresEventTrigger[] triggers = new PostgresEventTrigger[projects.length];
+        for (int i = 0; i < projects.length; i++) {
+            projects[i] = jenkins.createFreeStyleProject();
+            triggers[i] = new PostgresEventTrigger("fake", "public.orders");
+            triggers[i].setSubscribeInsert(true);
+            triggers[i].setBatchWindowSeconds(1);
+            projects[i].addTrigger(triggers[i]);
+            triggers[i].start(projects[i], true);
+        }
+        assertTrue(server.awaitJoined("realtime:public:orders", 10_000));
+        assertEquals(1, server.getOpenConnectionCount());
+        assertEquals(1, server.getJoinCount());
+
+        int count = 500;
+        server.replay("public", "orders", "INSERT", count, 1000, RealtimeSoakTest::record);
+        Thread.sleep(2000);
+        jenkins.waitUntilNoActivity();
+
+        for (FreeStyleProject project : projects) {
+            int events = 0;
+            for (FreeStyleBuild build : project.getBuilds()) {
+                events += build.getCause(PostgresEventTrigger.PostgresEventCause.class).getEventCount();
+            }
+            assertEquals(count, events);
+        }
+
+        for (PostgresEventTrigger trigger : triggers) {
+            trigger.stop();
+        }
+        assertEquals(0, RealtimeConnectionManager.get().getConnectionCount());
+    }
+
+    @Test
+    public void testInjectedDisconnectIsReported() throws Exception {
+        SupabaseRealtimeClient client = new SupabaseRealtimeClient(server.getUrl(), null);
+        assertTrue(client.connectBlocking(10, TimeUnit.SECONDS));
+        assertEquals(SupabaseRealtimeClient.ConnectionState.CONNECTED, client.getState());
+
+        server.disconnectAll();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getState() == SupabaseRealtimeClient.ConnectionState.CONNECTED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertNotEquals(SupabaseRealtimeClient.ConnectionState.CONNECTED, client.getState());
+        client.shutdown();
+    }
+
+    @Test
+    public void testReconnectsAndRejoinsAfterDisconnect() throws Exception {
+        AtomicInteger received = new AtomicInteger();
+        SupabaseRealtimeClient client = new SupabaseRealtimeClient(server.getUrl(), null);
+        assertTrue(client.connectBlocking(10, TimeUnit.SECONDS));
+        try {
+            client.subscribeToTable("public", "orders", "INSERT", event -> received.incrementAndGet());
+            client.subscribeToTable("public", "customers", "UPDATE", event -> received.incrementAndGet());
+            assertTrue(server.awaitJoined("realtime:public:orders", 5000));
+            assertTrue(server.awaitJoined("realtime:public:customers", 5000));
+
+            server.disconnectAll();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (client.getState() == SupabaseRealtimeClient.ConnectionState.CONNECTED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(server.awaitJoined("realtime:public:orders", 10_000));
+            assertTrue(server.awaitJoined("realtime:public:customers", 10_000));
+            assertEquals(SupabaseRealtimeClient.ConnectionState.CONNECTED, client.getState());
+            assertEquals(1, client.getReconnectCount());
+            assertEquals(2, server.getConnectionsOpened());
+            assertEquals(4, server.getJoinCount());
+
+            server.push("public", "orders", "INSERT", record(1));
+            server.push("public", "customers", "UPDATE", record(2));
+            awaitCount(received, 2, 5000);
+            assertEquals(2, received.get());
+        } finally {
+            client.shutdown();
+        }
+
+        // An intentional close is not followed by a reconnect
+        Thread.sleep(SupabaseRealtimeClient.RECONNECT_BASE_MILLIS * 2);
+        assertEquals(2, server.getConnectionsOpened());
+        assertEquals(1, client.getReconnectCount());
+    }
+
+    @Test
+    public void testLongSoak() throws Exception {
+        long duration = Long.getLong("soak.durationSeconds", 0);
+        Assume.assumeTrue("Set -Dsoak.durationSeconds to run the long soak", duration > 0);
+
+        AtomicInteger received = new AtomicInteger();
+        SupabaseRealtimeClient client = new SupabaseRealtimeClient(server.getUrl(), null);
+        assertTrue(client.connectBlocking(10, TimeUnit.SECONDS));
+        client.subscribeToTable("public", "orders", "INSERT", event -> received.incrementAndGet());
+        assertTrue(server.awaitJoined("realtime:public:orders", 5000));
+
+        long baselineHeap = usedHeapAfterGc();
+        int baselineThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        int sent = 0;
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(duration);
+        while (System.currentTimeMillis() < end) {
+            server.replay("public", "orders", "INSERT", EVENTS_PER_SECOND * 10, EVENTS_PER_SECOND, RealtimeSoakTest::record);
+            sent += EVENTS_PER_SECOND * 10;
+            LOGGER.info(String.format("Soak: sent=%d received=%d threads=%d heap=%dMB", sent, received.get(),
+                ManagementFactory.getThreadMXBean().getThreadCount(), usedHeapAfterGc() >> 20));
+        }
+        awaitCount(received, sent, 60_000);
+        assertEquals(sent, received.get());
+
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long heap = usedHeapAfterGc();
+        client.shutdown();
+        assertTrue("Threads grew from " + baselineThreads + " to " + threads, threads - baselineThreads < 10);
+        assertTrue("Heap grew from " + (baselineHeap >> 20) + "MB to " + (heap >> 20) + "MB",
+            heap < baselineHeap + (64L << 20));
+    }
+
+    private static void awaitCount(AtomicInteger counter, int expected, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static long[] sortedMillis(AtomicLongArray nanos, int count) {
+        long[] millis = new long[count];
+        for (int i = 0; i < count; i++) {
+            millis[i] = TimeUnit.NANOSECONDS.toMillis(nanos.get(i));
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
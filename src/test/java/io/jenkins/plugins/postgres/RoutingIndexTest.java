@@ -0,0 +1,108 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class RoutingIndexTest {
+
+    private final RoutingIndex<RoutingIndex.Route> index = new RoutingIndex<>();
+
+    private EventSource.Subscription add(String topic, String event, Consumer<PostgresEvent> handler) {
+        return index.add(topic, RoutingIndex.Route::new, event, handler);
+    }
+
+    @Test
+    public void testHandlersAreGroupedByTopicAndEvent() {
+        Consumer<PostgresEvent> first = event -> { };
+        Consumer<PostgresEvent> second = event -> { };
+        add("realtime:public:orders", "INSERT", first);
+        add("realtime:public:orders", "INSERT", second);
+        add("realtime:public:orders", "DELETE", first);
+
+        RoutingIndex.Route route = index.get("realtime:public:orders");
+        assertArrayEquals(new Object[] {first, second}, route.handlers("INSERT"));
+        assertArrayEquals(new Object[] {first}, route.handlers("DELETE"));
+        assertEquals(0, route.handlers("UPDATE").length);
+        assertSame(route.handlers("UPDATE"), route.handlers("UPDATE"));
+        assertNull(index.get("realtime:public:customers"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testRemovingTheLastHandlerDropsTheRoute() {
+        Consumer<PostgresEvent> handler = event -> { };
+        EventSource.Subscription insert = add("orders", "INSERT", handler);
+        EventSource.Subscription update = add("orders", "UPDATE", handler);
+
+        assertNull(index.remove(insert));
+        assertEquals(0, index.get("orders").handlers("INSERT").length);
+        RoutingIndex.Route removed = index.remove(update);
+        assertNotNull(removed);
+        assertEquals("orders", removed.topic);
+        assertNull(index.get("orders"));
+        assertNull(index.remove(update));
+    }
+
+    @Test
+    public void testSameHandlerSubscribedTwiceIsRemovedOnce() {
+        Consumer<PostgresEvent> handler = event -> { };
+        EventSource.Subscription first = add("orders", "INSERT", handler);
+        add("orders", "INSERT", handler);
+
+        assertNull(index.remove(first));
+        assertEquals(1, index.get("orders").handlers("INSERT").length);
+    }
+
+    @Test
+    public void testStaleSubscriptionDoesNotAffectNewRoute() {
+        Consumer<PostgresEvent> handler = event -> { };
+        EventSource.Subscription old = add("orders", "INSERT", handler);
+        index.remove(old);
+        add("orders", "INSERT", handler);
+
+        assertNull(index.remove(old));
+        assertEquals(1, index.get("orders").handlers("INSERT").length);
+    }
+
+    @Test
+    public void testLookupsSeeConsistentHandlersWhileSubscriptionsChange() throws Exception {
+        Consumer<PostgresEvent> stable = event -> { };
+        add("orders", "INSERT", stable);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    Consumer<PostgresEvent>[] handlers = index.get("orders").handlers("INSERT");
+                    assertSame(stable, handlers[0]);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+
+        List<EventSource.Subscription> subscriptions = new ArrayList<>();
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 20; i++) {
+                subscriptions.add(add("orders", "INSERT", event -> { }));
+            }
+            for (EventSource.Subscription subscription : subscriptions) {
+                index.remove(subscription);
+            }
+            subscriptions.clear();
+        }
+        running.set(false);
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(1, index.get("orders").handlers("INSERT").length);
+    }
+}
@@ -0,0 +1,141 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class ShardedEventSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTablesAreSpreadOverShards() {
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            int shard = ShardedEventSource.shardOf("public", "table_" + i, 4);
+            assertTrue(shard >= 0 && shard < 4);
+            used.add(shard);
+        }
+        assertEquals(4, used.size());
+        assertEquals(ShardedEventSource.shardOf("public", "orders", 8), ShardedEventSource.shardOf("public", "orders", 8));
+        assertEquals(ShardedEventSource.shardOf("public", "audit_*", 8), ShardedEventSource.shardOf("public", "*", 8));
+    }
+
+    @Test
+    public void testSubscriptionsGoToOneShardAndAreRemovedFromIt() {
+        List<FakeSource> shards = Arrays.asList(new FakeSource(), new FakeSource(), new FakeSource());
+        ShardedEventSource source = new ShardedEventSource(shards, null);
+
+        EventSource.Subscription orders = source.subscribeToTable("public", "orders", null, "INSERT", event -> { });
+        FakeSource shard = shards.get(ShardedEventSource.shardOf("public", "orders", 3));
+        assertEquals(1, shard.subscriptions.size());
+        assertEquals(1, shards.stream().mapToInt(s -> s.subscriptions.size()).sum());
+
+        source.unsubscribe(orders);
+        assertTrue(shard.subscriptions.isEmpty());
+        // A second unsubscribe is ignored, as by a single connection
+        source.unsubscribe(orders);
+    }
+
+    @Test
+    public void testStateAndCountersAreCombined() {
+        FakeSource first = new FakeSource();
+        FakeSource second = new FakeSource();
+        ShardedEventSource source = new ShardedEventSource(Arrays.asList(first, second), null);
+
+        assertEquals(EventSource.ConnectionState.CONNECTED, source.getState());
+        second.state = EventSource.ConnectionState.CONNECTING;
+        assertEquals(EventSource.ConnectionState.CONNECTING, source.getState());
+        first.state = EventSource.ConnectionState.DISCONNECTED;
+        assertEquals(EventSource.ConnectionState.DISCONNECTED, source.getState());
+
+        first.reconnects = 2;
+        second.reconnects = 3;
+        first.disconnectedMillis = 500;
+        second.disconnectedMillis = 200;
+        assertEquals(5, source.getReconnectCount());
+        assertEquals(500, source.getDisconnectedMillis());
+
+        source.shutdown();
+        assertTrue(first.shutdown && second.shutdown);
+    }
+
+    @Test
+    public void testShutdownLeavesSharedJournalOpen() throws Exception {
+        EventJournal journal = new EventJournal(folder.newFolder(), Long.MAX_VALUE);
+        FakeSource first = new FakeSource();
+        FakeSource second = new FakeSource();
+        // The journal is still open when each shard stops, so a shard's last events are recorded
+        first.onShutdown = () -> journal.record(new PostgresEvent("public", "orders", "INSERT", "{}"), 0);
+        second.onShutdown = first.onShutdown;
+        ShardedEventSource source = new ShardedEventSource(Arrays.asList(first, second), journal);
+
+        source.shutdown();
+
+        // The journal belongs to the connection manager, which may still use it for another connection
+        assertEquals(1, journal.getEndOffset());
+        journal.append(new PostgresEvent("public", "orders", "INSERT", "{}"), 0);
+        assertEquals(2, journal.getEndOffset());
+        journal.close();
+    }
+
+    private static final class FakeSource implements EventSource {
+        private final List<Subscription> subscriptions = new ArrayList<>();
+        private volatile ConnectionState state = ConnectionState.CONNECTED;
+        private int reconnects;
+        private long disconnectedMillis;
+        private boolean shutdown;
+        private Runnable onShutdown;
+
+        @Override
+        public Subscription subscribeToTable(String schema, String table, String filter, String event,
+                                             Consumer<PostgresEvent> handler) {
+            Subscription subscription = new Subscription(schema + "." + table, event, handler, null);
+            subscriptions.add(subscription);
+            return subscription;
+        }
+
+        @Override
+        public void unsubscribe(Subscription subscription) {
+            subscriptions.remove(subscription);
+        }
+
+        @Override
+        public ConnectionState getState() {
+            return state;
+        }
+
+        @Override
+        public int getReconnectCount() {
+            return reconnects;
+        }
+
+        @Override
+        public long getDisconnectedMillis() {
+            return disconnectedMillis;
+        }
+
+        @Override
+        public EventJournal getJournal() {
+            return null;
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+            if (onShutdown != null) {
+                onShutdown.run();
+            }
+        }
+    }
+}
@@ -4,6 +4,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.Collections;
+
 import static org.junit.Assert.*;
 
 public class SupabaseInstanceTest {
@@ -35,4 +38,72 @@ public class SupabaseInstanceTest {
         assertEquals(url, instance.getUrl());
         assertNull(instance.getCredentialsId());
     }
+
+    @Test
+    public void testRealtimeUrlConversion() {
+        SupabaseInstance https = new SupabaseInstance("a", "https://test.supabase.co", null);
+        assertEquals("wss://test.supabase.co/realtime/v1/websocket", https.getRealtimeUrl());
+
+        SupabaseInstance ws = new SupabaseInstance("b", "wss://test.supabase.co/realtime/v1/websocket", null);
+        assertEquals("wss://test.supabase.co/realtime/v1/websocket", ws.getRealtimeUrl());
+    }
+
+    @Test
+    public void testInstancesWithSameSettingsShareConnectionKey() {
+        SupabaseInstance first = new SupabaseInstance("test-instance", "https://test.supabase.co", "cred");
+        SupabaseInstance second = new SupabaseInstance("test-instance", "https://test.supabase.co", "cred");
+        SupabaseInstance other = new SupabaseInstance("test-instance", "https://other.supabase.co", "cred");
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    public void testEditedInstanceSharesJournalWithOldConnection() throws Exception {
+        FakeRealtimeServer server = new FakeRealtimeServer().startAndWait();
+        RealtimeConnectionManager manager = RealtimeConnectionManager.get();
+        try {
+            SupabaseInstance before = new SupabaseInstance("edited-instance", server.getUrl(), null);
+            SupabaseInstance after = new SupabaseInstance("edited-instance", server.getUrl(), null);
+            after.setConnections(2);
+
+            // A trigger still holds the old connection while another restarts on the edited instance
+            EventSource oldSource = manager.acquire(before);
+            EventSource newSource = manager.acquire(after);
+            assertNotSame(oldSource, newSource);
+            EventJournal journal = oldSource.getJournal();
+            assertNotNull(journal);
+            assertSame(journal, newSource.getJournal());
+            assertEquals(1, manager.getOpenJournals().size());
+
+            manager.release(before);
+            journal.append(new PostgresEvent("public", "orders", "INSERT", "{}"), 0);
+            assertEquals(Collections.singletonList(journal), manager.getOpenJournals());
+
+            manager.release(after);
+            assertTrue(manager.getOpenJournals().isEmpty());
+            try {
+                journal.append(new PostgresEvent("public", "orders", "INSERT", "{}"), 0);
+                fail("Appended to the journal after its last connection closed");
+            } catch (ClosedChannelException e) {
+                // expected
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testConnectionCountIsPartOfConnectionKey() {
+        SupabaseInstance single = new SupabaseInstance("test-instance", "https://test.supabase.co", "cred");
+        SupabaseInstance sharded = new SupabaseInstance("test-instance", "https://test.supabase.co", "cred");
+        sharded.setConnections(4);
+
+        assertEquals(1, single.getConnections());
+        assertEquals(4, sharded.getConnections());
+        assertNotEquals(single, sharded);
+        sharded.setConnections(0);
+        assertEquals(single, sharded);
+    }
 }
@@ -0,0 +1,48 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TableMatcherTest {
+
+    @Test
+    public void testExactNamesAreNotPatterns() {
+        assertFalse(TableMatcher.isPattern("orders"));
+        TableMatcher matcher = TableMatcher.compile("orders");
+        assertTrue(matcher.matches("orders"));
+        assertFalse(matcher.matches("orders_archive"));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void testGlobs() {
+        assertTrue(TableMatcher.compile("*").matches("anything"));
+        assertTrue(TableMatcher.compile("audit_*").matches("audit_log"));
+        assertFalse(TableMatcher.compile("audit_*").matches("orders"));
+        assertTrue(TableMatcher.compile("*_history").matches("orders_history"));
+        assertFalse(TableMatcher.compile("*_history").matches("history_orders"));
+        assertTrue(TableMatcher.compile("order?").matches("orders"));
+        assertFalse(TableMatcher.compile("order?").matches("order"));
+        assertTrue(TableMatcher.compile("a*b*c").matches("a1b2c"));
+        // Regular expression characters in a pattern are literal
+        assertFalse(TableMatcher.compile("a.b*").matches("axb1"));
+        assertTrue(TableMatcher.compile("a.b*").matches("a.b1"));
+    }
+
+    @Test
+    public void testFilterChecksTableAndRow() {
+        List<PostgresEvent> events = new ArrayList<>();
+        TableMatcher.compile("audit_*").filter(RowFilter.parse("id=eq.1"), events::add)
+            .accept(new PostgresEvent("public", "audit_log", "INSERT", "{\"record\":{\"id\":1}}"));
+        TableMatcher.compile("audit_*").filter(RowFilter.parse("id=eq.1"), events::add)
+            .accept(new PostgresEvent("public", "audit_log", "INSERT", "{\"record\":{\"id\":2}}"));
+        TableMatcher.compile("audit_*").filter(null, events::add)
+            .accept(new PostgresEvent("public", "orders", "INSERT", "{}"));
+
+        assertEquals(1, events.size());
+    }
+}
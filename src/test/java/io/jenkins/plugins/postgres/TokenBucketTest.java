@@ -0,0 +1,50 @@
+package io.jenkins.plugins.postgres;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstOfTenSecondsThenRate() {
+        TokenBucket bucket = new TokenBucket(60, 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, bucket.tryAcquire(0));
+        }
+        long wait = bucket.tryAcquire(0);
+        assertTrue("waits about a second, was " + wait, wait > SECOND - 1000 && wait <= SECOND);
+
+        assertEquals(0, bucket.tryAcquire(SECOND));
+        assertTrue(bucket.tryAcquire(SECOND) > 0);
+    }
+
+    @Test
+    public void testSlowRateStillAllowsOneBuild() {
+        TokenBucket bucket = new TokenBucket(2, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0) >= 29 * SECOND);
+        assertEquals(0, bucket.tryAcquire(30 * SECOND));
+    }
+
+    @Test
+    public void testReleaseReturnsToken() {
+        TokenBucket bucket = new TokenBucket(1, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        bucket.release();
+        assertEquals(0, bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0) > 0);
+    }
+
+    @Test
+    public void testInstanceBucketIsSharedUntilRateChanges() {
+        TokenBucket first = TokenBucket.forInstance("shared", 120);
+        assertSame(first, TokenBucket.forInstance("shared", 120));
+        assertNotSame(first, TokenBucket.forInstance("shared", 60));
+        assertNull(TokenBucket.forInstance("shared", 0));
+    }
+}
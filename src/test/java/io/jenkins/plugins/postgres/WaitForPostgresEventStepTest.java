@@ -0,0 +1,136 @@
+package io.jenkins.plugins.postgres;
+
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WaitForPostgresEventStepTest {
+
+    private static final String TOPIC = "realtime:public:orders";
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private FakeRealtimeServer server;
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.shutdown();
+        }
+    }
+
+    private WorkflowRun startWaiting(String stepArguments) throws Exception {
+        server = new FakeRealtimeServer().startAndWait();
+        PostgresEventTriggerConfiguration.get().setSupabaseInstances(
+            Collections.singletonList(new SupabaseInstance("fake", server.getUrl(), null)));
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        job.setDefinition(new CpsFlowDefinition("def change = waitForPostgresEvent instance: 'fake', table: 'public.orders'"
+            + stepArguments + "\n"
+            + "echo \"Order ${change.record.id} is ${change.record.status} after ${change.type}\"", true));
+        WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+        jenkins.waitForMessage("Waiting for ", run);
+        assertTrue(server.awaitJoined(TOPIC, 10_000));
+        return run;
+    }
+
+    private static void awaitNoConnections() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (RealtimeConnectionManager.get().getConnectionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, RealtimeConnectionManager.get().getConnectionCount());
+    }
+
+    @Test
+    public void testPipelineResumesOnMatchingChange() throws Exception {
+        WorkflowRun run = startWaiting(", event: 'INSERT'");
+
+        // Suspended without an executor thread, and an UPDATE does not wake it
+        server.push("public", "orders", "UPDATE", "{\"id\":1,\"status\":\"new\"}");
+        Thread.sleep(500);
+        assertTrue(run.isBuilding());
+
+        server.push("public", "orders", "INSERT", "{\"id\":2,\"status\":\"ready\"}");
+        jenkins.assertBuildStatusSuccess(jenkins.waitForCompletion(run));
+        jenkins.assertLogContains("Order 2 is ready after INSERT", run);
+        awaitNoConnections();
+    }
+
+    @Test
+    public void testPipelineFailsAfterTimeout() throws Exception {
+        WorkflowRun run = startWaiting(", timeout: 1");
+
+        jenkins.assertBuildStatus(Result.FAILURE, jenkins.waitForCompletion(run));
+        jenkins.assertLogContains("No matching change within 1 seconds", run);
+        awaitNoConnections();
+    }
+
+    @Test
+    public void testAbortedPipelineReleasesConnection() throws Exception {
+        WorkflowRun run = startWaiting("");
+
+        run.doStop();
+
+        jenkins.assertBuildStatus(Result.ABORTED, jenkins.waitForCompletion(run));
+        awaitNoConnections();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getOpenConnectionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, server.getOpenConnectionCount());
+    }
+
+    @Test
+    public void testEventDefaultsToAnyChange() {
+        WaitForPostgresEventStep step = new WaitForPostgresEventStep("db", "public.orders");
+        assertEquals("*", step.getEvent());
+
+        step.setEvent(" insert ");
+        assertEquals("INSERT", step.getEvent());
+        step.setEvent("");
+        assertEquals("*", step.getEvent());
+
+        assertTrue(WaitForPostgresEventStep.isEventType("DELETE"));
+        assertFalse(WaitForPostgresEventStep.isEventType("TRUNCATE"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResultCarriesRowAsPlainValues() {
+        String payload = "{\"type\":\"UPDATE\",\"record\":{\"id\":12,\"amount\":1.5,\"paid\":true,\"tags\":[\"a\"],"
+            + "\"note\":null,\"status\":\"ready\"},\"old_record\":{\"id\":12}}";
+        Map<String, Object> result = WaitForPostgresEventStep.toResult(new PostgresEvent("public", "orders", "UPDATE", payload));
+
+        assertEquals("orders", result.get("table"));
+        assertEquals("UPDATE", result.get("type"));
+        assertEquals(payload, result.get("data"));
+        Map<String, Object> record = (Map<String, Object>) result.get("record");
+        assertEquals(12L, record.get("id"));
+        assertEquals(1.5, record.get("amount"));
+        assertEquals(true, record.get("paid"));
+        assertEquals(List.of("a"), record.get("tags"));
+        assertNull(record.get("note"));
+        assertEquals("ready", record.get("status"));
+        assertEquals(Map.of("id", 12L), result.get("old_record"));
+    }
+
+    @Test
+    public void testNonJsonPayloadHasNoRecord() {
+        Map<String, Object> result = WaitForPostgresEventStep.toResult(new PostgresEvent("public", "orders", "INSERT", "INSERT"));
+
+        assertNull(result.get("record"));
+        assertEquals("INSERT", result.get("data"));
+    }
+}